@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.cache;
+
+import com.vaticle.typedb.osi.loader.config.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache from the key of a thing - its type and the values of its identifying attributes - to its IID.
+ * The cache is split into segments that each evict their least recently used entry when full, so writer threads
+ * only contend when they access the same segment. The cache can be backed by an on-disk IID index, which is
+ * looked up on a miss and receives every entry added to the cache. Keys found to be held by more than one thing
+ * are marked ambiguous: they are kept apart from the segments, never evicted, and never cached again.
+ */
+public class IIDCache {
+
+    private static final int MAX_SEGMENTS = 64;
+    private static final char ATTRIBUTE_SEPARATOR = '\u001f';
+    private static final char VALUE_SEPARATOR = '\u001e';
+
+    private final int capacity;
+    private final Segment[] segments;
+    private final Set<String> ambiguousKeys;
+    private final IIDIndex index;
+    private final LongAdder hits;
+    private final LongAdder indexHits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    public IIDCache(int capacity) {
+        this(capacity, null);
+    }
+
+    public IIDCache(int capacity, IIDIndex index) {
+        this.capacity = capacity;
+        this.index = index;
+        this.ambiguousKeys = ConcurrentHashMap.newKeySet();
+        int segmentCount = Math.max(1, Math.min(MAX_SEGMENTS, Integer.highestOneBit(Math.max(1, capacity / 1024))));
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(Math.max(1, capacity / segmentCount));
+        }
+        this.hits = new LongAdder();
+        this.indexHits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Returns the key of a thing of the given type identified by the given values of its attributes.
+     */
+    public static String key(String type, Configuration.Definition.Attribute[] attributes, List<? extends List<Object>> values) {
+        StringBuilder key = new StringBuilder(type);
+        for (int i = 0; i < attributes.length; i++) {
+            key.append(ATTRIBUTE_SEPARATOR).append(attributes[i].getAttribute());
+            for (Object value : values.get(i)) {
+                key.append(VALUE_SEPARATOR).append(value);
+            }
+        }
+        return key.toString();
+    }
+
+    public String get(String key) {
+        if (isAmbiguous(key)) {
+            misses.increment();
+            return null;
+        }
+        Segment segment = segment(key);
+        String iid;
+        synchronized (segment) {
+            iid = segment.get(key);
+        }
+        if (iid != null) {
+            hits.increment();
+            return iid;
+        }
+        if (index != null) iid = index.get(key);
+        if (iid == null) {
+            misses.increment();
+        } else {
+            indexHits.increment();
+            synchronized (segment) {
+                segment.put(key, iid);
+            }
+        }
+        return iid;
+    }
+
+    public void put(String key, String iid) {
+        if (isAmbiguous(key)) return;
+        Segment segment = segment(key);
+        synchronized (segment) {
+            segment.put(key, iid);
+        }
+        if (index != null) index.put(key, iid);
+    }
+
+    /**
+     * Adds the IID under the key unless the key is cached already, and returns the cached IID if there is one.
+     * Does not count as a lookup.
+     */
+    public String putIfAbsent(String key, String iid) {
+        if (isAmbiguous(key)) return null;
+        Segment segment = segment(key);
+        String cachedIID;
+        synchronized (segment) {
+            cachedIID = segment.putIfAbsent(key, iid);
+        }
+        if (index != null) {
+            String indexedIID = index.get(key);
+            if (indexedIID == null) index.put(key, iid);
+            if (cachedIID == null && indexedIID != null && !indexedIID.equals(iid)) cachedIID = indexedIID;
+        }
+        return cachedIID;
+    }
+
+    public void remove(String key) {
+        Segment segment = segment(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+        if (index != null) index.remove(key);
+    }
+
+    /**
+     * Marks the key as held by more than one thing: it is removed from the cache and its index, and is not cached
+     * again.
+     */
+    public void markAmbiguous(String key) {
+        ambiguousKeys.add(key);
+        remove(key);
+    }
+
+    private boolean isAmbiguous(String key) {
+        return !ambiguousKeys.isEmpty() && ambiguousKeys.contains(key);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean hasIndex() {
+        return index != null;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getIndexHits() {
+        return indexHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        String cache = "size: " + size() + ", hits: " + getHits() + ", misses: " + getMisses() + ", evictions: " + getEvictions()
+                + ", ambiguous keys: " + ambiguousKeys.size();
+        if (index == null) return cache;
+        return cache + ", index hits: " + getIndexHits() + ", index size: " + index.size();
+    }
+
+    private Segment segment(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    private class Segment extends LinkedHashMap<String, String> {
+        private final int capacity;
+
+        private Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * On-disk index from the key of a thing to its IID, kept across runs. The index is an open addressing hash
+ * table of (key hash, record offset) slots in one file and an append-only file of (key, IID) records; both
+ * files are memory-mapped in chunks, so the index is bounded by disk and page cache rather than by heap.
+ * <p>
+ * The slot file starts with a header holding the fingerprint of the database the IIDs belong to and whether
+ * the index was closed cleanly. An index that was not closed cleanly or that belongs to another database or
+ * schema is discarded when opened.
+ */
+public class IIDIndex implements AutoCloseable {
+
+    private static final String SLOTS_SUFFIX = ".slots";
+    private static final String RECORDS_SUFFIX = ".records";
+    private static final long MAGIC = 0x54444c4949445831L;
+    private static final int HEADER_SIZE = 128;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CLEAN_OFFSET = 8;
+    private static final int SLOTS_OFFSET = 16;
+    private static final int SIZE_OFFSET = 24;
+    private static final int USED_OFFSET = 32;
+    private static final int RECORDS_END_OFFSET = 40;
+    private static final int FINGERPRINT_OFFSET = 48;
+    private static final int FINGERPRINT_SIZE = 32;
+    private static final int SLOT_SIZE = 16;
+    private static final long INITIAL_SLOTS = 1L << 20;
+    private static final double MAX_LOAD = 0.7;
+    private static final int SLOTS_CHUNK_SHIFT = 30;
+    private static final int RECORDS_CHUNK_SHIFT = 26;
+    private static final long TOMBSTONE = -1;
+
+    private final File slotsFile;
+    private final File recordsFile;
+    private final ReentrantReadWriteLock lock;
+    private MappedFile slots;
+    private MappedFile records;
+    private long slotCount;
+    private long size;
+    private long used;
+    private long recordsEnd;
+
+    private IIDIndex(File slotsFile, File recordsFile) {
+        this.slotsFile = slotsFile;
+        this.recordsFile = recordsFile;
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Opens the index at the given path, or creates it if it does not exist, was not closed cleanly, does not
+     * match the fingerprint, or if a reset was requested.
+     */
+    public static IIDIndex open(String path, byte[] fingerprint, boolean reset) throws IOException {
+        IIDIndex index = new IIDIndex(new File(path + SLOTS_SUFFIX), new File(path + RECORDS_SUFFIX));
+        if (reset || !index.reopen(fingerprint)) {
+            index.create(fingerprint, INITIAL_SLOTS);
+        }
+        index.slots.putInt(CLEAN_OFFSET, 0);
+        index.slots.force();
+        return index;
+    }
+
+    /**
+     * Returns the fingerprint of the data of the given database with the given schema.
+     */
+    public static byte[] fingerprint(String databaseName, String schema) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(databaseName.getBytes(UTF_8));
+            digest.update((byte) 0);
+            digest.update(schema.getBytes(UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException(noSuchAlgorithmException);
+        }
+    }
+
+    private boolean reopen(byte[] fingerprint) throws IOException {
+        if (!slotsFile.exists() || !recordsFile.exists() || slotsFile.length() < HEADER_SIZE) return false;
+        MappedFile existingSlots = MappedFile.open(slotsFile, SLOTS_CHUNK_SHIFT, slotsFile.length());
+        byte[] existingFingerprint = new byte[FINGERPRINT_SIZE];
+        existingSlots.get(FINGERPRINT_OFFSET, existingFingerprint);
+        long existingSlotCount = existingSlots.getLong(SLOTS_OFFSET);
+        if (existingSlots.getLong(MAGIC_OFFSET) != MAGIC || existingSlots.getInt(CLEAN_OFFSET) != 1
+                || !Arrays.equals(existingFingerprint, fingerprint)
+                || slotsFile.length() != HEADER_SIZE + existingSlotCount * SLOT_SIZE) {
+            existingSlots.close();
+            return false;
+        }
+        this.slots = existingSlots;
+        this.slotCount = existingSlotCount;
+        this.size = slots.getLong(SIZE_OFFSET);
+        this.used = slots.getLong(USED_OFFSET);
+        this.recordsEnd = slots.getLong(RECORDS_END_OFFSET);
+        this.records = MappedFile.open(recordsFile, RECORDS_CHUNK_SHIFT, roundUpToChunk(recordsEnd, RECORDS_CHUNK_SHIFT));
+        return true;
+    }
+
+    private void create(byte[] fingerprint, long slotCount) throws IOException {
+        Files.deleteIfExists(slotsFile.toPath());
+        Files.deleteIfExists(recordsFile.toPath());
+        this.slots = MappedFile.open(slotsFile, SLOTS_CHUNK_SHIFT, HEADER_SIZE + slotCount * SLOT_SIZE);
+        this.records = MappedFile.open(recordsFile, RECORDS_CHUNK_SHIFT, 1L << RECORDS_CHUNK_SHIFT);
+        this.slotCount = slotCount;
+        this.size = 0;
+        this.used = 0;
+        this.recordsEnd = 0;
+        slots.putLong(MAGIC_OFFSET, MAGIC);
+        slots.putLong(SLOTS_OFFSET, slotCount);
+        slots.put(FINGERPRINT_OFFSET, fingerprint);
+        writeCounts();
+    }
+
+    public String get(String key) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        long hash = hash(keyBytes);
+        lock.readLock().lock();
+        try {
+            long slot = find(hash, keyBytes);
+            return slot < 0 ? null : readIID(slots.getLong(slotPosition(slot) + 8));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(String key, String iid) {
+        put(key, iid, true);
+    }
+
+    /**
+     * Stores the IID of the key unless the key is already stored, and returns the stored IID, or null if there
+     * was none.
+     */
+    public String putIfAbsent(String key, String iid) {
+        return put(key, iid, false);
+    }
+
+    private String put(String key, String iid, boolean replace) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        byte[] iidBytes = iid.getBytes(UTF_8);
+        long hash = hash(keyBytes);
+        lock.writeLock().lock();
+        try {
+            long mask = slotCount - 1;
+            long slot = hash & mask;
+            long freeSlot = -1;
+            while (true) {
+                long position = slotPosition(slot);
+                long slotHash = slots.getLong(position);
+                if (slotHash == 0) break;
+                long offset = slots.getLong(position + 8);
+                if (offset == TOMBSTONE) {
+                    if (freeSlot < 0) freeSlot = slot;
+                } else if (slotHash == hash && keyEquals(offset, keyBytes)) {
+                    byte[] storedIIDBytes = readIIDBytes(offset);
+                    if (!replace) return new String(storedIIDBytes, UTF_8);
+                    if (!Arrays.equals(storedIIDBytes, iidBytes)) {
+                        slots.putLong(position + 8, appendRecord(keyBytes, iidBytes));
+                        writeCounts();
+                    }
+                    return null;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (freeSlot < 0) {
+                freeSlot = slot;
+                used++;
+            }
+            long position = slotPosition(freeSlot);
+            slots.putLong(position + 8, appendRecord(keyBytes, iidBytes));
+            slots.putLong(position, hash);
+            size++;
+            writeCounts();
+            if (used > slotCount * MAX_LOAD) {
+                resize(size * 2 > slotCount * MAX_LOAD ? slotCount * 2 : slotCount);
+            }
+            return null;
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String key) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        long hash = hash(keyBytes);
+        lock.writeLock().lock();
+        try {
+            long slot = find(hash, keyBytes);
+            if (slot >= 0) {
+                slots.putLong(slotPosition(slot) + 8, TOMBSTONE);
+                size--;
+                writeCounts();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to the given number of IIDs spread over the index, to check that they still exist.
+     */
+    public List<String> sample(int count) {
+        List<String> iids = new ArrayList<>(count);
+        lock.readLock().lock();
+        try {
+            if (size == 0) return iids;
+            long step = Math.max(1, slotCount / count);
+            for (long slot = 0; slot < slotCount && iids.size() < count; slot += step) {
+                // take the first live slot at or after each step
+                for (long probe = slot; probe < Math.min(slotCount, slot + step); probe++) {
+                    long position = slotPosition(probe);
+                    long offset = slots.getLong(position + 8);
+                    if (slots.getLong(position) != 0 && offset != TOMBSTONE) {
+                        iids.add(readIID(offset));
+                        break;
+                    }
+                }
+            }
+            return iids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(true);
+    }
+
+    /**
+     * Closes the index, marking it clean only if requested: an index left unclean, for example by a run that
+     * failed and may hold IIDs of things that were never committed, is discarded when opened again.
+     */
+    public void close(boolean clean) throws IOException {
+        lock.writeLock().lock();
+        try {
+            records.force();
+            writeCounts();
+            slots.force();
+            if (clean) {
+                slots.putInt(CLEAN_OFFSET, 1);
+                slots.force();
+            }
+            records.close();
+            slots.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "size: " + size() + ", slots: " + slotCount + ", records: " + recordsEnd + " bytes";
+    }
+
+    private long find(long hash, byte[] keyBytes) {
+        long mask = slotCount - 1;
+        long slot = hash & mask;
+        while (true) {
+            long position = slotPosition(slot);
+            long slotHash = slots.getLong(position);
+            if (slotHash == 0) return -1;
+            if (slotHash == hash) {
+                long offset = slots.getLong(position + 8);
+                if (offset != TOMBSTONE && keyEquals(offset, keyBytes)) return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Rehashes the live slots into a new slot file, which replaces the current one once complete.
+     */
+    private void resize(long newSlotCount) throws IOException {
+        File resizedFile = new File(slotsFile.getPath() + ".resize");
+        Files.deleteIfExists(resizedFile.toPath());
+        MappedFile resized = MappedFile.open(resizedFile, SLOTS_CHUNK_SHIFT, HEADER_SIZE + newSlotCount * SLOT_SIZE);
+        byte[] header = new byte[HEADER_SIZE];
+        slots.get(0, header);
+        resized.put(0, header);
+        long mask = newSlotCount - 1;
+        for (long slot = 0; slot < slotCount; slot++) {
+            long position = slotPosition(slot);
+            long hash = slots.getLong(position);
+            long offset = slots.getLong(position + 8);
+            if (hash == 0 || offset == TOMBSTONE) continue;
+            long newSlot = hash & mask;
+            while (resized.getLong(HEADER_SIZE + newSlot * SLOT_SIZE) != 0) {
+                newSlot = (newSlot + 1) & mask;
+            }
+            resized.putLong(HEADER_SIZE + newSlot * SLOT_SIZE, hash);
+            resized.putLong(HEADER_SIZE + newSlot * SLOT_SIZE + 8, offset);
+        }
+        resized.putLong(SLOTS_OFFSET, newSlotCount);
+        resized.force();
+        resized.close();
+        slots.close();
+        Files.move(resizedFile.toPath(), slotsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.slots = MappedFile.open(slotsFile, SLOTS_CHUNK_SHIFT, HEADER_SIZE + newSlotCount * SLOT_SIZE);
+        this.slotCount = newSlotCount;
+        this.used = size;
+        writeCounts();
+    }
+
+    private long appendRecord(byte[] keyBytes, byte[] iidBytes) throws IOException {
+        long length = 8L + keyBytes.length + iidBytes.length;
+        long chunkSize = 1L << RECORDS_CHUNK_SHIFT;
+        if (length > chunkSize) throw new IllegalArgumentException("Key of " + keyBytes.length + " bytes is too long for the IID index");
+        long offset = recordsEnd;
+        // records do not span chunks
+        if ((offset & (chunkSize - 1)) + length > chunkSize) offset = roundUpToChunk(offset, RECORDS_CHUNK_SHIFT);
+        records.ensureSize(roundUpToChunk(offset + length, RECORDS_CHUNK_SHIFT));
+        records.putInt(offset, keyBytes.length);
+        records.putInt(offset + 4, iidBytes.length);
+        records.put(offset + 8, keyBytes);
+        records.put(offset + 8 + keyBytes.length, iidBytes);
+        recordsEnd = offset + length;
+        return offset;
+    }
+
+    private boolean keyEquals(long offset, byte[] keyBytes) {
+        if (records.getInt(offset) != keyBytes.length) return false;
+        byte[] recordKey = new byte[keyBytes.length];
+        records.get(offset + 8, recordKey);
+        return Arrays.equals(recordKey, keyBytes);
+    }
+
+    private String readIID(long offset) {
+        return new String(readIIDBytes(offset), UTF_8);
+    }
+
+    private byte[] readIIDBytes(long offset) {
+        byte[] iid = new byte[records.getInt(offset + 4)];
+        records.get(offset + 8 + records.getInt(offset), iid);
+        return iid;
+    }
+
+    private void writeCounts() {
+        slots.putLong(SIZE_OFFSET, size);
+        slots.putLong(USED_OFFSET, used);
+        slots.putLong(RECORDS_END_OFFSET, recordsEnd);
+    }
+
+    private static long slotPosition(long slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static long roundUpToChunk(long position, int chunkShift) {
+        long chunkSize = 1L << chunkShift;
+        return Math.max(chunkSize, (position + chunkSize - 1) & -chunkSize);
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the key, finished with the MurmurHash3 mix; 0 marks an empty slot.
+     */
+    static long hash(byte[] keyBytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : keyBytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * A file mapped in chunks of 2^chunkShift bytes, so that it can be larger than a single mapping. Values
+     * never span two chunks.
+     */
+    private static class MappedFile {
+        private final FileChannel channel;
+        private final int chunkShift;
+        private final long chunkMask;
+        private final List<MappedByteBuffer> chunks;
+        private long mappedSize;
+
+        private MappedFile(FileChannel channel, int chunkShift) {
+            this.channel = channel;
+            this.chunkShift = chunkShift;
+            this.chunkMask = (1L << chunkShift) - 1;
+            this.chunks = new ArrayList<>();
+            this.mappedSize = 0;
+        }
+
+        private static MappedFile open(File file, int chunkShift, long size) throws IOException {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedFile mappedFile = new MappedFile(channel, chunkShift);
+            mappedFile.ensureSize(size);
+            return mappedFile;
+        }
+
+        private void ensureSize(long size) throws IOException {
+            if (size <= mappedSize) return;
+            long chunkSize = 1L << chunkShift;
+            // a partial last chunk is mapped again at its new length
+            if (!chunks.isEmpty() && (mappedSize & chunkMask) != 0) {
+                chunks.remove(chunks.size() - 1);
+                mappedSize = (long) chunks.size() << chunkShift;
+            }
+            while (mappedSize < size) {
+                long length = Math.min(chunkSize, size - mappedSize);
+                chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, mappedSize, length));
+                mappedSize += length;
+            }
+        }
+
+        private MappedByteBuffer chunk(long position) {
+            return chunks.get((int) (position >>> chunkShift));
+        }
+
+        private long getLong(long position) {
+            return chunk(position).getLong((int) (position & chunkMask));
+        }
+
+        private void putLong(long position, long value) {
+            chunk(position).putLong((int) (position & chunkMask), value);
+        }
+
+        private int getInt(long position) {
+            return chunk(position).getInt((int) (position & chunkMask));
+        }
+
+        private void putInt(long position, int value) {
+            chunk(position).putInt((int) (position & chunkMask), value);
+        }
+
+        private void get(long position, byte[] bytes) {
+            ByteBuffer buffer = chunk(position).duplicate();
+            buffer.position((int) (position & chunkMask));
+            buffer.get(bytes);
+        }
+
+        private void put(long position, byte[] bytes) {
+            ByteBuffer buffer = chunk(position).duplicate();
+            buffer.position((int) (position & chunkMask));
+            buffer.put(bytes);
+        }
+
+        private void force() {
+            for (MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+        }
+
+        private void close() throws IOException {
+            channel.close();
+        }
+    }
+}
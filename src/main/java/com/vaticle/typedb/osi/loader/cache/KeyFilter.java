@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Bloom filter over the keys of the things of a type. A key the filter does not contain is certainly not held
+ * by any thing added to the filter; a key it contains may be. The filter takes a fixed memory budget and keeps
+ * the requested false positive rate up to its capacity. Keys can be added and tested from any thread.
+ */
+public class KeyFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashes;
+    private final long capacity;
+    private final LongAdder added;
+    private final LongAdder misses;
+    private final LongAdder hits;
+    private final LongAdder falsePositives;
+
+    public KeyFilter(long memoryBytes, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("false positive rate must be between 0 and 1, but was: " + falsePositiveRate);
+        }
+        int words = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, memoryBytes / 8));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = 64L * words;
+        this.hashes = (int) Math.max(1, Math.round(-Math.log(falsePositiveRate) / LN2));
+        this.capacity = (long) (bitCount * LN2 * LN2 / -Math.log(falsePositiveRate));
+        this.added = new LongAdder();
+        this.misses = new LongAdder();
+        this.hits = new LongAdder();
+        this.falsePositives = new LongAdder();
+    }
+
+    public void add(String key) {
+        long hash = IIDIndex.hash(key.getBytes(UTF_8));
+        long step = step(hash);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(hash + i * step, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            while (((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                // retry until the bit is set
+            }
+        }
+        added.increment();
+    }
+
+    /**
+     * Returns false if the key was certainly never added, and true if it may have been.
+     */
+    public boolean mightContain(String key) {
+        long hash = IIDIndex.hash(key.getBytes(UTF_8));
+        long step = step(hash);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(hash + i * step, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                misses.increment();
+                return false;
+            }
+        }
+        hits.increment();
+        return true;
+    }
+
+    /**
+     * Records that a key the filter may have contained turned out not to be held by any thing.
+     */
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getAdded() {
+        return added.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "added: " + getAdded() + ", capacity: " + capacity + ", misses: " + getMisses() + ", hits: " + getHits()
+                + ", false positives: " + getFalsePositives();
+    }
+
+    private static long step(long hash) {
+        // second hash for double hashing, odd so that it is never 0
+        return (Long.rotateLeft(hash, 32) * 0x9e3779b97f4a7c15L) | 1;
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.cache;
+
+import com.vaticle.typedb.driver.api.TypeDBSession;
+import com.vaticle.typedb.driver.api.TypeDBTransaction;
+import com.vaticle.typedb.driver.api.answer.ConceptMap;
+import com.vaticle.typedb.driver.api.concept.value.Value;
+import com.vaticle.typedb.osi.loader.config.Configuration;
+import com.vaticle.typedb.osi.loader.type.AttributeValueType;
+import com.vaticle.typedb.osi.loader.util.GeneratorUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Reads the keys of the things of a player type - their identifying attributes - together with their IIDs:
+ * either all of them in streamed read queries that fill the IID cache, or a given set of keys in one query.
+ * A scan over numeric keys can be split into scans over ranges of the first identifying attribute, to be run in
+ * parallel read transactions. Keys held by more than one thing are marked ambiguous in the cache, so that such
+ * players are still matched and the ambiguity is reported per row.
+ */
+public class PlayerKeyScan {
+
+    private final String type;
+    private final Configuration.Definition.Attribute[] ownerships;
+    // values of the first identifying attribute the scan reads: from lower inclusive to upper exclusive, unbounded if null
+    private final Number lower;
+    private final Number upper;
+
+    public PlayerKeyScan(String type, Configuration.Definition.Attribute[] ownerships) {
+        this(type, ownerships, null, null);
+    }
+
+    private PlayerKeyScan(String type, Configuration.Definition.Attribute[] ownerships, Number lower, Number upper) {
+        this.type = type;
+        this.ownerships = ownerships;
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Identifies the scan, so that the same player type and key is scanned only once per load.
+     */
+    public String id() {
+        StringBuilder id = new StringBuilder(type);
+        for (Configuration.Definition.Attribute ownership : ownerships) {
+            id.append(' ').append(ownership.getAttribute());
+        }
+        return id.toString();
+    }
+
+    public String query() {
+        StringBuilder query = new StringBuilder("match $x isa ").append(type);
+        for (int i = 0; i < ownerships.length; i++) {
+            query.append(", has ").append(ownerships[i].getAttribute()).append(" $k").append(i);
+        }
+        query.append(';');
+        if (lower != null) {
+            query.append(" $k0 >= ");
+            GeneratorUtil.appendValueLiteral(query, lower);
+            query.append(';');
+        }
+        if (upper != null) {
+            query.append(" $k0 < ");
+            GeneratorUtil.appendValueLiteral(query, upper);
+            query.append(';');
+        }
+        return appendGet(query).toString();
+    }
+
+    /**
+     * Returns the scan of the things whose first identifying attribute is in the given range.
+     */
+    PlayerKeyScan range(Number lower, Number upper) {
+        return new PlayerKeyScan(type, ownerships, lower, upper);
+    }
+
+    /**
+     * Splits the scan into up to the given number of scans over consecutive ranges of the values of the first
+     * identifying attribute, between its minimum and maximum read in a read transaction. Only long and double
+     * values are split; the scan is returned whole otherwise.
+     */
+    public List<PlayerKeyScan> partition(TypeDBSession session, int partitions) {
+        AttributeValueType valueType = ownerships[0].getConceptValueType();
+        if (partitions <= 1 || (valueType != AttributeValueType.LONG && valueType != AttributeValueType.DOUBLE)) {
+            return Collections.singletonList(this);
+        }
+        Optional<Value> min;
+        Optional<Value> max;
+        try (TypeDBTransaction tx = session.transaction(TypeDBTransaction.Type.READ)) {
+            min = tx.query().getAggregate(aggregateQuery("min")).resolve();
+            max = tx.query().getAggregate(aggregateQuery("max")).resolve();
+        }
+        if (min.isEmpty() || max.isEmpty()) return Collections.singletonList(this);
+        List<PlayerKeyScan> scans = new ArrayList<>();
+        Number previous = null;
+        for (Number bound : bounds(number(min.get()), number(max.get()), partitions, valueType == AttributeValueType.LONG)) {
+            scans.add(range(previous, bound));
+            previous = bound;
+        }
+        scans.add(range(previous, null));
+        return scans;
+    }
+
+    /**
+     * Returns the distinct bounds between the given number of ranges of equal width from min to max.
+     */
+    static List<Number> bounds(double min, double max, int partitions, boolean integral) {
+        List<Number> bounds = new ArrayList<>();
+        for (int i = 1; i < partitions; i++) {
+            double bound = min + (max - min) * i / partitions;
+            Number next = integral ? (Number) (long) Math.ceil(bound) : (Number) bound;
+            if (next.doubleValue() <= min || next.doubleValue() > max) continue;
+            if (!bounds.isEmpty() && bounds.get(bounds.size() - 1).equals(next)) continue;
+            bounds.add(next);
+        }
+        return bounds;
+    }
+
+    private String aggregateQuery(String aggregate) {
+        return "match $x isa " + type + ", has " + ownerships[0].getAttribute() + " $k0; get $k0; " + aggregate + " $k0;";
+    }
+
+    private static double number(Value value) {
+        return value.isLong() ? value.asLong() : value.asDouble();
+    }
+
+    /**
+     * Returns the query for the things holding one of the given keys, each given as the single value of every
+     * identifying attribute. The keys are matched as a disjunction.
+     */
+    public String query(List<? extends List<? extends List<Object>>> keys) {
+        StringBuilder query = new StringBuilder("match $x isa ").append(type);
+        for (int i = 0; i < ownerships.length; i++) {
+            query.append(", has ").append(ownerships[i].getAttribute()).append(" $k").append(i);
+        }
+        query.append(';');
+        if (keys.size() == 1) {
+            appendKey(query, keys.get(0));
+        } else {
+            for (int k = 0; k < keys.size(); k++) {
+                if (k > 0) query.append(" or");
+                query.append(" {");
+                appendKey(query, keys.get(k));
+                query.append(" }");
+            }
+            query.append(';');
+        }
+        return appendGet(query).toString();
+    }
+
+    private void appendKey(StringBuilder query, List<? extends List<Object>> key) {
+        for (int i = 0; i < ownerships.length; i++) {
+            query.append(" $k").append(i).append(" == ");
+            GeneratorUtil.appendValueLiteral(query, key.get(i).get(0));
+            query.append(';');
+        }
+    }
+
+    private StringBuilder appendGet(StringBuilder query) {
+        query.append(" get $x");
+        for (int i = 0; i < ownerships.length; i++) {
+            query.append(", $k").append(i);
+        }
+        return query.append(';');
+    }
+
+    /**
+     * Returns the key of the thing of an answer of the query.
+     */
+    public String key(ConceptMap answer) {
+        List<List<Object>> values = new ArrayList<>(ownerships.length);
+        for (int i = 0; i < ownerships.length; i++) {
+            values.add(Collections.singletonList(value(answer.get("k" + i).asAttribute().getValue())));
+        }
+        return IIDCache.key(type, ownerships, values);
+    }
+
+    /**
+     * Runs the scan in its own read transaction and adds the keys to the IID cache, until the budget of keys
+     * shared with the other scans is spent. Returns the number of answers read.
+     * <p>
+     * The things holding a key all have the same first attribute value, so a key is only read by one scan, where
+     * its ambiguity is detected: against the IID index, which never evicts, or else against the keys read by
+     * the scan, as the cache may have evicted them.
+     */
+    public long scan(TypeDBSession session, IIDCache iidCache, AtomicLong budget) {
+        Map<String, String> scanned = iidCache.hasIndex() ? null : new HashMap<>();
+        return forEachAnswer(session, answer -> {
+            String key = key(answer);
+            String iid = answer.get("x").asThing().getIID();
+            if (scanned != null) {
+                String scannedIID = scanned.putIfAbsent(key, iid);
+                if (scannedIID != null) {
+                    if (!scannedIID.equals(iid)) iidCache.markAmbiguous(key);
+                    return true;
+                }
+            }
+            if (budget.decrementAndGet() < 0) return false;
+            String cachedIID = iidCache.putIfAbsent(key, iid);
+            if (cachedIID != null && !cachedIID.equals(iid)) iidCache.markAmbiguous(key);
+            return true;
+        });
+    }
+
+    /**
+     * Runs the scan in its own read transaction, adds every key to the filter, and returns the number of
+     * answers read.
+     */
+    public long scan(TypeDBSession session, KeyFilter keyFilter) {
+        return forEachAnswer(session, answer -> {
+            keyFilter.add(key(answer));
+            return true;
+        });
+    }
+
+    /**
+     * Passes the answers of the scan to the consumer until it returns false.
+     */
+    private long forEachAnswer(TypeDBSession session, Predicate<ConceptMap> consumer) {
+        long answers = 0;
+        try (TypeDBTransaction tx = session.transaction(TypeDBTransaction.Type.READ)) {
+            Iterator<ConceptMap> iterator = tx.query().get(query()).iterator();
+            while (iterator.hasNext()) {
+                answers++;
+                if (!consumer.test(iterator.next())) break;
+            }
+        }
+        return answers;
+    }
+
+    /**
+     * Returns the value as the java type the row binder converts cells of its value type to.
+     */
+    static Object value(Value value) {
+        if (value.isLong()) return value.asLong();
+        else if (value.isDouble()) return value.asDouble();
+        else if (value.isBoolean()) return value.asBoolean();
+        else if (value.isDateTime()) return value.asDateTime();
+        else return value.asString();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Window over the keys of the things most recently inserted by a generator, holding the attribute values each
+ * thing was sent with. Once the window is full, the least recently used key is dropped. Keys can be recorded
+ * from any thread.
+ */
+public class RecentKeys {
+
+    private final LinkedHashMap<String, Set<String>> window;
+    private long evictions;
+
+    public RecentKeys(int size) {
+        this.window = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+                if (size() <= size) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Records the values under the key. Returns null if the key was not in the window, and otherwise the values
+     * that were not recorded under it yet.
+     */
+    public synchronized List<String> record(String key, Collection<String> values) {
+        Set<String> recorded = window.get(key);
+        if (recorded == null) {
+            window.put(key, new HashSet<>(values));
+            return null;
+        }
+        List<String> newValues = new ArrayList<>();
+        for (String value : values) {
+            if (recorded.add(value)) newValues.add(value);
+        }
+        return newValues;
+    }
+
+    /**
+     * Removes the values recorded under the key by a transaction that failed to commit, and the key once no
+     * values are recorded under it.
+     */
+    public synchronized void remove(String key, Collection<String> values) {
+        Set<String> recorded = window.get(key);
+        if (recorded == null) return;
+        recorded.removeAll(values);
+        if (recorded.isEmpty()) window.remove(key);
+    }
+
+    public synchronized int size() {
+        return window.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "keys: " + window.size() + ", evictions: " + evictions;
+    }
+}
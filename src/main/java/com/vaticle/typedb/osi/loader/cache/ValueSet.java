@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Set of the attribute values sent during a run, keyed by attribute type and value. The first heapSize values
+ * are held on the heap; once it is full, further values spill to a memory-mapped table in a temporary
+ * directory, which is deleted on close. Values can be added and removed from any thread.
+ */
+public class ValueSet implements AutoCloseable {
+
+    private static final String TYPE_SEPARATOR = "\u001f";
+    private static final String PRESENT = "";
+
+    private final int heapSize;
+    private final File spillDirectory;
+    private final Set<String> heap;
+    private final LongAdder added;
+    private final LongAdder duplicates;
+    private volatile Path spillPath;
+    private volatile IIDIndex spill;
+
+    public ValueSet(int heapSize, File spillDirectory) {
+        this.heapSize = heapSize;
+        this.spillDirectory = spillDirectory;
+        this.heap = ConcurrentHashMap.newKeySet();
+        this.added = new LongAdder();
+        this.duplicates = new LongAdder();
+    }
+
+    /**
+     * Returns the key of the given value of the given attribute type.
+     */
+    public static String key(String attributeType, Object value) {
+        return attributeType + TYPE_SEPARATOR + value;
+    }
+
+    /**
+     * Adds the key and returns true if it was not in the set yet. Keys added concurrently from two threads
+     * while the set starts spilling may both be reported as new.
+     */
+    public boolean add(String key) {
+        boolean isNew;
+        if (heap.contains(key)) {
+            isNew = false;
+        } else if (heap.size() < heapSize) {
+            isNew = heap.add(key);
+        } else {
+            isNew = spill().putIfAbsent(key, PRESENT) == null;
+        }
+        if (isNew) added.increment();
+        else duplicates.increment();
+        return isNew;
+    }
+
+    /**
+     * Removes the key, so that the value is sent again by the next row holding it.
+     */
+    public void remove(String key) {
+        if (!heap.remove(key) && spill != null) spill.remove(key);
+    }
+
+    public long getAdded() {
+        return added.sum();
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        heap.clear();
+        if (spill != null) {
+            spill.close();
+            for (File file : spillPath.getParent().toFile().listFiles()) {
+                Files.deleteIfExists(file.toPath());
+            }
+            Files.deleteIfExists(spillPath.getParent());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "added: " + getAdded() + ", duplicates: " + getDuplicates() + ", on heap: " + heap.size()
+                + (spill == null ? "" : ", spilled: " + spill.size());
+    }
+
+    private IIDIndex spill() {
+        if (spill == null) {
+            synchronized (this) {
+                if (spill == null) {
+                    try {
+                        Path directory = spillDirectory == null ? Files.createTempDirectory("typedb-loader-values")
+                                : Files.createTempDirectory(spillDirectory.toPath(), "typedb-loader-values");
+                        spillPath = directory.resolve("values");
+                        spill = IIDIndex.open(spillPath.toString(), new byte[0], true);
+                    } catch (IOException ioException) {
+                        throw new UncheckedIOException(ioException);
+                    }
+                }
+            }
+        }
+        return spill;
+    }
+}
@@ -130,7 +130,34 @@ public class Configuration {
 
         Character separator;
         Integer rowsPerCommit;
+        Integer rowsPerQuery;
+        Integer commitRetries;
+        Integer minRowsPerCommit;
+        Integer maxRowsPerCommit;
+        Integer matchPipelineDepth;
+        Integer playerLookupGroupSize;
+        Integer iidCacheSize;
+        String iidIndex;
+        Integer keyFilterSize;
+        Double keyFilterFalsePositiveRate;
+        Integer attributeDedupSize;
+        String attributeDedupDirectory;
+        Integer mergeWindow;
         Integer parallelisation;
+        Integer minParallelisation;
+        Boolean adaptiveParallelisation;
+        Integer parseParallelisation;
+        Integer readParallelisation;
+        Boolean indexGzip;
+        Boolean streamingRead;
+        Boolean projectColumns;
+        Boolean queryTemplates;
+        Boolean captureIIDs;
+        Boolean prefetchPlayers;
+        Boolean keyFilterScan;
+        Boolean coalesceAppends;
+        Boolean adaptiveRowsPerCommit;
+        Boolean scheduleGenerators;
         String schema;
         ArrayList<String> orderedBeforeGenerators;
         ArrayList<String> orderedAfterGenerators;
@@ -144,11 +171,134 @@ public class Configuration {
             return rowsPerCommit;
         }
 
+        public Integer getRowsPerQuery() {
+            if (rowsPerQuery == null) return 1;
+            else return rowsPerQuery;
+        }
+
+        public Integer getCommitRetries() {
+            if (commitRetries == null) return 0;
+            else return commitRetries;
+        }
+
+        public Integer getMinRowsPerCommit() {
+            return minRowsPerCommit;
+        }
+
+        public Integer getMaxRowsPerCommit() {
+            return maxRowsPerCommit;
+        }
+
+        public Integer getMatchPipelineDepth() {
+            if (matchPipelineDepth == null) return 1;
+            else return matchPipelineDepth;
+        }
+
+        public Integer getPlayerLookupGroupSize() {
+            if (playerLookupGroupSize == null) return 0;
+            else return playerLookupGroupSize;
+        }
+
+        public Integer getIidCacheSize() {
+            if (iidCacheSize == null) return 0;
+            else return iidCacheSize;
+        }
+
+        public String getIidIndex() {
+            return iidIndex;
+        }
+
+        public Integer getKeyFilterSize() {
+            if (keyFilterSize == null) return 0;
+            else return keyFilterSize;
+        }
+
+        public Double getKeyFilterFalsePositiveRate() {
+            if (keyFilterFalsePositiveRate == null) return 0.01;
+            else return keyFilterFalsePositiveRate;
+        }
+
+        public Integer getAttributeDedupSize() {
+            if (attributeDedupSize == null) return 0;
+            else return attributeDedupSize;
+        }
+
+        public String getAttributeDedupDirectory() {
+            return attributeDedupDirectory;
+        }
+
+        public Integer getMergeWindow() {
+            if (mergeWindow == null) return 0;
+            else return mergeWindow;
+        }
+
         public Integer getParallelisation() {
             if (parallelisation == null) return DEFAULT_PARALLELISATION;
             else return parallelisation;
         }
 
+        public Integer getMinParallelisation() {
+            if (minParallelisation == null) return 1;
+            else return minParallelisation;
+        }
+
+        public Boolean getAdaptiveParallelisation() {
+            if (adaptiveParallelisation == null) return false;
+            else return adaptiveParallelisation;
+        }
+
+        public Integer getParseParallelisation() {
+            if (parseParallelisation == null) return 0;
+            else return parseParallelisation;
+        }
+
+        public Integer getReadParallelisation() {
+            if (readParallelisation == null) return 1;
+            else return readParallelisation;
+        }
+
+        public Boolean getIndexGzip() {
+            if (indexGzip == null) return false;
+            else return indexGzip;
+        }
+
+        public Boolean getStreamingRead() {
+            return streamingRead;
+        }
+
+        public Boolean getProjectColumns() {
+            return projectColumns;
+        }
+
+        public Boolean getQueryTemplates() {
+            return queryTemplates;
+        }
+
+        public Boolean getCaptureIIDs() {
+            return captureIIDs;
+        }
+
+        public Boolean getPrefetchPlayers() {
+            return prefetchPlayers;
+        }
+
+        public Boolean getKeyFilterScan() {
+            return keyFilterScan;
+        }
+
+        public Boolean getCoalesceAppends() {
+            return coalesceAppends;
+        }
+
+        public Boolean getAdaptiveRowsPerCommit() {
+            return adaptiveRowsPerCommit;
+        }
+
+        public Boolean getScheduleGenerators() {
+            if (scheduleGenerators == null) return false;
+            else return scheduleGenerators;
+        }
+
         public String getSchema() {
             return schema;
         }
@@ -181,6 +331,24 @@ public class Configuration {
         public static class GeneratorConfig {
             Character separator;
             Integer rowsPerCommit;
+            Integer rowsPerQuery;
+            Integer commitRetries;
+            Integer minRowsPerCommit;
+            Integer maxRowsPerCommit;
+            Integer matchPipelineDepth;
+            Integer playerLookupGroupSize;
+            Integer keyFilterSize;
+            Double keyFilterFalsePositiveRate;
+            Integer mergeWindow;
+            Boolean streamingRead;
+            Boolean projectColumns;
+            Boolean queryTemplates;
+            Boolean captureIIDs;
+            Boolean prefetchPlayers;
+            Boolean keyFilterScan;
+            Boolean coalesceAppends;
+            Boolean adaptiveRowsPerCommit;
+            String[] conflictColumns;
 
             public Character getSeparator() {
                 return separator;
@@ -189,6 +357,78 @@ public class Configuration {
             public Integer getRowsPerCommit() {
                 return rowsPerCommit;
             }
+
+            public Integer getRowsPerQuery() {
+                return rowsPerQuery;
+            }
+
+            public Integer getCommitRetries() {
+                return commitRetries;
+            }
+
+            public Integer getMinRowsPerCommit() {
+                return minRowsPerCommit;
+            }
+
+            public Integer getMaxRowsPerCommit() {
+                return maxRowsPerCommit;
+            }
+
+            public Integer getMatchPipelineDepth() {
+                return matchPipelineDepth;
+            }
+
+            public Integer getPlayerLookupGroupSize() {
+                return playerLookupGroupSize;
+            }
+
+            public Integer getKeyFilterSize() {
+                return keyFilterSize;
+            }
+
+            public Double getKeyFilterFalsePositiveRate() {
+                return keyFilterFalsePositiveRate;
+            }
+
+            public Integer getMergeWindow() {
+                return mergeWindow;
+            }
+
+            public Boolean getStreamingRead() {
+                return streamingRead;
+            }
+
+            public Boolean getProjectColumns() {
+                return projectColumns;
+            }
+
+            public Boolean getQueryTemplates() {
+                return queryTemplates;
+            }
+
+            public Boolean getCaptureIIDs() {
+                return captureIIDs;
+            }
+
+            public Boolean getPrefetchPlayers() {
+                return prefetchPlayers;
+            }
+
+            public Boolean getKeyFilterScan() {
+                return keyFilterScan;
+            }
+
+            public Boolean getCoalesceAppends() {
+                return coalesceAppends;
+            }
+
+            public Boolean getAdaptiveRowsPerCommit() {
+                return adaptiveRowsPerCommit;
+            }
+
+            public String[] getConflictColumns() {
+                return conflictColumns;
+            }
         }
 
         public static class Attribute extends Generator {
@@ -209,6 +449,7 @@ public class Configuration {
             public static class Insert {
                 String entity;
                 Definition.Attribute[] ownerships;
+                String[] key;
 
                 public String getEntity() {
                     return entity;
@@ -218,6 +459,10 @@ public class Configuration {
                     return ownerships;
                 }
 
+                public String[] getKey() {
+                    return key;
+                }
+
                 public Definition.Attribute[] getRequiredOwnerships() {
                     ArrayList<Definition.Attribute> tmp = new ArrayList<>();
                     for (Definition.Attribute attribute : getOwnerships()) {
@@ -29,7 +29,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Stream;
 
 public class ConfigurationValidation {
@@ -62,6 +64,78 @@ public class ConfigurationValidation {
             if (globalConfig.getParallelisation() != null) {
                 validationReport.get("warnings").add("defaultConfig.parallelisation is not set - defaults to number of processors on machine * 8");
             }
+            //ADAPTIVE_PARALLELISATION
+            if (globalConfig.getAdaptiveParallelisation()) {
+                validationReport.get("warnings").add("defaultConfig.adaptiveParallelisation: the number of writers holding a transaction is adjusted between defaultConfig.minParallelisation (" + globalConfig.getMinParallelisation() + ") and defaultConfig.parallelisation by commit latency, conflicts and lost connections, and queue depth");
+            }
+            //PARSE_PARALLELISATION
+            if (globalConfig.getParseParallelisation() > 0 && globalConfig.getStreamingRead() != null && globalConfig.getStreamingRead()) {
+                validationReport.get("warnings").add("defaultConfig.parseParallelisation is ignored for generators using streamingRead - records are parsed by the reader");
+            }
+            //PROJECT_COLUMNS
+            if (globalConfig.getProjectColumns() != null && globalConfig.getProjectColumns()) {
+                validationReport.get("warnings").add("defaultConfig.projectColumns: only columns used by a generator are parsed - rows written to error logs show null for all other columns");
+            }
+            //ROWS_PER_QUERY
+            if (globalConfig.getRowsPerQuery() > 1) {
+                validationReport.get("warnings").add("defaultConfig.rowsPerQuery: entity and attribute inserts are sent in queries of up to " + globalConfig.getRowsPerQuery() + " rows - all rows of a query that fails are written to the unavailable log");
+            }
+            //ADAPTIVE_ROWS_PER_COMMIT
+            if (globalConfig.getAdaptiveRowsPerCommit() != null && globalConfig.getAdaptiveRowsPerCommit()) {
+                validationReport.get("warnings").add("defaultConfig.adaptiveRowsPerCommit: rowsPerCommit is the starting size - it is adjusted between minRowsPerCommit and maxRowsPerCommit (by default rowsPerCommit / 16 and rowsPerCommit * 16) by commit throughput");
+            }
+            if (globalConfig.getMinRowsPerCommit() != null && globalConfig.getMaxRowsPerCommit() != null
+                    && globalConfig.getMinRowsPerCommit() > globalConfig.getMaxRowsPerCommit()) {
+                validationReport.get("errors").add("defaultConfig.minRowsPerCommit: must not be greater than defaultConfig.maxRowsPerCommit");
+            }
+            //COMMIT_RETRIES
+            if (globalConfig.getCommitRetries() > 0) {
+                validationReport.get("warnings").add("defaultConfig.commitRetries: commits failing on a conflict or a lost connection are retried " + globalConfig.getCommitRetries() + " times before the load stops - commits failing on their data are split until the failing rows are written to the failed commit log");
+            }
+            //CAPTURE_IIDS
+            if (globalConfig.getCaptureIIDs() != null && globalConfig.getCaptureIIDs() && globalConfig.getIidCacheSize() <= 0) {
+                validationReport.get("warnings").add("defaultConfig.captureIIDs: no IIDs are captured unless defaultConfig.iidCacheSize is set");
+            }
+            //PREFETCH_PLAYERS
+            if (globalConfig.getPrefetchPlayers() != null && globalConfig.getPrefetchPlayers() && globalConfig.getIidCacheSize() <= 0) {
+                validationReport.get("warnings").add("defaultConfig.prefetchPlayers: no players are prefetched unless defaultConfig.iidCacheSize is set");
+            }
+            //IID_INDEX
+            if (globalConfig.getIidIndex() != null && globalConfig.getIidCacheSize() <= 0) {
+                validationReport.get("warnings").add("defaultConfig.iidIndex: the IID index is not used unless defaultConfig.iidCacheSize is set");
+            }
+            //KEY_FILTER_SIZE
+            if (globalConfig.getKeyFilterSize() > 0) {
+                validationReport.get("warnings").add("defaultConfig.keyFilterSize: appendAttributeOrInsertThing generators skip the match of rows whose key no thing has - no other generator may insert things of the matched types concurrently");
+            }
+            //KEY_FILTER_FALSE_POSITIVE_RATE
+            if (globalConfig.getKeyFilterFalsePositiveRate() <= 0 || globalConfig.getKeyFilterFalsePositiveRate() >= 1) {
+                validationReport.get("errors").add("defaultConfig.keyFilterFalsePositiveRate: must be between 0 and 1");
+            }
+            //KEY_FILTER_SCAN
+            if (globalConfig.getKeyFilterScan() != null && !globalConfig.getKeyFilterScan()) {
+                validationReport.get("warnings").add("defaultConfig.keyFilterScan: key filters are not seeded from the database - rows are inserted without a match unless a thing with their key was inserted by the same generator");
+            }
+            //ATTRIBUTE_DEDUP_SIZE
+            if (globalConfig.getAttributeDedupSize() > 0) {
+                validationReport.get("warnings").add("defaultConfig.attributeDedupSize: attribute values are sent once per run - values beyond the first " + globalConfig.getAttributeDedupSize() + " spill to disk");
+            }
+            //ATTRIBUTE_DEDUP_DIRECTORY
+            if (globalConfig.getAttributeDedupDirectory() != null && globalConfig.getAttributeDedupSize() <= 0) {
+                validationReport.get("warnings").add("defaultConfig.attributeDedupDirectory: not used unless defaultConfig.attributeDedupSize is set");
+            }
+            //COALESCE_APPENDS
+            if (globalConfig.getCoalesceAppends() != null && globalConfig.getCoalesceAppends()) {
+                validationReport.get("warnings").add("defaultConfig.coalesceAppends: appendAttribute rows of a transaction matching the same thing are appended together - a group that fails to match writes all of its rows to the error logs");
+            }
+            //MERGE_WINDOW
+            if (globalConfig.getMergeWindow() > 0) {
+                validationReport.get("warnings").add("defaultConfig.mergeWindow: entity generators with a key append rows to entities of keys inserted by earlier transactions - rows are routed to writers by their key columns unless conflictColumns are set, and routed files are read and parsed by a single thread");
+            }
+            //SCHEDULE_GENERATORS
+            if (globalConfig.getScheduleGenerators()) {
+                validationReport.get("warnings").add("defaultConfig.scheduleGenerators: generators other than ordered before/after generators run concurrently once the generators writing the types they match are done - defaultConfig.parallelisation writers are split among the generators running at the same time");
+            }
             //IGNORE_GENERATORS
             if (globalConfig.getIgnoreGenerators() != null) {
                 validationReport.get("warnings").add("defaultConfig.ignoreGenerators: ignoring generators: [" + String.join(", ", globalConfig.getIgnoreGenerators()) + "]");
@@ -280,6 +354,12 @@ public class ConfigurationValidation {
             validationReport.get("error").add(breadcrumbs + ".rowsPerCommit: missing required field: rowsPerCommit must be specified here or in defaultConfig");
             valid = false;
         }
+        if (config != null && config.getConflictColumns() != null) {
+            validationReport.get("warnings").add(breadcrumbs + ".conflictColumns: rows are routed to writers by the values of columns [" + String.join(", ", config.getConflictColumns()) + "] - transactions hold up to rowsPerCommit rows of one writer each, and values shared by many rows hold back the other writers");
+            if (dc.getGlobalConfig().getParseParallelisation() > 0 || dc.getGlobalConfig().getReadParallelisation() > 1) {
+                validationReport.get("warnings").add(breadcrumbs + ".conflictColumns: the file is read and parsed by a single thread to keep the order of rows - defaultConfig.parseParallelisation and defaultConfig.readParallelisation are not used for it");
+            }
+        }
         return valid;
     }
 
@@ -418,6 +498,48 @@ public class ConfigurationValidation {
             validationReport.get("errors").add(breadcrumbs + ".ownerships: missing required ownerships list");
         } else {
             valOwnerships(validationReport, breadcrumbs, configuration, generator, attributes, session, true);
+            if (generator instanceof Configuration.Generator.Entity) {
+                valEntityKey(validationReport, breadcrumbs, ((Configuration.Generator.Entity) generator).getInsert().getKey(), attributes);
+                valEntityConflictColumns(validationReport, breadcrumbs, configuration, (Configuration.Generator.Entity) generator, attributes);
+            }
+        }
+    }
+
+    private void valEntityKey(HashMap<String, ArrayList<String>> validationReport,
+                              String breadcrumbs,
+                              String[] key,
+                              Configuration.Definition.Attribute[] attributes) {
+        if (key == null) return;
+        for (String keyAttribute : key) {
+            boolean owned = false;
+            for (Configuration.Definition.Attribute attribute : attributes) {
+                if (keyAttribute.equals(attribute.getAttribute())) owned = true;
+            }
+            if (!owned) {
+                validationReport.get("errors").add(breadcrumbs + ".key: <" + keyAttribute + "> is not one of the ownerships of the insert");
+            }
+        }
+    }
+
+    private void valEntityConflictColumns(HashMap<String, ArrayList<String>> validationReport,
+                                          String breadcrumbs,
+                                          Configuration configuration,
+                                          Configuration.Generator.Entity entity,
+                                          Configuration.Definition.Attribute[] attributes) {
+        String[] key = entity.getInsert().getKey();
+        Configuration.Generator.GeneratorConfig config = entity.getConfig();
+        if (key == null || config == null || config.getConflictColumns() == null || Util.getMergeWindow(configuration, config) <= 0) return;
+        Set<String> keyColumns = new HashSet<>();
+        for (String keyAttribute : key) {
+            for (Configuration.Definition.Attribute attribute : attributes) {
+                if (keyAttribute.equals(attribute.getAttribute())) keyColumns.add(attribute.getColumn());
+            }
+        }
+        for (String conflictColumn : config.getConflictColumns()) {
+            if (!keyColumns.contains(conflictColumn)) {
+                // rows of a key could go to different writers, which cannot see each other's uncommitted entities
+                validationReport.get("errors").add(breadcrumbs + ".config.conflictColumns: <" + conflictColumn + "> is not a column of the key - rows of a key must be written by one writer to be merged");
+            }
         }
     }
 
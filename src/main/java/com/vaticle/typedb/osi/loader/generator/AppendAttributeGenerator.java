@@ -19,9 +19,11 @@ package com.vaticle.typedb.osi.loader.generator;
 import com.vaticle.typedb.driver.api.TypeDBTransaction;
 import com.vaticle.typedb.driver.api.answer.ConceptMap;
 import com.vaticle.typedb.driver.common.exception.TypeDBDriverException;
+import com.vaticle.typedb.osi.loader.cache.IIDCache;
 import com.vaticle.typedb.osi.loader.config.Configuration;
 import com.vaticle.typedb.osi.loader.io.FileLogger;
 import com.vaticle.typedb.osi.loader.util.GeneratorUtil;
+import com.vaticle.typedb.osi.loader.util.RowBinder;
 import com.vaticle.typedb.osi.loader.util.TypeDBUtil;
 import com.vaticle.typedb.osi.loader.util.Util;
 import com.vaticle.typeql.lang.TypeQL;
@@ -29,13 +31,17 @@ import com.vaticle.typeql.lang.builder.ConceptVariableBuilder;
 import com.vaticle.typeql.lang.pattern.constraint.ThingConstraint;
 import com.vaticle.typeql.lang.pattern.statement.ThingStatement;
 import com.vaticle.typeql.lang.query.TypeQLInsert;
-import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static com.vaticle.typedb.osi.loader.util.TypeDBUtil.safeInsert;
 
@@ -45,63 +51,178 @@ public class AppendAttributeGenerator implements Generator {
     private final String[] header;
     private final Configuration.Generator.AppendAttribute appendConfiguration;
     private final char fileSeparator;
+    private final RowBinder binder;
+    private final boolean coalesceAppends;
 
     public AppendAttributeGenerator(String filePath, Configuration.Generator.AppendAttribute appendConfiguration, char fileSeparator) throws IOException {
+        this(filePath, appendConfiguration, fileSeparator, false);
+    }
+
+    /**
+     * If coalesceAppends is set, the valid rows of a transaction that match the same thing are appended with one
+     * match and one insert carrying all of their attributes.
+     */
+    public AppendAttributeGenerator(String filePath, Configuration.Generator.AppendAttribute appendConfiguration, char fileSeparator,
+                                    boolean coalesceAppends) throws IOException {
         this.filePath = filePath;
         this.header = Util.getFileHeader(filePath, fileSeparator);
         this.appendConfiguration = appendConfiguration;
         this.fileSeparator = fileSeparator;
+        this.binder = new RowBinder(filePath, header, fileSeparator, referencedAttributes());
+        this.coalesceAppends = coalesceAppends;
     }
 
     @Override
     public void write(TypeDBTransaction tx, String[] row, boolean allowMultiInsert) {
-        String fileName = FilenameUtils.getName(filePath);
-        String fileNoExtension = FilenameUtils.removeExtension(fileName);
-        String originalRow = String.join(Character.toString(fileSeparator), row);
+        String fileName = binder.getFileName();
+        String fileNoExtension = binder.getFileNoExtension();
 
         if (row.length > header.length) {
-            FileLogger.getLogger().logMalformed(fileName, originalRow);
+            FileLogger.getLogger().logMalformed(fileName, binder.originalRow(row));
             dataLogger.error("Malformed Row detected in <" + filePath + "> - written to <" + fileNoExtension + "_malformed.log" + ">");
         }
 
-        TypeQLInsert query = generateMatchInsertStatement(row);
+        BoundInsert bound = bindMatchInsertStatement(row);
+        TypeQLInsert query = bound.getQuery();
 
-        if (appendAttributeInsertStatementValid(query)) {
+        if (bound.isValid()) {
             try {
                 Iterator<ConceptMap> answers = TypeDBUtil.executeMatch(tx, query);
                 if (!answers.hasNext()) {
-                    FileLogger.getLogger().logNoMatches(fileName, originalRow);
-                    dataLogger.error("Match-insert failed - File <" + filePath + "> row <" + originalRow + "> generates query <" + query + "> which matched no answers.");
+                    FileLogger.getLogger().logNoMatches(fileName, binder.originalRow(row));
+                    dataLogger.error("Match-insert failed - File <" + filePath + "> row <" + binder.originalRow(row) + "> generates query <" + query + "> which matched no answers.");
                 } else {
-                    safeInsert(tx, query, answers, allowMultiInsert, filePath, originalRow, dataLogger);
+                    safeInsert(tx, query, answers, allowMultiInsert, filePath, () -> binder.originalRow(row), dataLogger);
                 }
             } catch (TypeDBDriverException typeDBDriverException) {
-                FileLogger.getLogger().logUnavailable(fileName, originalRow);
+                FileLogger.getLogger().logUnavailable(fileName, binder.originalRow(row));
                 dataLogger.error("TypeDB Unavailable - Row in <" + filePath + "> not inserted - written to <" + fileNoExtension + "_unavailable.log" + ">");
             }
         } else {
-            FileLogger.getLogger().logInvalid(fileName, originalRow);
+            FileLogger.getLogger().logInvalid(fileName, binder.originalRow(row));
             dataLogger.error("Invalid Row detected in <" + filePath + "> - written to <" + fileNoExtension + "_invalid.log" + "> - invalid Statement: <" + query.toString().replace("\n", " ") + ">");
         }
     }
 
+    /**
+     * Groups the valid rows by the values of their match ownerships and appends each group with one query.
+     * Invalid rows, and rows of groups that fail to match, are logged one by one.
+     */
+    @Override
+    public void write(TypeDBTransaction tx, List<String[]> rows, boolean allowMultiInsert) {
+        if (!coalesceAppends) {
+            Generator.super.write(tx, rows, allowMultiInsert);
+            return;
+        }
+
+        String fileName = binder.getFileName();
+        String fileNoExtension = binder.getFileNoExtension();
+        Map<String, List<String[]>> groups = new LinkedHashMap<>();
+        for (String[] row : rows) {
+            if (row.length > header.length) {
+                FileLogger.getLogger().logMalformed(fileName, binder.originalRow(row));
+                dataLogger.error("Malformed Row detected in <" + filePath + "> - written to <" + fileNoExtension + "_malformed.log" + ">");
+            }
+            BoundInsert bound = bindMatchInsertStatement(row);
+            if (bound.isValid()) {
+                groups.computeIfAbsent(matchKey(row), key -> new ArrayList<>()).add(row);
+            } else {
+                FileLogger.getLogger().logInvalid(fileName, binder.originalRow(row));
+                dataLogger.error("Invalid Row detected in <" + filePath + "> - written to <" + fileNoExtension + "_invalid.log" + "> - invalid Statement: <" + bound.getQuery().toString().replace("\n", " ") + ">");
+            }
+        }
+
+        for (List<String[]> group : groups.values()) {
+            TypeQLInsert query = group.size() == 1 ? bindMatchInsertStatement(group.get(0)).getQuery() : bindGroupMatchInsertStatement(group);
+            try {
+                Iterator<ConceptMap> answers = TypeDBUtil.executeMatch(tx, query);
+                if (!answers.hasNext()) {
+                    for (String[] row : group) {
+                        FileLogger.getLogger().logNoMatches(fileName, binder.originalRow(row));
+                        dataLogger.error("Match-insert failed - File <" + filePath + "> row <" + binder.originalRow(row) + "> generates query <" + query + "> which matched no answers.");
+                    }
+                    continue;
+                }
+                ConceptMap answer = answers.next();
+                if (!allowMultiInsert && answers.hasNext()) {
+                    for (String[] row : group) {
+                        FileLogger.getLogger().logTooManyMatches(fileName, binder.originalRow(row));
+                        dataLogger.error("Match-insert skipped - File <" + filePath + "> row <" + binder.originalRow(row) + "> generates query <" + query + "> which matched more than 1 answer.");
+                    }
+                    continue;
+                }
+                tx.query().insert(TypeDBUtil.replaceMatchWithAnswer(query, answer));
+                while (answers.hasNext()) {
+                    tx.query().insert(TypeDBUtil.replaceMatchWithAnswer(query, answers.next()));
+                }
+            } catch (TypeDBDriverException typeDBDriverException) {
+                for (String[] row : group) {
+                    FileLogger.getLogger().logUnavailable(fileName, binder.originalRow(row));
+                    dataLogger.error("TypeDB Unavailable - Row in <" + filePath + "> not inserted - written to <" + fileNoExtension + "_unavailable.log" + ">");
+                }
+            }
+        }
+    }
+
+    private String matchKey(String[] row) {
+        Configuration.Definition.Attribute[] ownerships = appendConfiguration.getMatch().getOwnerships();
+        List<List<Object>> values = new ArrayList<>(ownerships.length);
+        for (Configuration.Definition.Attribute ownership : ownerships) {
+            values.add(binder.values(row, ownership));
+        }
+        return IIDCache.key(appendConfiguration.getMatch().getType(), ownerships, values);
+    }
+
+    /**
+     * Returns the match-insert of a group of valid rows with the same match values: the match of the first row,
+     * and one insert of the distinct attribute values of all rows.
+     */
+    TypeQLInsert bindGroupMatchInsertStatement(List<String[]> group) {
+        ThingStatement.Thing matchStatement = TypeQL.cVar("thing").isa(appendConfiguration.getMatch().getType());
+        for (Configuration.Definition.Attribute ownership : appendConfiguration.getMatch().getOwnerships()) {
+            for (ThingConstraint.Predicate constraintValue : binder.valueConstraints(group.get(0), ownership)) {
+                matchStatement.constrain(GeneratorUtil.valueToHasConstraint(ownership.getAttribute(), constraintValue));
+            }
+        }
+
+        ThingStatement.Thing insertStatement = null;
+        Set<String> appended = new LinkedHashSet<>();
+        for (String[] row : group) {
+            for (Configuration.Definition.Attribute attributeToAppend : appendConfiguration.getInsert().getOwnerships()) {
+                for (Object value : binder.values(row, attributeToAppend)) {
+                    if (!appended.add(attributeToAppend.getAttribute() + "\u001e" + value)) continue;
+                    ThingConstraint.Has has = GeneratorUtil.valueToHasConstraint(attributeToAppend.getAttribute(), GeneratorUtil.valueToPredicate(value));
+                    if (insertStatement == null) insertStatement = TypeQL.cVar("thing").constrain(has);
+                    else insertStatement.constrain(has);
+                }
+            }
+        }
+        return TypeQL.match(matchStatement).insert(insertStatement);
+    }
+
     public TypeQLInsert generateMatchInsertStatement(String[] row) {
+        return bindMatchInsertStatement(row).getQuery();
+    }
+
+    private BoundInsert bindMatchInsertStatement(String[] row) {
         if (row.length > 0) {
+            // every match ownership identifies the thing and must be bound
+            boolean matchBound = true;
             ThingStatement.Thing entityMatchStatement = TypeQL.cVar("thing")
                     .isa(appendConfiguration.getMatch().getType());
             for (Configuration.Definition.Attribute consAtt : appendConfiguration.getMatch().getOwnerships()) {
-                ArrayList<ThingConstraint.Predicate> constraintValues = GeneratorUtil.generateValueConstraintsConstrainingAttribute(
-                        row, header, filePath, fileSeparator, consAtt);
+                ArrayList<ThingConstraint.Predicate> constraintValues = binder.valueConstraints(row, consAtt);
                 for (ThingConstraint.Predicate constraintValue : constraintValues) {
                     entityMatchStatement.constrain(GeneratorUtil.valueToHasConstraint(consAtt.getAttribute(), constraintValue));
                 }
+                if (constraintValues.isEmpty()) matchBound = false;
             }
 
+            boolean requiredBound = true;
             ConceptVariableBuilder insertUnboundVar = TypeQL.cVar("thing");
             ThingStatement.Thing insertStatement = null;
             for (Configuration.Definition.Attribute attributeToAppend : appendConfiguration.getInsert().getOwnerships()) {
-                ArrayList<ThingConstraint.Predicate> constraintValues = GeneratorUtil.generateValueConstraintsConstrainingAttribute(
-                        row, header, filePath, fileSeparator, attributeToAppend);
+                ArrayList<ThingConstraint.Predicate> constraintValues = binder.valueConstraints(row, attributeToAppend);
                 for (ThingConstraint.Predicate constraintValue : constraintValues) {
                     if (insertStatement == null) {
                         insertStatement = insertUnboundVar.constrain(GeneratorUtil.valueToHasConstraint(attributeToAppend.getAttribute(), constraintValue));
@@ -109,33 +230,41 @@ public class AppendAttributeGenerator implements Generator {
                         insertStatement.constrain(GeneratorUtil.valueToHasConstraint(attributeToAppend.getAttribute(), constraintValue));
                     }
                 }
+                if (constraintValues.isEmpty() && attributeToAppend.getRequired() != null && attributeToAppend.getRequired()) {
+                    requiredBound = false;
+                }
             }
 
             if (insertStatement != null) {
-                return TypeQL.match(entityMatchStatement).insert(insertStatement);
+                return new BoundInsert(TypeQL.match(entityMatchStatement).insert(insertStatement), matchBound && requiredBound);
             } else {
-                return TypeQL.insert(TypeQL.cVar("null").isa("null").has("null", "null"));
+                return BoundInsert.invalid();
             }
         } else {
-            return TypeQL.insert(TypeQL.cVar("null").isa("null").has("null", "null"));
+            return BoundInsert.invalid();
         }
     }
 
-    public boolean appendAttributeInsertStatementValid(TypeQLInsert insert) {
-        if (insert == null) return false;
-        if (!insert.toString().contains("isa " + appendConfiguration.getMatch().getType())) return false;
-        for (Configuration.Definition.Attribute ownershipThingGetter : appendConfiguration.getMatch().getOwnerships()) {
-            if (!insert.toString().contains("has " + ownershipThingGetter.getAttribute())) return false;
-        }
-        if (appendConfiguration.getInsert().getRequiredOwnerships() != null) {
-            for (Configuration.Definition.Attribute attribute : appendConfiguration.getInsert().getRequiredOwnerships()) {
-                if (!insert.toString().contains("has " + attribute.getAttribute())) return false;
-            }
-        }
-        return true;
+    /**
+     * Returns whether the row binds a valid append: every match ownership and every required ownership to append
+     * has a value.
+     */
+    public boolean isMatchInsertValid(String[] row) {
+        return bindMatchInsertStatement(row).isValid();
     }
 
     public char getFileSeparator() {
         return this.fileSeparator;
     }
+
+    public boolean[] getReferencedColumns() {
+        return GeneratorUtil.getReferencedColumns(header, referencedAttributes());
+    }
+
+    private ArrayList<Configuration.Definition.Attribute> referencedAttributes() {
+        ArrayList<Configuration.Definition.Attribute> attributes = new ArrayList<>();
+        GeneratorUtil.addAttributes(attributes, appendConfiguration.getMatch().getOwnerships());
+        GeneratorUtil.addAttributes(attributes, appendConfiguration.getInsert().getOwnerships());
+        return attributes;
+    }
 }
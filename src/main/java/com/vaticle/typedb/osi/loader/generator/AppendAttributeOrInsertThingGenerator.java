@@ -19,9 +19,12 @@ package com.vaticle.typedb.osi.loader.generator;
 import com.vaticle.typedb.driver.api.TypeDBTransaction;
 import com.vaticle.typedb.driver.api.answer.ConceptMap;
 import com.vaticle.typedb.driver.common.exception.TypeDBDriverException;
+import com.vaticle.typedb.osi.loader.cache.IIDCache;
+import com.vaticle.typedb.osi.loader.cache.KeyFilter;
 import com.vaticle.typedb.osi.loader.config.Configuration;
 import com.vaticle.typedb.osi.loader.io.FileLogger;
 import com.vaticle.typedb.osi.loader.util.GeneratorUtil;
+import com.vaticle.typedb.osi.loader.util.RowBinder;
 import com.vaticle.typedb.osi.loader.util.TypeDBUtil;
 import com.vaticle.typedb.osi.loader.util.Util;
 import com.vaticle.typeql.lang.TypeQL;
@@ -29,13 +32,14 @@ import com.vaticle.typeql.lang.builder.ConceptVariableBuilder;
 import com.vaticle.typeql.lang.pattern.constraint.ThingConstraint;
 import com.vaticle.typeql.lang.pattern.statement.ThingStatement;
 import com.vaticle.typeql.lang.query.TypeQLInsert;
-import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.stream.Stream;
 
 import static com.vaticle.typedb.osi.loader.util.TypeDBUtil.safeInsert;
@@ -46,72 +50,148 @@ public class AppendAttributeOrInsertThingGenerator implements Generator {
     private final String[] header;
     private final Configuration.Generator.AppendAttributeOrInsertThing appendOrInsertConfiguration;
     private final char fileSeparator;
+    private final RowBinder binder;
+    private final KeyFilter keyFilter;
 
     public AppendAttributeOrInsertThingGenerator(String filePath, Configuration.Generator.AppendAttributeOrInsertThing appendOrInsertConfiguration, char fileSeparator) throws IOException {
+        this(filePath, appendOrInsertConfiguration, fileSeparator, null);
+    }
+
+    /**
+     * Rows whose match key the given filter (none if null) certainly does not contain are inserted without
+     * running their match query. The filter must hold the keys of all things of the matched type, and the keys
+     * of the things inserted by the generator are added to it.
+     */
+    public AppendAttributeOrInsertThingGenerator(String filePath, Configuration.Generator.AppendAttributeOrInsertThing appendOrInsertConfiguration, char fileSeparator,
+                                                 KeyFilter keyFilter) throws IOException {
         this.filePath = filePath;
         this.header = Util.getFileHeader(filePath, fileSeparator);
         this.appendOrInsertConfiguration = appendOrInsertConfiguration;
         this.fileSeparator = fileSeparator;
+        this.binder = new RowBinder(filePath, header, fileSeparator, referencedAttributes());
+        this.keyFilter = keyFilter;
     }
 
     @Override
     public void write(TypeDBTransaction tx, String[] row, boolean allowMultiInsert) {
-        String fileName = FilenameUtils.getName(filePath);
-        String fileNoExtension = FilenameUtils.removeExtension(fileName);
-        String originalRow = String.join(Character.toString(fileSeparator), row);
+        String fileName = binder.getFileName();
+        String fileNoExtension = binder.getFileNoExtension();
 
         if (row.length > header.length) {
-            FileLogger.getLogger().logMalformed(fileName, originalRow);
+            FileLogger.getLogger().logMalformed(fileName, binder.originalRow(row));
             dataLogger.error("Malformed Row detected in <" + filePath + "> - written to <" + fileNoExtension + "_malformed.log" + ">");
         }
 
-        TypeQLInsert appendQuery = generateMatchInsertStatement(row);
-        TypeQLInsert insertQuery = generateThingInsertStatement(row);
+        ArrayList<ArrayList<Object>> matchValues = matchValues(row);
+        BoundInsert boundAppend = bindMatchInsertStatement(row, matchValues);
+        BoundInsert boundInsert = bindThingInsertStatement(row);
+        TypeQLInsert appendQuery = boundAppend.getQuery();
+        TypeQLInsert insertQuery = boundInsert.getQuery();
 
-        if (appendAttributeInsertStatementValid(appendQuery)) {
+        if (boundAppend.isValid()) {
             try {
-                Iterator<ConceptMap> answers = TypeDBUtil.executeMatch(tx, appendQuery);
+                String filterKey = filterKey(matchValues);
+                boolean definiteMiss = filterKey != null && !keyFilter.mightContain(filterKey);
+                Iterator<ConceptMap> answers = definiteMiss ? Collections.emptyIterator() : TypeDBUtil.executeMatch(tx, appendQuery);
                 if (!answers.hasNext()) {
-                    if (thingInsertStatementValid(insertQuery)) {
+                    if (filterKey != null && !definiteMiss) keyFilter.recordFalsePositive();
+                    if (boundInsert.isValid()) {
                         tx.query().insert(insertQuery);
+                        addFilterKeys(matchValues);
                     } else {
-                        FileLogger.getLogger().logInvalid(fileName, originalRow);
+                        FileLogger.getLogger().logInvalid(fileName, binder.originalRow(row));
                         dataLogger.error("Invalid Row detected in <" + filePath + "> - written to <" + fileNoExtension + "_invalid.log" + "> - invalid Statement: <" + insertQuery.toString().replace("\n", " ") + ">");
                     }
                 } else {
-                    safeInsert(tx, appendQuery, answers, allowMultiInsert, filePath, originalRow, dataLogger);
+                    safeInsert(tx, appendQuery, answers, allowMultiInsert, filePath, () -> binder.originalRow(row), dataLogger);
                 }
             } catch (TypeDBDriverException typeDBDriverException) {
-                FileLogger.getLogger().logUnavailable(fileName, originalRow);
+                FileLogger.getLogger().logUnavailable(fileName, binder.originalRow(row));
                 dataLogger.error("TypeDB Unavailable - Row in <" + filePath + "> not inserted - written to <" + fileNoExtension + "_unavailable.log" + ">");
             }
         } else {
-            if (thingInsertStatementValid(insertQuery)) {
+            if (boundInsert.isValid()) {
                 tx.query().insert(insertQuery);
+                addFilterKeys(matchValues);
             } else {
-                FileLogger.getLogger().logInvalid(fileName, originalRow);
+                FileLogger.getLogger().logInvalid(fileName, binder.originalRow(row));
                 dataLogger.error("Invalid Row detected in <" + filePath + "> - written to <" + fileNoExtension + "_invalid.log" + "> - invalid Statements: <" + appendQuery.toString().replace("\n", " ") + "> and <" + insertQuery.toString().replace("\n", " ") + ">");
             }
         }
     }
 
     public TypeQLInsert generateMatchInsertStatement(String[] row) {
+        return bindMatchInsertStatement(row, matchValues(row)).getQuery();
+    }
+
+    private ArrayList<ArrayList<Object>> matchValues(String[] row) {
+        Configuration.Definition.Attribute[] ownerships = appendOrInsertConfiguration.getMatch().getOwnerships();
+        ArrayList<ArrayList<Object>> matchValues = new ArrayList<>(ownerships.length);
+        for (Configuration.Definition.Attribute ownership : ownerships) {
+            matchValues.add(binder.values(row, ownership));
+        }
+        return matchValues;
+    }
+
+    /**
+     * Returns the key the row is looked up by in the key filter, or null if the row has to be matched: when
+     * there is no filter, or when the row holds several values of a match attribute.
+     */
+    private String filterKey(ArrayList<ArrayList<Object>> matchValues) {
+        if (keyFilter == null) return null;
+        for (ArrayList<Object> values : matchValues) {
+            if (values.size() != 1) return null;
+        }
+        return IIDCache.key(appendOrInsertConfiguration.getMatch().getType(), appendOrInsertConfiguration.getMatch().getOwnerships(), matchValues);
+    }
+
+    /**
+     * Adds the keys of a newly inserted thing to the key filter: one key per combination of its values of the
+     * match attributes, as a row with one value per attribute can match it by any of them.
+     */
+    private void addFilterKeys(ArrayList<ArrayList<Object>> matchValues) {
+        if (keyFilter == null) return;
+        for (ArrayList<Object> values : matchValues) {
+            if (values.isEmpty()) return;
+        }
+        addFilterKeys(matchValues, 0, new ArrayList<>(matchValues.size()));
+    }
+
+    private void addFilterKeys(ArrayList<ArrayList<Object>> matchValues, int attribute, List<List<Object>> key) {
+        if (attribute == matchValues.size()) {
+            keyFilter.add(IIDCache.key(appendOrInsertConfiguration.getMatch().getType(), appendOrInsertConfiguration.getMatch().getOwnerships(), key));
+            return;
+        }
+        for (Object value : matchValues.get(attribute)) {
+            key.add(Collections.singletonList(value));
+            addFilterKeys(matchValues, attribute + 1, key);
+            key.remove(key.size() - 1);
+        }
+    }
+
+    public TypeQLInsert generateThingInsertStatement(String[] row) {
+        return bindThingInsertStatement(row).getQuery();
+    }
+
+    private BoundInsert bindMatchInsertStatement(String[] row, ArrayList<ArrayList<Object>> matchValues) {
         if (row.length > 0) {
+            // every match ownership identifies the thing and must be bound
+            boolean matchBound = true;
             ThingStatement.Thing entityMatchStatement = TypeQL.cVar("thing")
                     .isa(appendOrInsertConfiguration.getMatch().getType());
-            for (Configuration.Definition.Attribute ownershipThingGetter : appendOrInsertConfiguration.getMatch().getOwnerships()) {
-                ArrayList<ThingConstraint.Predicate> constraintValues = GeneratorUtil.generateValueConstraintsConstrainingAttribute(
-                        row, header, filePath, fileSeparator, ownershipThingGetter);
-                for (ThingConstraint.Predicate constraintValue : constraintValues) {
-                    entityMatchStatement.constrain(GeneratorUtil.valueToHasConstraint(ownershipThingGetter.getAttribute(), constraintValue));
+            Configuration.Definition.Attribute[] matchOwnerships = appendOrInsertConfiguration.getMatch().getOwnerships();
+            for (int i = 0; i < matchOwnerships.length; i++) {
+                for (Object value : matchValues.get(i)) {
+                    entityMatchStatement.constrain(GeneratorUtil.valueToHasConstraint(matchOwnerships[i].getAttribute(), GeneratorUtil.valueToPredicate(value)));
                 }
+                if (matchValues.get(i).isEmpty()) matchBound = false;
             }
 
+            boolean requiredBound = true;
             ConceptVariableBuilder insertUnboundVar = TypeQL.cVar("thing");
             ThingStatement.Thing insertStatement = null;
             for (Configuration.Definition.Attribute attributeToAppend : appendOrInsertConfiguration.getInsert().getOwnerships()) {
-                ArrayList<ThingConstraint.Predicate> constraintValues = GeneratorUtil.generateValueConstraintsConstrainingAttribute(
-                        row, header, filePath, fileSeparator, attributeToAppend);
+                ArrayList<ThingConstraint.Predicate> constraintValues = binder.valueConstraints(row, attributeToAppend);
                 for (ThingConstraint.Predicate constraintValue : constraintValues) {
                     if (insertStatement == null) {
                         insertStatement = insertUnboundVar.constrain(GeneratorUtil.valueToHasConstraint(attributeToAppend.getAttribute(), constraintValue));
@@ -119,69 +199,63 @@ public class AppendAttributeOrInsertThingGenerator implements Generator {
                         insertStatement.constrain(GeneratorUtil.valueToHasConstraint(attributeToAppend.getAttribute(), constraintValue));
                     }
                 }
+                if (constraintValues.isEmpty() && attributeToAppend.getRequired() != null && attributeToAppend.getRequired()) {
+                    requiredBound = false;
+                }
             }
 
             if (insertStatement != null) {
-                return TypeQL.match(entityMatchStatement).insert(insertStatement);
+                return new BoundInsert(TypeQL.match(entityMatchStatement).insert(insertStatement), matchBound && requiredBound);
             } else {
-                return TypeQL.insert(TypeQL.cVar("null").isa("null").has("null", "null"));
+                return BoundInsert.invalid();
             }
         } else {
-            return TypeQL.insert(TypeQL.cVar("null").isa("null").has("null", "null"));
+            return BoundInsert.invalid();
         }
     }
 
-    public TypeQLInsert generateThingInsertStatement(String[] row) {
+    private BoundInsert bindThingInsertStatement(String[] row) {
         if (row.length > 0) {
             ThingStatement.Thing insertStatement = GeneratorUtil.generateBoundThingVar(appendOrInsertConfiguration.getMatch().getType());
 
-            for (Configuration.Definition.Attribute attribute : appendOrInsertConfiguration.getMatch().getOwnerships()) {
-                ArrayList<ThingConstraint.Predicate> constraintValues = GeneratorUtil.generateValueConstraintsConstrainingAttribute(
-                        row, header, filePath, fileSeparator, attribute);
-                for (ThingConstraint.Predicate constraintValue : constraintValues) {
-                    insertStatement.constrain(GeneratorUtil.valueToHasConstraint(attribute.getAttribute(), constraintValue));
-                }
-            }
-
-            GeneratorUtil.constrainThingWithHasAttributes(row, header, filePath, fileSeparator, insertStatement, appendOrInsertConfiguration.getInsert().getOwnerships());
+            // a new thing needs its required match ownerships as well as its required insert ownerships
+            boolean requiredMatchBound = binder.constrainThingWithHasAttributes(row, insertStatement, appendOrInsertConfiguration.getMatch().getOwnerships());
+            boolean requiredInsertBound = binder.constrainThingWithHasAttributes(row, insertStatement, appendOrInsertConfiguration.getInsert().getOwnerships());
 
-            return TypeQL.insert(insertStatement);
+            return new BoundInsert(TypeQL.insert(insertStatement), requiredMatchBound && requiredInsertBound);
         } else {
-            return TypeQL.insert(TypeQL.cVar("null").isa("null").has("null", "null"));
+            return BoundInsert.invalid();
         }
     }
 
-    public boolean appendAttributeInsertStatementValid(TypeQLInsert insert) {
-        if (insert == null) return false;
-        if (!insert.toString().contains("isa " + appendOrInsertConfiguration.getMatch().getType())) return false;
-        for (Configuration.Definition.Attribute ownershipThingGetter : appendOrInsertConfiguration.getMatch().getOwnerships()) {
-            if (!insert.toString().contains("has " + ownershipThingGetter.getAttribute())) return false;
-        }
-        if (appendOrInsertConfiguration.getInsert().getRequiredOwnerships() != null) {
-            for (Configuration.Definition.Attribute attribute : appendOrInsertConfiguration.getInsert().getRequiredOwnerships()) {
-                if (!insert.toString().contains("has " + attribute.getAttribute())) return false;
-            }
-        }
-        return true;
+    /**
+     * Returns whether the row binds a valid append: every match ownership and every required ownership to append
+     * has a value.
+     */
+    public boolean isMatchInsertValid(String[] row) {
+        return bindMatchInsertStatement(row, matchValues(row)).isValid();
     }
 
-    public boolean thingInsertStatementValid(TypeQLInsert insert) {
-        if (insert == null) return false;
-        if (!insert.toString().contains("isa " + appendOrInsertConfiguration.getMatch().getType())) return false;
-        for (Configuration.Definition.Attribute ownershipThingGetter : appendOrInsertConfiguration.getMatch().getOwnerships()) {
-            if (ownershipThingGetter.getRequired() != null && ownershipThingGetter.getRequired()) {
-                if (!insert.toString().contains(", has " + ownershipThingGetter.getAttribute())) return false;
-            }
-        }
-        if (appendOrInsertConfiguration.getInsert().getRequiredOwnerships() != null) {
-            for (Configuration.Definition.Attribute attribute : appendOrInsertConfiguration.getInsert().getRequiredOwnerships()) {
-                if (!insert.toString().contains("has " + attribute.getAttribute())) return false;
-            }
-        }
-        return true;
+    /**
+     * Returns whether the row binds a valid insert of a new thing: every required match ownership and every
+     * required ownership to append has a value.
+     */
+    public boolean isThingInsertValid(String[] row) {
+        return bindThingInsertStatement(row).isValid();
     }
 
     public char getFileSeparator() {
         return this.fileSeparator;
     }
+
+    public boolean[] getReferencedColumns() {
+        return GeneratorUtil.getReferencedColumns(header, referencedAttributes());
+    }
+
+    private ArrayList<Configuration.Definition.Attribute> referencedAttributes() {
+        ArrayList<Configuration.Definition.Attribute> attributes = new ArrayList<>();
+        GeneratorUtil.addAttributes(attributes, appendOrInsertConfiguration.getMatch().getOwnerships());
+        GeneratorUtil.addAttributes(attributes, appendOrInsertConfiguration.getInsert().getOwnerships());
+        return attributes;
+    }
 }
@@ -18,19 +18,22 @@ package com.vaticle.typedb.osi.loader.generator;
 
 import com.vaticle.typedb.driver.api.TypeDBTransaction;
 import com.vaticle.typedb.driver.common.exception.TypeDBDriverException;
+import com.vaticle.typedb.osi.loader.cache.ValueSet;
 import com.vaticle.typedb.osi.loader.config.Configuration;
 import com.vaticle.typedb.osi.loader.io.FileLogger;
 import com.vaticle.typedb.osi.loader.util.GeneratorUtil;
+import com.vaticle.typedb.osi.loader.util.RowBinder;
 import com.vaticle.typedb.osi.loader.util.Util;
 import com.vaticle.typeql.lang.TypeQL;
 import com.vaticle.typeql.lang.pattern.constraint.ThingConstraint;
+import com.vaticle.typeql.lang.pattern.statement.ThingStatement;
 import com.vaticle.typeql.lang.query.TypeQLInsert;
-import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class AttributeGenerator implements Generator {
@@ -39,45 +42,182 @@ public class AttributeGenerator implements Generator {
     private final String[] header;
     private final Configuration.Generator.Attribute attributeConfiguration;
     private final char fileSeparator;
+    private final RowBinder binder;
+    private final boolean queryTemplates;
+    private final int rowsPerQuery;
+    private final String insertTemplateSuffix;
+    private final ValueSet valueSet;
 
     public AttributeGenerator(String filePath, Configuration.Generator.Attribute attributeConfiguration, char fileSeparator) throws IOException {
+        this(filePath, attributeConfiguration, fileSeparator, false, 1);
+    }
+
+    public AttributeGenerator(String filePath, Configuration.Generator.Attribute attributeConfiguration, char fileSeparator, boolean queryTemplates, int rowsPerQuery) throws IOException {
+        this(filePath, attributeConfiguration, fileSeparator, queryTemplates, rowsPerQuery, null);
+    }
+
+    /**
+     * Values already in the given set (none if null) are not sent again. Values sent by a query that fails are
+     * removed from the set.
+     */
+    public AttributeGenerator(String filePath, Configuration.Generator.Attribute attributeConfiguration, char fileSeparator, boolean queryTemplates, int rowsPerQuery,
+                              ValueSet valueSet) throws IOException {
         this.filePath = filePath;
         this.header = Util.getFileHeader(filePath, fileSeparator);
         this.attributeConfiguration = attributeConfiguration;
         this.fileSeparator = fileSeparator;
+        this.binder = new RowBinder(filePath, header, fileSeparator, referencedAttributes());
+        this.queryTemplates = queryTemplates;
+        this.rowsPerQuery = rowsPerQuery;
+        this.insertTemplateSuffix = " isa " + attributeConfiguration.getInsert().getAttribute() + ";";
+        this.valueSet = valueSet;
     }
 
     @Override
     public void write(TypeDBTransaction tx, String[] row, boolean allowMultiInsert) {
+        checkRowLength(row);
 
-        String fileName = FilenameUtils.getName(filePath);
-        String fileNoExtension = FilenameUtils.removeExtension(fileName);
-        String originalRow = String.join(Character.toString(fileSeparator), row);
+        if (valueSet != null && row.length > 0) {
+            for (Object value : newValues(row)) {
+                insert(tx, bindInsert(value), Collections.singletonList(row), Collections.singletonList(key(value)));
+            }
+            return;
+        }
+        for (BoundInsert statement : queryTemplates ? bindInsertQueries(row) : bindInsertStatements(row)) {
+            if (statement.isValid()) {
+                insert(tx, statement, Collections.singletonList(row), Collections.emptyList());
+            } else {
+                logInvalid(row, statement.toString());
+            }
+        }
+    }
 
-        if (row.length > header.length) {
-            FileLogger.getLogger().logMalformed(fileName, originalRow);
-            dataLogger.error("Malformed Row detected in <" + filePath + "> - written to <" + fileNoExtension + "_malformed.log" + ">");
+    /**
+     * Coalesces the inserts of up to rowsPerQuery rows into one query, binding each value to its own variable
+     * ($a0, $a1, ...). Empty rows are logged as invalid and left out of the query.
+     */
+    @Override
+    public void write(TypeDBTransaction tx, List<String[]> rows, boolean allowMultiInsert) {
+        if (rowsPerQuery <= 1) {
+            Generator.super.write(tx, rows, allowMultiInsert);
+            return;
         }
 
-        for (TypeQLInsert statement : generateInsertStatements(row)) {
-            if (isValid(statement)) {
-                try {
-                    tx.query().insert(statement);
-                } catch (TypeDBDriverException driverException) {
-                    FileLogger.getLogger().logUnavailable(fileName, originalRow);
-                    dataLogger.error("TypeDB Unavailable - Row in <" + filePath + "> not inserted - written to <" + fileNoExtension + "_unavailable.log" + ">");
+        List<String[]> batch = new ArrayList<>(rowsPerQuery);
+        StringBuilder batchQuery = new StringBuilder("insert");
+        List<ThingStatement<?>> batchStatements = new ArrayList<>(rowsPerQuery);
+        List<String> batchKeys = new ArrayList<>();
+        int attributeIdx = 0;
+        for (String[] row : rows) {
+            checkRowLength(row);
+            if (row.length == 0) {
+                logInvalid(row, BoundInsert.invalid().toString());
+                continue;
+            }
+
+            List<Object> values = valueSet != null ? newValues(row) : binder.values(row, attributeConfiguration.getInsert());
+            for (Object value : values) {
+                if (queryTemplates) {
+                    batchQuery.append(" $a").append(attributeIdx++).append(' ');
+                    GeneratorUtil.appendValueLiteral(batchQuery, value);
+                    batchQuery.append(insertTemplateSuffix);
+                } else {
+                    batchStatements.add(TypeQL.cVar("a" + attributeIdx++)
+                            .constrain(GeneratorUtil.valueToPredicate(value))
+                            .isa(attributeConfiguration.getInsert().getAttribute()));
                 }
-            } else {
-                FileLogger.getLogger().logInvalid(fileName, originalRow);
-                dataLogger.error("Invalid Row detected in <" + filePath + "> - written to <" + fileNoExtension + "_invalid.log" + "> - invalid Statement: <" + statement.toString().replace("\n", " ") + ">");
+                if (valueSet != null) batchKeys.add(key(value));
+            }
+            batch.add(row);
+
+            if (batch.size() == rowsPerQuery) {
+                if (attributeIdx > 0) insert(tx, batchInsert(batchQuery, batchStatements), batch, batchKeys);
+                batch = new ArrayList<>(rowsPerQuery);
+                batchQuery.setLength("insert".length());
+                batchStatements = new ArrayList<>(rowsPerQuery);
+                batchKeys = new ArrayList<>();
+                attributeIdx = 0;
+            }
+        }
+        if (attributeIdx > 0) {
+            insert(tx, batchInsert(batchQuery, batchStatements), batch, batchKeys);
+        }
+    }
+
+    /**
+     * Removes the values of the rows from the value set, so that they are sent again.
+     */
+    @Override
+    public void rollback(List<String[]> rows) {
+        if (valueSet == null) return;
+        for (String[] row : rows) {
+            if (row.length == 0) continue;
+            for (Object value : binder.values(row, attributeConfiguration.getInsert())) {
+                valueSet.remove(key(value));
             }
         }
     }
 
+    /**
+     * Returns the values of the row that were not sent yet, adding them to the value set.
+     */
+    private List<Object> newValues(String[] row) {
+        List<Object> values = new ArrayList<>();
+        for (Object value : binder.values(row, attributeConfiguration.getInsert())) {
+            if (valueSet.add(key(value))) values.add(value);
+        }
+        return values;
+    }
+
+    private String key(Object value) {
+        return ValueSet.key(attributeConfiguration.getInsert().getAttribute(), value);
+    }
+
+    private BoundInsert bindInsert(Object value) {
+        if (queryTemplates) {
+            return bindInsertQuery(value);
+        } else {
+            return new BoundInsert(TypeQL.insert(TypeQL.cVar("a")
+                    .constrain(GeneratorUtil.valueToPredicate(value))
+                    .isa(attributeConfiguration.getInsert().getAttribute())), true);
+        }
+    }
+
+    private BoundInsert batchInsert(StringBuilder batchQuery, List<ThingStatement<?>> batchStatements) {
+        if (queryTemplates) return new BoundInsert(batchQuery.toString(), true);
+        else return new BoundInsert(TypeQL.insert(batchStatements), true);
+    }
+
+    private void insert(TypeDBTransaction tx, BoundInsert query, List<String[]> rows, List<String> keys) {
+        try {
+            query.insert(tx);
+        } catch (TypeDBDriverException driverException) {
+            // the values are sent again by the next rows holding them
+            for (String key : keys) {
+                valueSet.remove(key);
+            }
+            for (String[] row : rows) {
+                FileLogger.getLogger().logUnavailable(binder.getFileName(), binder.originalRow(row));
+                dataLogger.error("TypeDB Unavailable - Row in <" + filePath + "> not inserted - written to <" + binder.getFileNoExtension() + "_unavailable.log" + ">");
+            }
+        }
+    }
+
+    private void checkRowLength(String[] row) {
+        if (row.length > header.length) {
+            FileLogger.getLogger().logMalformed(binder.getFileName(), binder.originalRow(row));
+            dataLogger.error("Malformed Row detected in <" + filePath + "> - written to <" + binder.getFileNoExtension() + "_malformed.log" + ">");
+        }
+    }
+
+    private void logInvalid(String[] row, String statement) {
+        FileLogger.getLogger().logInvalid(binder.getFileName(), binder.originalRow(row));
+        dataLogger.error("Invalid Row detected in <" + filePath + "> - written to <" + binder.getFileNoExtension() + "_invalid.log" + "> - invalid Statement: <" + statement.replace("\n", " ") + ">");
+    }
+
     public List<TypeQLInsert> generateInsertStatements(String[] row) {
         if (row.length > 0) {
-            ArrayList<ThingConstraint.Predicate> constraints = GeneratorUtil.generateValueConstraintsConstrainingAttribute(
-                    row, header, filePath, fileSeparator, attributeConfiguration.getInsert());
+            ArrayList<ThingConstraint.Predicate> constraints = binder.valueConstraints(row, attributeConfiguration.getInsert());
 
             List<TypeQLInsert> insertStatements = new ArrayList<>();
             for (ThingConstraint.Predicate constraint : constraints) {
@@ -94,11 +234,56 @@ public class AttributeGenerator implements Generator {
 
     }
 
-    private boolean isValid(TypeQLInsert insert) {
-        return insert.toString().contains("isa " + attributeConfiguration.getInsert().getAttribute());
+    /**
+     * Renders the insert queries of the row from the query template of the generator, without the query builder.
+     */
+    public List<String> generateInsertQueries(String[] row) {
+        List<String> insertQueries = new ArrayList<>();
+        for (BoundInsert insertQuery : bindInsertQueries(row)) {
+            insertQueries.add(insertQuery.toString());
+        }
+        return insertQueries;
+    }
+
+    private List<BoundInsert> bindInsertStatements(String[] row) {
+        List<BoundInsert> insertStatements = new ArrayList<>();
+        // every statement generated from a non-empty row inserts the attribute type of the generator
+        for (TypeQLInsert statement : generateInsertStatements(row)) {
+            insertStatements.add(new BoundInsert(statement, row.length > 0));
+        }
+        return insertStatements;
+    }
+
+    private List<BoundInsert> bindInsertQueries(String[] row) {
+        if (row.length > 0) {
+            List<BoundInsert> insertQueries = new ArrayList<>();
+            for (Object value : binder.values(row, attributeConfiguration.getInsert())) {
+                insertQueries.add(bindInsertQuery(value));
+            }
+            return insertQueries;
+        } else {
+            return List.of(BoundInsert.invalid());
+        }
+    }
+
+    private BoundInsert bindInsertQuery(Object value) {
+        StringBuilder query = new StringBuilder("insert $a ");
+        GeneratorUtil.appendValueLiteral(query, value);
+        query.append(insertTemplateSuffix);
+        return new BoundInsert(query.toString(), true);
     }
 
     public char getFileSeparator() {
         return this.fileSeparator;
     }
+
+    public boolean[] getReferencedColumns() {
+        return GeneratorUtil.getReferencedColumns(header, referencedAttributes());
+    }
+
+    private ArrayList<Configuration.Definition.Attribute> referencedAttributes() {
+        ArrayList<Configuration.Definition.Attribute> attributes = new ArrayList<>();
+        attributes.add(attributeConfiguration.getInsert());
+        return attributes;
+    }
 }
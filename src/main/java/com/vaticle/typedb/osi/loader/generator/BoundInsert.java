@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.generator;
+
+import com.vaticle.typedb.driver.api.TypeDBTransaction;
+import com.vaticle.typedb.driver.api.answer.ConceptMap;
+import com.vaticle.typeql.lang.TypeQL;
+import com.vaticle.typeql.lang.query.TypeQLInsert;
+
+import java.util.stream.Stream;
+
+/**
+ * An insert query generated for one row, together with its validity. Validity is tracked while the query is
+ * bound from the row, so it is known without rendering the query. The query is either a query builder statement
+ * or, when rendered from a query template, a query string.
+ */
+class BoundInsert {
+    private final TypeQLInsert query;
+    private final String queryString;
+    private final boolean valid;
+
+    BoundInsert(TypeQLInsert query, boolean valid) {
+        this.query = query;
+        this.queryString = null;
+        this.valid = valid;
+    }
+
+    BoundInsert(String queryString, boolean valid) {
+        this.query = null;
+        this.queryString = queryString;
+        this.valid = valid;
+    }
+
+    static BoundInsert invalid() {
+        return new BoundInsert(TypeQL.insert(TypeQL.cVar("null").isa("null").has("null", "null")), false);
+    }
+
+    TypeQLInsert getQuery() {
+        return query;
+    }
+
+    boolean isValid() {
+        return valid;
+    }
+
+    Stream<ConceptMap> insert(TypeDBTransaction tx) {
+        if (query != null) return tx.query().insert(query);
+        else return tx.query().insert(queryString);
+    }
+
+    @Override
+    public String toString() {
+        return query != null ? query.toString() : queryString;
+    }
+}
@@ -17,82 +17,498 @@
 package com.vaticle.typedb.osi.loader.generator;
 
 import com.vaticle.typedb.driver.api.TypeDBTransaction;
+import com.vaticle.typedb.driver.api.answer.ConceptMap;
 import com.vaticle.typedb.driver.common.exception.TypeDBDriverException;
+import com.vaticle.typedb.osi.loader.cache.IIDCache;
+import com.vaticle.typedb.osi.loader.cache.RecentKeys;
 import com.vaticle.typedb.osi.loader.config.Configuration;
 import com.vaticle.typedb.osi.loader.io.FileLogger;
 import com.vaticle.typedb.osi.loader.util.GeneratorUtil;
+import com.vaticle.typedb.osi.loader.util.RowBinder;
 import com.vaticle.typedb.osi.loader.util.TypeDBUtil;
 import com.vaticle.typedb.osi.loader.util.Util;
 import com.vaticle.typeql.lang.TypeQL;
 import com.vaticle.typeql.lang.pattern.statement.ThingStatement;
 import com.vaticle.typeql.lang.query.TypeQLInsert;
-import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public class EntityGenerator implements Generator {
     private static final Logger dataLogger = LogManager.getLogger("com.vaticle.typedb.osi.loader.error");
+    private static final char VALUE_SEPARATOR = '\u001e';
     private final String filePath;
     private final String[] header;
     private final Configuration.Generator.Entity entityConfiguration;
     private final char fileSeparator;
+    private final RowBinder binder;
+    private final boolean queryTemplates;
+    private final int rowsPerQuery;
+    private final String thingTemplate;
+    private final IIDCache iidCache;
+    private final List<Configuration.Definition.Attribute[]> captureKeys;
+    // IIDs captured by the transaction of each writer thread, published to the IID cache once it commits
+    private final ThreadLocal<Map<String, String>> stagedIIDs = ThreadLocal.withInitial(HashMap::new);
+    private final Configuration.Definition.Attribute[] mergeKey;
+    private final RecentKeys recentKeys;
+    // values recorded in the window by the transaction of each writer thread, removed again if it fails to commit
+    private final ThreadLocal<Map<String, List<String>>> stagedKeys = ThreadLocal.withInitial(HashMap::new);
 
     public EntityGenerator(String filePath, Configuration.Generator.Entity entityConfiguration, char fileSeparator) throws IOException {
+        this(filePath, entityConfiguration, fileSeparator, false, 1);
+    }
+
+    public EntityGenerator(String filePath, Configuration.Generator.Entity entityConfiguration, char fileSeparator, boolean queryTemplates, int rowsPerQuery) throws IOException {
+        this(filePath, entityConfiguration, fileSeparator, queryTemplates, rowsPerQuery, null, null);
+    }
+
+    /**
+     * The IIDs of the inserted entities are read from the insert answers and added to the given cache (none if
+     * null), under the key of every set of attributes in keyAttributes that the entity is inserted with.
+     */
+    public EntityGenerator(String filePath, Configuration.Generator.Entity entityConfiguration, char fileSeparator, boolean queryTemplates, int rowsPerQuery,
+                           IIDCache iidCache, List<String[]> keyAttributes) throws IOException {
+        this(filePath, entityConfiguration, fileSeparator, queryTemplates, rowsPerQuery, iidCache, keyAttributes, null);
+    }
+
+    /**
+     * If the insert declares a key, rows of a transaction sharing the key are merged into one insert carrying the
+     * union of their ownerships. Keys inserted by earlier transactions are remembered in the given window (none
+     * if null): rows with such a key are dropped if they bring no new ownerships, and appended to the entity
+     * otherwise.
+     */
+    public EntityGenerator(String filePath, Configuration.Generator.Entity entityConfiguration, char fileSeparator, boolean queryTemplates, int rowsPerQuery,
+                           IIDCache iidCache, List<String[]> keyAttributes, RecentKeys recentKeys) throws IOException {
         this.filePath = filePath;
         this.header = Util.getFileHeader(filePath, fileSeparator);
         this.entityConfiguration = entityConfiguration;
         this.fileSeparator = fileSeparator;
+        this.binder = new RowBinder(filePath, header, fileSeparator, referencedAttributes());
+        this.queryTemplates = queryTemplates;
+        this.rowsPerQuery = rowsPerQuery;
+        this.thingTemplate = " isa " + entityConfiguration.getInsert().getEntity();
+        this.iidCache = iidCache;
+        this.captureKeys = new ArrayList<>();
+        if (iidCache != null && keyAttributes != null) {
+            for (String[] attributes : keyAttributes) {
+                Configuration.Definition.Attribute[] captureKey = ownerships(attributes);
+                if (captureKey != null) captureKeys.add(captureKey);
+            }
+        }
+        String[] key = entityConfiguration.getInsert().getKey();
+        this.mergeKey = key != null && key.length > 0 ? ownerships(key) : null;
+        this.recentKeys = mergeKey != null ? recentKeys : null;
+    }
+
+    private Configuration.Definition.Attribute[] ownerships(String[] attributes) {
+        Configuration.Definition.Attribute[] ownerships = new Configuration.Definition.Attribute[attributes.length];
+        for (int i = 0; i < attributes.length; i++) {
+            for (Configuration.Definition.Attribute ownership : entityConfiguration.getInsert().getOwnerships()) {
+                if (ownership.getAttribute().equals(attributes[i])) {
+                    ownerships[i] = ownership;
+                    break;
+                }
+            }
+            if (ownerships[i] == null) return null;
+        }
+        return ownerships;
     }
 
     @Override
     public void write(TypeDBTransaction tx, String[] row, boolean allowMultiInsert) {
-        String fileName = FilenameUtils.getName(filePath);
-        String fileNoExtension = FilenameUtils.removeExtension(fileName);
-        String originalRow = String.join(Character.toString(fileSeparator), row);
+        checkRowLength(row);
 
-        if (row.length > header.length) {
-            FileLogger.getLogger().logMalformed(fileName, originalRow);
-            dataLogger.error("Malformed Row detected in <" + filePath + "> - written to <" + fileNoExtension + "_malformed.log" + ">");
+        BoundInsert bound = queryTemplates ? bindThingInsertQuery(row) : bindThingInsertStatement(row);
+        if (bound.isValid()) {
+            List<String[]> rows = Collections.singletonList(row);
+            Stream<ConceptMap> answers = insert(tx, bound, rows);
+            if (answers != null && !captureKeys.isEmpty()) {
+                capture(new PendingCapture(answers, rows, Collections.singletonList("e")));
+            }
+        } else {
+            logInvalid(row, bound.toString());
         }
+    }
 
-        TypeQLInsert query = generateThingInsertStatement(row);
-        if (valid(query)) {
-            try {
-                tx.query().insert(query);
-            } catch (TypeDBDriverException typeDBDriverException) {
-                FileLogger.getLogger().logUnavailable(fileName, originalRow);
-                dataLogger.error("TypeDB Unavailable - Row in <" + filePath + "> not inserted - written to <" + fileNoExtension + "_unavailable.log" + ">");
+    /**
+     * Coalesces the inserts of up to rowsPerQuery valid rows into one query, binding each row to its own
+     * variable ($e0, $e1, ...). Invalid rows are logged one by one and left out of the query. When IIDs are
+     * captured, the insert answers are read once all queries of the rows have been sent.
+     */
+    @Override
+    public void write(TypeDBTransaction tx, List<String[]> rows, boolean allowMultiInsert) {
+        if (mergeKey != null) {
+            writeMerged(tx, rows);
+            return;
+        }
+        if (rowsPerQuery <= 1 && captureKeys.isEmpty()) {
+            Generator.super.write(tx, rows, allowMultiInsert);
+            return;
+        }
+
+        int rowsPerQuery = Math.max(1, this.rowsPerQuery);
+        List<PendingCapture> pendingCaptures = new ArrayList<>();
+        List<String[]> batch = new ArrayList<>(rowsPerQuery);
+        List<String> batchVars = new ArrayList<>(rowsPerQuery);
+        StringBuilder batchQuery = new StringBuilder("insert");
+        List<ThingStatement<?>> batchStatements = new ArrayList<>(rowsPerQuery);
+        for (String[] row : rows) {
+            checkRowLength(row);
+            if (row.length == 0) {
+                logInvalid(row, BoundInsert.invalid().toString());
+                continue;
+            }
+
+            String thingVar = "e" + batch.size();
+            if (queryTemplates) {
+                int mark = batchQuery.length();
+                batchQuery.append(' ');
+                boolean requiredBound = appendThing(row, thingVar, batchQuery);
+                batchQuery.append(';');
+                if (!requiredBound) {
+                    logInvalid(row, "insert" + batchQuery.substring(mark));
+                    batchQuery.setLength(mark);
+                    continue;
+                }
+            } else {
+                ThingStatement.Thing statement = TypeQL.cVar(thingVar).isa(entityConfiguration.getInsert().getEntity());
+                if (!binder.constrainThingWithHasAttributes(row, statement, entityConfiguration.getInsert().getOwnerships())) {
+                    logInvalid(row, TypeQL.insert(statement).toString());
+                    continue;
+                }
+                batchStatements.add(statement);
+            }
+            batch.add(row);
+            batchVars.add(thingVar);
+
+            if (batch.size() == rowsPerQuery) {
+                insertBatch(tx, batchInsert(batchQuery, batchStatements), batch, batchVars, pendingCaptures);
+                batch = new ArrayList<>(rowsPerQuery);
+                batchVars = new ArrayList<>(rowsPerQuery);
+                batchQuery.setLength("insert".length());
+                batchStatements = new ArrayList<>(rowsPerQuery);
             }
-        } else {
-            FileLogger.getLogger().logInvalid(fileName, originalRow);
-            dataLogger.error("Invalid Row detected in <" + filePath + "> - written to <" + fileNoExtension + "_invalid.log" + "> - invalid Statement: <" + query.toString().replace("\n", " ") + ">");
+        }
+        if (!batch.isEmpty()) {
+            insertBatch(tx, batchInsert(batchQuery, batchStatements), batch, batchVars, pendingCaptures);
+        }
+        for (PendingCapture pendingCapture : pendingCaptures) {
+            capture(pendingCapture);
         }
     }
 
+    /**
+     * Groups the rows by key and sends one insert, or one append for keys of earlier transactions, per group.
+     * Rows without a single value for every key attribute are inserted on their own.
+     */
+    private void writeMerged(TypeDBTransaction tx, List<String[]> rows) {
+        Map<String, MergedRows> groups = new LinkedHashMap<>();
+        int unkeyed = 0;
+        for (String[] row : rows) {
+            checkRowLength(row);
+            if (row.length == 0) {
+                logInvalid(row, BoundInsert.invalid().toString());
+                continue;
+            }
+            String key = key(row);
+            if (key == null) key = "\u0000" + unkeyed++;
+            groups.computeIfAbsent(key, k -> new MergedRows()).add(row);
+        }
+
+        List<PendingCapture> pendingCaptures = new ArrayList<>();
+        for (Map.Entry<String, MergedRows> group : groups.entrySet()) {
+            MergedRows merged = group.getValue();
+            ThingStatement.Thing statement = merged.statement(TypeQL.cVar("e").isa(entityConfiguration.getInsert().getEntity()), merged.values.keySet());
+            if (!merged.requiredBound()) {
+                for (String[] row : merged.rows) {
+                    logInvalid(row, TypeQL.insert(statement).toString());
+                }
+                continue;
+            }
+            List<String> newValues = null;
+            if (recentKeys != null && merged.keyed) {
+                newValues = recentKeys.record(group.getKey(), merged.values.keySet());
+                stagedKeys.get().computeIfAbsent(group.getKey(), k -> new ArrayList<>())
+                        .addAll(newValues != null ? newValues : merged.values.keySet());
+            }
+            if (newValues == null) {
+                insertBatch(tx, new BoundInsert(TypeQL.insert(statement), true), merged.rows, Collections.nCopies(merged.rows.size(), "e"), pendingCaptures);
+            } else if (!newValues.isEmpty() && !append(tx, merged, newValues)) {
+                // no entity holds the key - rows of a key are written by one writer, so no other transaction is inserting it
+                insertBatch(tx, new BoundInsert(TypeQL.insert(statement), true), merged.rows, Collections.nCopies(merged.rows.size(), "e"), pendingCaptures);
+            }
+        }
+        for (PendingCapture pendingCapture : pendingCaptures) {
+            capture(pendingCapture);
+        }
+    }
+
+    /**
+     * Appends the given values to the entity of the key of the rows, and returns false if no entity holds the key.
+     */
+    private boolean append(TypeDBTransaction tx, MergedRows merged, List<String> newValues) {
+        ThingStatement.Thing match = TypeQL.cVar("e").isa(entityConfiguration.getInsert().getEntity());
+        for (Configuration.Definition.Attribute attribute : mergeKey) {
+            Object value = binder.values(merged.rows.get(0), attribute).get(0);
+            match.constrain(GeneratorUtil.valueToHasConstraint(attribute.getAttribute(), GeneratorUtil.valueToPredicate(value)));
+        }
+        ThingStatement.Thing insert = merged.statement(null, newValues);
+        try {
+            return tx.query().insert(TypeQL.match(match).insert(insert)).findAny().isPresent();
+        } catch (TypeDBDriverException typeDBDriverException) {
+            logUnavailable(merged.rows);
+            return true;
+        }
+    }
+
+    /**
+     * Returns the key of the row, or null if the row does not hold exactly one value of every key attribute.
+     */
+    private String key(String[] row) {
+        ArrayList<ArrayList<Object>> values = new ArrayList<>(mergeKey.length);
+        for (Configuration.Definition.Attribute attribute : mergeKey) {
+            ArrayList<Object> attributeValues = binder.values(row, attribute);
+            if (attributeValues.size() != 1) return null;
+            values.add(attributeValues);
+        }
+        return IIDCache.key(entityConfiguration.getInsert().getEntity(), mergeKey, values);
+    }
+
+    private void insertBatch(TypeDBTransaction tx, BoundInsert query, List<String[]> batch, List<String> batchVars, List<PendingCapture> pendingCaptures) {
+        Stream<ConceptMap> answers = insert(tx, query, batch);
+        if (answers != null && !captureKeys.isEmpty()) {
+            pendingCaptures.add(new PendingCapture(answers, batch, batchVars));
+        }
+    }
+
+    private BoundInsert batchInsert(StringBuilder batchQuery, List<ThingStatement<?>> batchStatements) {
+        if (queryTemplates) return new BoundInsert(batchQuery.toString(), true);
+        else return new BoundInsert(TypeQL.insert(batchStatements), true);
+    }
+
+    private Stream<ConceptMap> insert(TypeDBTransaction tx, BoundInsert query, List<String[]> rows) {
+        try {
+            return query.insert(tx);
+        } catch (TypeDBDriverException typeDBDriverException) {
+            logUnavailable(rows);
+            return null;
+        }
+    }
+
+    /**
+     * Stages the IID of every entity of the insert answer under each key the row binds in full, until the
+     * transaction commits.
+     */
+    private void capture(PendingCapture pendingCapture) {
+        ConceptMap answer;
+        try {
+            answer = pendingCapture.answers.findFirst().orElse(null);
+        } catch (TypeDBDriverException typeDBDriverException) {
+            logUnavailable(pendingCapture.rows);
+            return;
+        }
+        if (answer == null) return;
+        for (int i = 0; i < pendingCapture.rows.size(); i++) {
+            String[] row = pendingCapture.rows.get(i);
+            String iid = null;
+            for (Configuration.Definition.Attribute[] captureKey : captureKeys) {
+                ArrayList<ArrayList<Object>> values = new ArrayList<>(captureKey.length);
+                for (Configuration.Definition.Attribute attribute : captureKey) {
+                    ArrayList<Object> attributeValues = binder.values(row, attribute);
+                    if (attributeValues.isEmpty()) break;
+                    values.add(attributeValues);
+                }
+                if (values.size() < captureKey.length) continue;
+                if (iid == null) iid = answer.get(pendingCapture.thingVars.get(i)).asThing().getIID();
+                stagedIIDs.get().put(IIDCache.key(entityConfiguration.getInsert().getEntity(), captureKey, values), iid);
+            }
+        }
+    }
+
+    /**
+     * Publishes the IIDs captured by the transaction to the IID cache, now that their entities are visible to
+     * other transactions.
+     */
+    @Override
+    public void committed(List<String[]> rows) {
+        if (!captureKeys.isEmpty()) {
+            Map<String, String> staged = stagedIIDs.get();
+            for (Map.Entry<String, String> iid : staged.entrySet()) {
+                iidCache.put(iid.getKey(), iid.getValue());
+            }
+            staged.clear();
+        }
+        if (recentKeys != null) stagedKeys.get().clear();
+    }
+
+    /**
+     * Drops the IIDs captured by the transaction and removes the values it recorded in the merge window, as its
+     * entities were not committed.
+     */
+    @Override
+    public void rollback(List<String[]> rows) {
+        if (!captureKeys.isEmpty()) stagedIIDs.get().clear();
+        if (recentKeys != null) {
+            Map<String, List<String>> staged = stagedKeys.get();
+            for (Map.Entry<String, List<String>> key : staged.entrySet()) {
+                recentKeys.remove(key.getKey(), key.getValue());
+            }
+            staged.clear();
+        }
+    }
+
+    /**
+     * With a merge window, rows of a key are appended to the entity inserted by an earlier transaction, which
+     * must have committed: the rows of a key are written by one writer, one transaction after the other.
+     */
+    @Override
+    public String[] getConflictColumns() {
+        if (recentKeys == null) return null;
+        String[] columns = new String[mergeKey.length];
+        for (int i = 0; i < mergeKey.length; i++) {
+            columns[i] = mergeKey[i].getColumn();
+        }
+        return columns;
+    }
+
+    private void logUnavailable(List<String[]> rows) {
+        for (String[] row : rows) {
+            FileLogger.getLogger().logUnavailable(binder.getFileName(), binder.originalRow(row));
+            dataLogger.error("TypeDB Unavailable - Row in <" + filePath + "> not inserted - written to <" + binder.getFileNoExtension() + "_unavailable.log" + ">");
+        }
+    }
+
+    private void checkRowLength(String[] row) {
+        if (row.length > header.length) {
+            FileLogger.getLogger().logMalformed(binder.getFileName(), binder.originalRow(row));
+            dataLogger.error("Malformed Row detected in <" + filePath + "> - written to <" + binder.getFileNoExtension() + "_malformed.log" + ">");
+        }
+    }
+
+    private void logInvalid(String[] row, String statement) {
+        FileLogger.getLogger().logInvalid(binder.getFileName(), binder.originalRow(row));
+        dataLogger.error("Invalid Row detected in <" + filePath + "> - written to <" + binder.getFileNoExtension() + "_invalid.log" + "> - invalid Statement: <" + statement.replace("\n", " ") + ">");
+    }
+
     public TypeQLInsert generateThingInsertStatement(String[] row) {
+        return bindThingInsertStatement(row).getQuery();
+    }
+
+    private BoundInsert bindThingInsertStatement(String[] row) {
         if (row.length > 0) {
             ThingStatement insertStatement = GeneratorUtil.generateBoundThingVar(entityConfiguration.getInsert().getEntity());
 
-            GeneratorUtil.constrainThingWithHasAttributes(row, header, filePath, fileSeparator, insertStatement, entityConfiguration.getInsert().getOwnerships());
+            boolean requiredBound = binder.constrainThingWithHasAttributes(row, insertStatement, entityConfiguration.getInsert().getOwnerships());
 
-            return TypeQL.insert(insertStatement);
+            return new BoundInsert(TypeQL.insert(insertStatement), requiredBound);
         } else {
-            return TypeQL.insert(TypeQL.cVar("null").isa("null").has("null", "null"));
+            return BoundInsert.invalid();
         }
     }
 
-    public boolean valid(TypeQLInsert insert) {
-        if (insert == null) return false;
-        if (!insert.toString().contains("isa " + entityConfiguration.getInsert().getEntity())) return false;
-        for (Configuration.Definition.Attribute attribute : entityConfiguration.getInsert().getRequiredOwnerships()) {
-            if (!insert.toString().contains("has " + attribute.getAttribute())) return false;
+    /**
+     * Renders the insert query of the row from the query template of the generator, without the query builder.
+     */
+    public String generateThingInsertQuery(String[] row) {
+        return bindThingInsertQuery(row).toString();
+    }
+
+    private BoundInsert bindThingInsertQuery(String[] row) {
+        if (row.length > 0) {
+            StringBuilder query = new StringBuilder(thingTemplate.length() + 32 * row.length);
+            query.append("insert ");
+            boolean requiredBound = appendThing(row, "e", query);
+            query.append(';');
+            return new BoundInsert(query.toString(), requiredBound);
+        } else {
+            return BoundInsert.invalid();
         }
-        return true;
+    }
+
+    private boolean appendThing(String[] row, String thingVar, StringBuilder query) {
+        query.append('$').append(thingVar).append(thingTemplate);
+        return binder.appendHasAttributes(row, query, entityConfiguration.getInsert().getOwnerships());
+    }
+
+    /**
+     * Returns whether the row binds a valid insert: the row is not empty and binds every required ownership.
+     */
+    public boolean isThingInsertValid(String[] row) {
+        return bindThingInsertStatement(row).isValid();
     }
 
     public char getFileSeparator() {
         return this.fileSeparator;
     }
+
+    public boolean[] getReferencedColumns() {
+        return GeneratorUtil.getReferencedColumns(header, referencedAttributes());
+    }
+
+    private ArrayList<Configuration.Definition.Attribute> referencedAttributes() {
+        ArrayList<Configuration.Definition.Attribute> attributes = new ArrayList<>();
+        GeneratorUtil.addAttributes(attributes, entityConfiguration.getInsert().getOwnerships());
+        return attributes;
+    }
+
+    /**
+     * Rows sharing a key, with the union of their ownership values, keyed by attribute and value.
+     */
+    private class MergedRows {
+        private final List<String[]> rows = new ArrayList<>();
+        private final Map<String, Object[]> values = new LinkedHashMap<>();
+        private final LinkedHashSet<String> boundAttributes = new LinkedHashSet<>();
+        private boolean keyed = true;
+
+        private void add(String[] row) {
+            if (rows.isEmpty()) keyed = key(row) != null;
+            rows.add(row);
+            for (Configuration.Definition.Attribute ownership : entityConfiguration.getInsert().getOwnerships()) {
+                for (Object value : binder.values(row, ownership)) {
+                    values.putIfAbsent(ownership.getAttribute() + VALUE_SEPARATOR + value, new Object[]{ownership.getAttribute(), value});
+                    boundAttributes.add(ownership.getAttribute());
+                }
+            }
+        }
+
+        private boolean requiredBound() {
+            for (Configuration.Definition.Attribute attribute : entityConfiguration.getInsert().getRequiredOwnerships()) {
+                if (!boundAttributes.contains(attribute.getAttribute())) return false;
+            }
+            return true;
+        }
+
+        private ThingStatement.Thing statement(ThingStatement.Thing statement, Iterable<String> valueKeys) {
+            for (String valueKey : valueKeys) {
+                Object[] value = values.get(valueKey);
+                if (statement == null) {
+                    statement = TypeQL.cVar("e").constrain(GeneratorUtil.valueToHasConstraint((String) value[0], GeneratorUtil.valueToPredicate(value[1])));
+                } else {
+                    statement.constrain(GeneratorUtil.valueToHasConstraint((String) value[0], GeneratorUtil.valueToPredicate(value[1])));
+                }
+            }
+            return statement;
+        }
+    }
+
+    private static class PendingCapture {
+        private final Stream<ConceptMap> answers;
+        private final List<String[]> rows;
+        private final List<String> thingVars;
+
+        private PendingCapture(Stream<ConceptMap> answers, List<String[]> rows, List<String> thingVars) {
+            this.answers = answers;
+            this.rows = rows;
+            this.thingVars = thingVars;
+        }
+    }
 }
@@ -18,7 +18,36 @@ package com.vaticle.typedb.osi.loader.generator;
 
 import com.vaticle.typedb.driver.api.TypeDBTransaction;
 
+import java.util.List;
+
 public interface Generator {
     void write(TypeDBTransaction tx, String[] row, boolean allowMultiInsert);
+    default void write(TypeDBTransaction tx, List<String[]> rows, boolean allowMultiInsert) {
+        for (String[] row : rows) {
+            write(tx, row, allowMultiInsert);
+        }
+    }
+
+    /**
+     * Called on the thread that wrote the rows once the transaction they were written to has committed.
+     */
+    default void committed(List<String[]> rows) {
+    }
+
+    /**
+     * Called when the transaction the rows were written to failed to commit, before they are written again or
+     * given up on. Undoes what the generator remembers about the rows.
+     */
+    default void rollback(List<String[]> rows) {
+    }
+
+    /**
+     * Returns the columns whose values rows must share to be written by the same writer, or null if any writer
+     * can write any row.
+     */
+    default String[] getConflictColumns() {
+        return null;
+    }
     char getFileSeparator();
+    boolean[] getReferencedColumns();
 }
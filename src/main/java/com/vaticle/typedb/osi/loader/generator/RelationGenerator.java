@@ -19,9 +19,12 @@ package com.vaticle.typedb.osi.loader.generator;
 import com.vaticle.typedb.driver.api.TypeDBTransaction;
 import com.vaticle.typedb.driver.api.answer.ConceptMap;
 import com.vaticle.typedb.driver.common.exception.TypeDBDriverException;
+import com.vaticle.typedb.osi.loader.cache.IIDCache;
+import com.vaticle.typedb.osi.loader.cache.PlayerKeyScan;
 import com.vaticle.typedb.osi.loader.config.Configuration;
 import com.vaticle.typedb.osi.loader.io.FileLogger;
 import com.vaticle.typedb.osi.loader.util.GeneratorUtil;
+import com.vaticle.typedb.osi.loader.util.RowBinder;
 import com.vaticle.typedb.osi.loader.util.TypeDBUtil;
 import com.vaticle.typedb.osi.loader.util.Util;
 import com.vaticle.typeql.lang.TypeQL;
@@ -29,15 +32,22 @@ import com.vaticle.typeql.lang.builder.ConceptVariableBuilder;
 import com.vaticle.typeql.lang.pattern.constraint.ThingConstraint;
 import com.vaticle.typeql.lang.pattern.statement.ThingStatement;
 import com.vaticle.typeql.lang.query.TypeQLInsert;
-import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
-import static com.vaticle.typedb.osi.loader.util.GeneratorUtil.constrainThingWithHasAttributes;
 import static com.vaticle.typedb.osi.loader.util.TypeDBUtil.safeInsert;
 
 public class RelationGenerator implements Generator {
@@ -46,55 +56,321 @@ public class RelationGenerator implements Generator {
     private final String[] header;
     private final Configuration.Generator.Relation relationConfiguration;
     private final char fileSeparator;
+    private final RowBinder binder;
+    private final int matchPipelineDepth;
+    private final IIDCache iidCache;
+    private final int playerLookupGroupSize;
+    private final PlayerKeyScan[] playerKeyScans;
 
     public RelationGenerator(String filePath, Configuration.Generator.Relation relationConfiguration, char fileSeparator) throws IOException {
+        this(filePath, relationConfiguration, fileSeparator, 1);
+    }
+
+    public RelationGenerator(String filePath, Configuration.Generator.Relation relationConfiguration, char fileSeparator, int matchPipelineDepth) throws IOException {
+        this(filePath, relationConfiguration, fileSeparator, matchPipelineDepth, null);
+    }
+
+    /**
+     * Players identified by attributes are looked up in the given cache (none if null) before they are matched,
+     * and the IIDs of the players matched by an insert are added to it.
+     */
+    public RelationGenerator(String filePath, Configuration.Generator.Relation relationConfiguration, char fileSeparator, int matchPipelineDepth, IIDCache iidCache) throws IOException {
+        this(filePath, relationConfiguration, fileSeparator, matchPipelineDepth, iidCache, 0);
+    }
+
+    /**
+     * With a playerLookupGroupSize above 1, the players identified by attributes of a batch of rows are looked up
+     * before the rows are bound, with one query per group of up to playerLookupGroupSize distinct keys.
+     */
+    public RelationGenerator(String filePath, Configuration.Generator.Relation relationConfiguration, char fileSeparator, int matchPipelineDepth, IIDCache iidCache,
+                             int playerLookupGroupSize) throws IOException {
         this.filePath = filePath;
         this.header = Util.getFileHeader(filePath, fileSeparator);
         this.relationConfiguration = relationConfiguration;
         this.fileSeparator = fileSeparator;
+        this.binder = new RowBinder(filePath, header, fileSeparator, referencedAttributes());
+        this.matchPipelineDepth = matchPipelineDepth;
+        this.iidCache = iidCache;
+        this.playerLookupGroupSize = playerLookupGroupSize;
+        Configuration.Definition.Player[] players = relationConfiguration.getInsert().getPlayers();
+        this.playerKeyScans = new PlayerKeyScan[players.length];
+        for (int p = 0; p < players.length; p++) {
+            if (Util.playerType(players[p]).equals("byAttribute")) {
+                playerKeyScans[p] = new PlayerKeyScan(players[p].getMatch().getType(), players[p].getMatch().getOwnerships());
+            }
+        }
     }
 
     @Override
     public void write(TypeDBTransaction tx, String[] row, boolean allowMultiInsert) {
-        String fileName = FilenameUtils.getName(filePath);
-        String fileNoExtension = FilenameUtils.removeExtension(fileName);
-        String originalRow = String.join(Character.toString(fileSeparator), row);
+        checkRowLength(row);
+        write(tx, row, bindMatchInsertStatement(row, bindPlayers(row), null), allowMultiInsert, null);
+    }
 
-        if (row.length > header.length) {
-            FileLogger.getLogger().logMalformed(fileName, originalRow);
-            dataLogger.error("Malformed Row detected in <" + filePath + "> - written to <" + fileNoExtension + "_malformed.log" + ">");
+    /**
+     * The answers of an insert whose players are all resolved to IIDs are added to resolvedInserts to be checked
+     * later, or checked right away if it is null.
+     */
+    private void write(TypeDBTransaction tx, String[] row, BoundRelation bound, boolean allowMultiInsert, List<ResolvedInsert> resolvedInserts) {
+        if (bound.isValid()) {
+            try {
+                if (bound.resolved) {
+                    insertResolved(tx, row, bound, allowMultiInsert, resolvedInserts);
+                } else {
+                    insertMatched(tx, row, bound, TypeDBUtil.executeMatch(tx, bound.getQuery()), allowMultiInsert);
+                }
+            } catch (TypeDBDriverException typeDBDriverException) {
+                logUnavailable(row);
+            }
+        } else {
+            logInvalid(row, bound.getQuery());
         }
+    }
 
-        TypeQLInsert query = generateMatchInsertStatement(row);
+    /**
+     * Keeps up to matchPipelineDepth match queries in flight: the match queries of the following rows are
+     * sent before the answers of the oldest row are read and its inserts are sent, so the round trips of
+     * consecutive rows overlap instead of adding up. Rows are inserted in their original order, including the rows
+     * whose players were all resolved from the IID cache and need no match query. The answers of those inserts are
+     * read once all rows are sent.
+     */
+    @Override
+    public void write(TypeDBTransaction tx, List<String[]> rows, boolean allowMultiInsert) {
+        List<BoundPlayer[]> boundRows = new ArrayList<>(rows.size());
+        for (String[] row : rows) {
+            checkRowLength(row);
+            boundRows.add(bindPlayers(row));
+        }
+        Map<String, String> resolvedPlayers = playerLookupGroupSize > 1 ? lookupPlayers(tx, boundRows) : null;
+        List<ResolvedInsert> resolvedInserts = new ArrayList<>();
+
+        if (matchPipelineDepth <= 1) {
+            for (int i = 0; i < rows.size(); i++) {
+                write(tx, rows.get(i), bindMatchInsertStatement(rows.get(i), boundRows.get(i), resolvedPlayers), allowMultiInsert, resolvedInserts);
+            }
+            checkResolved(tx, resolvedInserts, allowMultiInsert);
+            return;
+        }
 
-        if (relationInsertStatementValid(query)) {
+        ArrayDeque<PendingMatch> pending = new ArrayDeque<>(matchPipelineDepth);
+        for (int i = 0; i < rows.size(); i++) {
+            String[] row = rows.get(i);
+            BoundRelation bound = bindMatchInsertStatement(row, boundRows.get(i), resolvedPlayers);
+            if (!bound.isValid()) {
+                logInvalid(row, bound.getQuery());
+                continue;
+            }
+            if (pending.size() == matchPipelineDepth) {
+                insertMatched(tx, pending.poll(), allowMultiInsert, resolvedInserts);
+            }
             try {
-                Iterator<ConceptMap> answers = TypeDBUtil.executeMatch(tx, query);
-                if (!answers.hasNext()) {
-                    FileLogger.getLogger().logNoMatches(fileName, originalRow);
-                    dataLogger.error("Match-insert failed - File <" + filePath + "> row <" + originalRow + "> generates query <" + query + "> which matched no answers.");
-                } else {
-                    safeInsert(tx, query, answers, allowMultiInsert, filePath, originalRow, dataLogger);
-                }
+                pending.add(new PendingMatch(row, bound, bound.resolved ? null : TypeDBUtil.executeMatch(tx, bound.getQuery())));
             } catch (TypeDBDriverException typeDBDriverException) {
-                FileLogger.getLogger().logUnavailable(fileName, originalRow);
-                dataLogger.error("TypeDB Unavailable - Row in <" + filePath + "> not inserted - written to <" + fileNoExtension + "_unavailable.log" + ">");
+                logUnavailable(row);
+            }
+        }
+        while (!pending.isEmpty()) {
+            insertMatched(tx, pending.poll(), allowMultiInsert, resolvedInserts);
+        }
+        checkResolved(tx, resolvedInserts, allowMultiInsert);
+    }
+
+    /**
+     * Resolves the distinct keys of the players of the rows to IIDs: from the IID cache, or else with one
+     * disjunction query per group of keys. All queries are sent before their answers are read. Returns the IIDs
+     * by key; keys held by no thing or by more than one thing are left out, so their rows are matched one by one.
+     */
+    private Map<String, String> lookupPlayers(TypeDBTransaction tx, List<BoundPlayer[]> boundRows) {
+        Map<String, String> resolvedPlayers = new HashMap<>();
+        List<PendingLookup> lookups = new ArrayList<>();
+        try {
+            for (int p = 0; p < playerKeyScans.length; p++) {
+                if (playerKeyScans[p] == null) continue;
+                Map<String, ArrayList<ArrayList<Object>>> keys = new LinkedHashMap<>();
+                for (BoundPlayer[] boundPlayers : boundRows) {
+                    BoundPlayer boundPlayer = boundPlayers[p];
+                    if (boundPlayer.key == null || resolvedPlayers.containsKey(boundPlayer.key) || keys.containsKey(boundPlayer.key)) continue;
+                    String iid = iidCache != null ? iidCache.get(boundPlayer.key) : null;
+                    if (iid != null) resolvedPlayers.put(boundPlayer.key, iid);
+                    // keys with several values of an attribute are left to the match of their row
+                    else if (boundPlayer.singleValued) keys.put(boundPlayer.key, boundPlayer.values);
+                }
+                List<ArrayList<ArrayList<Object>>> group = new ArrayList<>(playerLookupGroupSize);
+                for (ArrayList<ArrayList<Object>> key : keys.values()) {
+                    group.add(key);
+                    if (group.size() == playerLookupGroupSize) {
+                        lookups.add(new PendingLookup(playerKeyScans[p], tx.query().get(playerKeyScans[p].query(group)).iterator()));
+                        group = new ArrayList<>(playerLookupGroupSize);
+                    }
+                }
+                if (!group.isEmpty()) {
+                    lookups.add(new PendingLookup(playerKeyScans[p], tx.query().get(playerKeyScans[p].query(group)).iterator()));
+                }
+            }
+
+            Map<String, String> foundPlayers = new HashMap<>();
+            Set<String> ambiguousKeys = new HashSet<>();
+            for (PendingLookup lookup : lookups) {
+                while (lookup.answers.hasNext()) {
+                    ConceptMap answer = lookup.answers.next();
+                    String key = lookup.scan.key(answer);
+                    String iid = answer.get("x").asThing().getIID();
+                    String foundIID = foundPlayers.putIfAbsent(key, iid);
+                    if (foundIID != null && !foundIID.equals(iid)) ambiguousKeys.add(key);
+                }
             }
+            for (Map.Entry<String, String> foundPlayer : foundPlayers.entrySet()) {
+                if (ambiguousKeys.contains(foundPlayer.getKey())) continue;
+                resolvedPlayers.put(foundPlayer.getKey(), foundPlayer.getValue());
+                if (iidCache != null) iidCache.put(foundPlayer.getKey(), foundPlayer.getValue());
+            }
+        } catch (TypeDBDriverException typeDBDriverException) {
+            // the rows are matched one by one, and report the failure row by row
+            dataLogger.error("Player lookup failed in <" + filePath + "> - matching players row by row: " + typeDBDriverException.getMessage());
+        }
+        return resolvedPlayers;
+    }
+
+    private void insertMatched(TypeDBTransaction tx, PendingMatch match, boolean allowMultiInsert, List<ResolvedInsert> resolvedInserts) {
+        try {
+            if (match.answers == null) {
+                insertResolved(tx, match.row, match.bound, allowMultiInsert, resolvedInserts);
+            } else {
+                insertMatched(tx, match.row, match.bound, match.answers, allowMultiInsert);
+            }
+        } catch (TypeDBDriverException typeDBDriverException) {
+            logUnavailable(match.row);
+        }
+    }
+
+    private void insertMatched(TypeDBTransaction tx, String[] row, BoundRelation bound, Iterator<ConceptMap> answers, boolean allowMultiInsert) {
+        TypeQLInsert query = bound.getQuery();
+        if (!answers.hasNext() && !bound.resolvedPlayerKeys.isEmpty()) {
+            rematch(tx, row, bound, allowMultiInsert);
+        } else if (!answers.hasNext()) {
+            FileLogger.getLogger().logNoMatches(binder.getFileName(), binder.originalRow(row));
+            dataLogger.error("Match-insert failed - File <" + filePath + "> row <" + binder.originalRow(row) + "> generates query <" + query + "> which matched no answers.");
         } else {
-            FileLogger.getLogger().logInvalid(fileName, originalRow);
-            dataLogger.error("Invalid Row detected in <" + filePath + "> - written to <" + fileNoExtension + "_invalid.log" + "> - invalid Statement: <" + query.toString().replace("\n", " ") + ">");
+            safeInsert(tx, query, answers, allowMultiInsert, filePath, () -> binder.originalRow(row), dataLogger, answer -> cachePlayers(bound, answer));
+        }
+    }
+
+    private void insertResolved(TypeDBTransaction tx, String[] row, BoundRelation bound, boolean allowMultiInsert, List<ResolvedInsert> resolvedInserts) {
+        ResolvedInsert resolvedInsert = new ResolvedInsert(row, bound, tx.query().insert(bound.getQuery()));
+        if (resolvedInserts != null) resolvedInserts.add(resolvedInsert);
+        else checkResolved(tx, Collections.singletonList(resolvedInsert), allowMultiInsert);
+    }
+
+    /**
+     * Reads the answers of inserts whose players were all matched by IID. An insert without an answer matched
+     * no thing for one of its IIDs, so the row is matched again by the attributes of its players.
+     */
+    private void checkResolved(TypeDBTransaction tx, List<ResolvedInsert> resolvedInserts, boolean allowMultiInsert) {
+        for (ResolvedInsert resolvedInsert : resolvedInserts) {
+            try {
+                if (!resolvedInsert.answers.findAny().isPresent()) {
+                    rematch(tx, resolvedInsert.row, resolvedInsert.bound, allowMultiInsert);
+                }
+            } catch (TypeDBDriverException typeDBDriverException) {
+                logUnavailable(resolvedInsert.row);
+            }
+        }
+    }
+
+    /**
+     * Evicts the IIDs the players of the row were matched by - they belong to no thing, for example because the
+     * thing was not committed - and matches the players by their attributes instead. A row that still matches
+     * nothing is logged as a no-match.
+     */
+    private void rematch(TypeDBTransaction tx, String[] row, BoundRelation stale, boolean allowMultiInsert) {
+        if (iidCache != null) {
+            for (String key : stale.resolvedPlayerKeys) {
+                iidCache.remove(key);
+            }
+        }
+        dataLogger.warn("Stale player IIDs in <" + filePath + "> row <" + binder.originalRow(row) + "> - matching its players by attributes");
+        // no resolved players: the binding neither uses the given IIDs nor reads the IID cache
+        write(tx, row, bindMatchInsertStatement(row, bindPlayers(row), Collections.emptyMap()), allowMultiInsert, null);
+    }
+
+    /**
+     * The match statements of the players are independent, so a unique answer holds the only thing that matched
+     * each player.
+     */
+    private void cachePlayers(BoundRelation bound, ConceptMap answer) {
+        if (bound.uncachedPlayerKeys == null) return;
+        for (Map.Entry<String, String> playerKey : bound.uncachedPlayerKeys.entrySet()) {
+            iidCache.put(playerKey.getValue(), answer.get(playerKey.getKey()).asThing().getIID());
+        }
+    }
+
+    private void checkRowLength(String[] row) {
+        if (row.length > header.length) {
+            FileLogger.getLogger().logMalformed(binder.getFileName(), binder.originalRow(row));
+            dataLogger.error("Malformed Row detected in <" + filePath + "> - written to <" + binder.getFileNoExtension() + "_malformed.log" + ">");
         }
     }
 
+    private void logUnavailable(String[] row) {
+        FileLogger.getLogger().logUnavailable(binder.getFileName(), binder.originalRow(row));
+        dataLogger.error("TypeDB Unavailable - Row in <" + filePath + "> not inserted - written to <" + binder.getFileNoExtension() + "_unavailable.log" + ">");
+    }
+
+    private void logInvalid(String[] row, TypeQLInsert query) {
+        FileLogger.getLogger().logInvalid(binder.getFileName(), binder.originalRow(row));
+        dataLogger.error("Invalid Row detected in <" + filePath + "> - written to <" + binder.getFileNoExtension() + "_invalid.log" + "> - invalid Statement: <" + query.toString().replace("\n", " ") + ">");
+    }
+
     public TypeQLInsert generateMatchInsertStatement(String[] row) {
+        return bindMatchInsertStatement(row, bindPlayers(row), null).getQuery();
+    }
+
+    /**
+     * Binds the identifying attributes of the players identified by attributes, by position of the player in the
+     * configuration (null for other players). The key of a player is only set if all its attributes are bound and
+     * it can be resolved to an IID.
+     */
+    private BoundPlayer[] bindPlayers(String[] row) {
+        Configuration.Definition.Player[] players = relationConfiguration.getInsert().getPlayers();
+        BoundPlayer[] boundPlayers = new BoundPlayer[players.length];
+        boolean keyed = iidCache != null || playerLookupGroupSize > 1;
+        for (int p = 0; p < players.length; p++) {
+            if (playerKeyScans[p] == null) continue;
+            Configuration.Definition.Attribute[] ownerships = players[p].getMatch().getOwnerships();
+            ArrayList<ArrayList<Object>> values = ownershipValues(row, ownerships);
+            int boundOwnerships = 0;
+            boolean singleValued = true;
+            for (ArrayList<Object> attributeValues : values) {
+                if (!attributeValues.isEmpty()) boundOwnerships++;
+                if (attributeValues.size() > 1) singleValued = false;
+            }
+            String key = keyed && boundOwnerships == ownerships.length ? IIDCache.key(players[p].getMatch().getType(), ownerships, values) : null;
+            boundPlayers[p] = new BoundPlayer(values, boundOwnerships, singleValued, key);
+        }
+        return boundPlayers;
+    }
+
+    /**
+     * Players with a key are resolved by IID from resolvedPlayers if given, or else from the IID cache.
+     */
+    private BoundRelation bindMatchInsertStatement(String[] row, BoundPlayer[] boundPlayers, Map<String, String> resolvedPlayers) {
         if (row.length > 0) {
             ArrayList<ThingStatement<?>> playerMatchStatements = new ArrayList<>();
             ArrayList<String> playerVars = new ArrayList<>();
             ArrayList<String> roleTypes = new ArrayList<>();
+            // a required player is bound if its role is filled and all of its identifying data is present
+            boolean requiredPlayersBound = true;
+            // players found in the IID cache are matched by IID, and the keys of the others are kept to cache them
+            boolean resolved = true;
+            List<String> resolvedPlayerKeys = new ArrayList<>();
+            Map<String, String> uncachedPlayerKeys = null;
 
             int playerIdx = 0;
-            for (Configuration.Definition.Player player : relationConfiguration.getInsert().getPlayers()) {
+            Configuration.Definition.Player[] players = relationConfiguration.getInsert().getPlayers();
+            for (int p = 0; p < players.length; p++) {
+                Configuration.Definition.Player player = players[p];
                 String playerVar = "player-" + playerIdx;
+                boolean playerBound = false;
 
                 // ATTRIBUTE PLAYER
                 if (Util.playerType(player).equals("attribute")) {
@@ -104,14 +380,34 @@ public class RelationGenerator implements Generator {
                         playerVars.add(playerVar);
                         roleTypes.add(player.getRole());
                         playerIdx += 1;
+                        playerBound = true;
+                        resolved = false;
                     }
                 }
 
                 // ENTITY & RELATION PLAYER BY ATTRIBUTE(s)
                 if (Util.playerType(player).equals("byAttribute")) {
-                    ThingStatement.Thing playerMatchStatement = getThingPlayerMatchStatementByAttribute(row, player, playerVar);
-                    if (playerMatchStatement.constraints().stream().anyMatch(ThingConstraint::isHas)) {
-                        playerMatchStatements.add(playerMatchStatement);
+                    Configuration.Definition.Attribute[] ownerships = player.getMatch().getOwnerships();
+                    BoundPlayer boundPlayer = boundPlayers[p];
+                    if (boundPlayer.boundOwnerships > 0) {
+                        playerBound = boundPlayer.boundOwnerships == ownerships.length;
+                        String key = boundPlayer.key;
+                        String iid = null;
+                        if (key != null && resolvedPlayers != null) iid = resolvedPlayers.get(key);
+                        else if (key != null && iidCache != null) iid = iidCache.get(key);
+                        if (iid != null) {
+                            playerMatchStatements.add(TypeQL.cVar(playerVar).iid(iid));
+                            resolvedPlayerKeys.add(key);
+                        } else {
+                            ThingStatement.Thing playerMatchStatement = TypeQL.cVar(playerVar).isa(player.getMatch().getType());
+                            constrainPlayerByAttributes(playerMatchStatement, ownerships, boundPlayer.values);
+                            playerMatchStatements.add(playerMatchStatement);
+                            resolved = false;
+                            if (key != null && iidCache != null) {
+                                if (uncachedPlayerKeys == null) uncachedPlayerKeys = new HashMap<>();
+                                uncachedPlayerKeys.put(playerVar, key);
+                            }
+                        }
                         playerVars.add(playerVar);
                         roleTypes.add(player.getRole());
                         playerIdx += 1;
@@ -120,13 +416,16 @@ public class RelationGenerator implements Generator {
 
 //                // Relation PLAYER BY PLAYERs
                 if (Util.playerType(player).equals("byPlayer")) {
-                    ArrayList<ThingStatement<?>> playerMatchStatement = getRelationPlayerMatchStatement(row, player, playerVar);
-                    playerMatchStatements.addAll(playerMatchStatement);
+                    playerBound = addRelationPlayerMatchStatements(row, player, playerVar, playerMatchStatements);
                     playerVars.add(playerVar);
                     roleTypes.add(player.getRole());
                     playerIdx += 1;
+                    resolved = false;
                 }
 
+                if (!playerBound && player.getRequired() != null && player.getRequired()) {
+                    requiredPlayersBound = false;
+                }
             }
 
             ThingStatement.Relation insertStatement = null;
@@ -139,34 +438,51 @@ public class RelationGenerator implements Generator {
             }
             if (insertStatement != null) {
                 insertStatement = insertStatement.isa(relationConfiguration.getInsert().getRelation());
+                boolean requiredOwnershipsBound = true;
                 if (relationConfiguration.getInsert().getOwnerships() != null) {
-                    constrainThingWithHasAttributes(row, header, filePath, fileSeparator, insertStatement, relationConfiguration.getInsert().getOwnerships());
+                    requiredOwnershipsBound = binder.constrainThingWithHasAttributes(row, insertStatement, relationConfiguration.getInsert().getOwnerships());
                 }
 
-                return TypeQL.match(playerMatchStatements).insert(insertStatement);
+                return new BoundRelation(TypeQL.match(playerMatchStatements).insert(insertStatement), requiredPlayersBound && requiredOwnershipsBound,
+                        resolved, resolvedPlayerKeys, uncachedPlayerKeys);
             } else {
-                return TypeQL.insert(TypeQL.cVar("null").isa("null").has("null", "null"));
+                return BoundRelation.invalid();
             }
         } else {
-            return TypeQL.insert(TypeQL.cVar("null").isa("null").has("null", "null"));
+            return BoundRelation.invalid();
         }
     }
 
     private ThingStatement.Thing getThingPlayerMatchStatementByAttribute(String[] row, Configuration.Definition.Player player, String playerVar) {
         ThingStatement.Thing playerMatchStatement = TypeQL.cVar(playerVar).isa(player.getMatch().getType());
-        for (Configuration.Definition.Attribute consA : player.getMatch().getOwnerships()) {
-            ArrayList<ThingConstraint.Predicate> constraintValues = GeneratorUtil.generateValueConstraintsConstrainingAttribute(
-                    row, header, filePath, fileSeparator, consA);
-            for (ThingConstraint.Predicate constraintValue : constraintValues) {
-                playerMatchStatement.constrain(GeneratorUtil.valueToHasConstraint(consA.getAttribute(), constraintValue));
+        Configuration.Definition.Attribute[] ownerships = player.getMatch().getOwnerships();
+        constrainPlayerByAttributes(playerMatchStatement, ownerships, ownershipValues(row, ownerships));
+        return playerMatchStatement;
+    }
+
+    private ArrayList<ArrayList<Object>> ownershipValues(String[] row, Configuration.Definition.Attribute[] ownerships) {
+        ArrayList<ArrayList<Object>> ownershipValues = new ArrayList<>(ownerships.length);
+        for (Configuration.Definition.Attribute ownership : ownerships) {
+            ownershipValues.add(binder.values(row, ownership));
+        }
+        return ownershipValues;
+    }
+
+    /**
+     * Constrains the match statement of a player with the values bound for its identifying attributes.
+     */
+    private static void constrainPlayerByAttributes(ThingStatement.Thing playerMatchStatement,
+                                                    Configuration.Definition.Attribute[] ownerships,
+                                                    ArrayList<ArrayList<Object>> ownershipValues) {
+        for (int i = 0; i < ownerships.length; i++) {
+            for (Object value : ownershipValues.get(i)) {
+                playerMatchStatement.constrain(GeneratorUtil.valueToHasConstraint(ownerships[i].getAttribute(), GeneratorUtil.valueToPredicate(value)));
             }
         }
-        return playerMatchStatement;
     }
 
     private ThingStatement.Attribute getAttributePlayerMatchStatement(String[] row, Configuration.Definition.Player player, String playerVar) {
-        ArrayList<ThingConstraint.Predicate> constraints = GeneratorUtil.generateValueConstraintsConstrainingAttribute(
-                row, header, filePath, fileSeparator, player.getMatch().getAttribute());
+        ArrayList<ThingConstraint.Predicate> constraints = binder.valueConstraints(row, player.getMatch().getAttribute());
         if (constraints.size() > 0) {
             return TypeQL.cVar(playerVar)
                     .constrain(constraints.get(0))
@@ -176,10 +492,6 @@ public class RelationGenerator implements Generator {
         }
     }
 
-    private ArrayList<ThingStatement<?>> getRelationPlayerMatchStatement(String[] row, Configuration.Definition.Player player, String playerVar) {
-        return recursiveAssemblyMatchStatement(row, player, playerVar);
-    }
-
     private ArrayList<ThingStatement<?>> recursiveAssemblyMatchStatement(String[] row,
                                                                         Configuration.Definition.Player player,
                                                                         String playerVar) {
@@ -202,116 +514,137 @@ public class RelationGenerator implements Generator {
         } else if (Util.playerType(player).equals("byPlayer")) {
             // identify relation player "byPlayer"
             ArrayList<ThingStatement<?>> statements = new ArrayList<>();
-            //create the relation statement with the player vars that will be filled in recursion:
-            ConceptVariableBuilder ubv = TypeQL.cVar(playerVar);
-            ThingStatement.Relation relationMatch = null;
-            for (int idx = 0; idx < player.getMatch().getPlayers().length; idx++) {
-                Configuration.Definition.Player curPlayer = player.getMatch().getPlayers()[idx];
-                String curPlayerVar = playerVar + "-" + idx;
-                if (idx == 0) {
-                    relationMatch = ubv.rel(curPlayer.getRole(), TypeQL.cVar(curPlayerVar));
-                } else {
-                    relationMatch = relationMatch.rel(curPlayer.getRole(), TypeQL.cVar(curPlayerVar));
-                }
-                // this is where the recursion happens to fill the player var!
-                ArrayList<ThingStatement<?>> recursiveMatch = recursiveAssemblyMatchStatement(row, curPlayer, curPlayerVar);
-                // now add whatever the recursion brought back:
-                statements.addAll(recursiveMatch);
-            }
-            assert relationMatch != null;
-            relationMatch = relationMatch.isa(player.getMatch().getType());
-            statements.add(relationMatch);
-
+            addRelationPlayerMatchStatements(row, player, playerVar, statements);
             return statements;
         } else {
             return null;
         }
     }
 
-    public boolean relationInsertStatementValid(TypeQLInsert insert) {
-        if (insert == null) return false;
-        if (!insert.toString().contains("isa " + relationConfiguration.getInsert().getRelation())) return false;
-
-        int idx = 0;
-        for (Configuration.Definition.Player player : relationConfiguration.getInsert().getRequiredPlayers()) {
-            // if attribute player
-            // the attribute must be in the match statement
-            if (Util.playerType(player).equals("attribute")) {
-                if (!validateAttributePlayer(player, insert)) {
-                    return false;
-                }
-            } else if (Util.playerType(player).equals("byAttribute")) {
-                if (!validateByAttributePlayer(player, insert)) {
-                    return false;
-                }
-            } else if (Util.playerType(player).equals("byPlayer")) {
-                if (!recursiveValidationPlayers(player, insert, "player-" + idx)) {
-                    return false;
-                }
+    /**
+     * Adds the match statements of a "byPlayer" relation player and of its nested players, and returns whether
+     * every nested player could be matched from the row.
+     */
+    private boolean addRelationPlayerMatchStatements(String[] row,
+                                                     Configuration.Definition.Player player,
+                                                     String playerVar,
+                                                     ArrayList<ThingStatement<?>> statements) {
+        boolean nestedPlayersBound = true;
+        //create the relation statement with the player vars that will be filled in recursion:
+        ConceptVariableBuilder ubv = TypeQL.cVar(playerVar);
+        ThingStatement.Relation relationMatch = null;
+        for (int idx = 0; idx < player.getMatch().getPlayers().length; idx++) {
+            Configuration.Definition.Player curPlayer = player.getMatch().getPlayers()[idx];
+            String curPlayerVar = playerVar + "-" + idx;
+            if (idx == 0) {
+                relationMatch = ubv.rel(curPlayer.getRole(), TypeQL.cVar(curPlayerVar));
+            } else {
+                relationMatch = relationMatch.rel(curPlayer.getRole(), TypeQL.cVar(curPlayerVar));
             }
-            idx++;
+            // this is where the recursion happens to fill the player var!
+            ArrayList<ThingStatement<?>> recursiveMatch = recursiveAssemblyMatchStatement(row, curPlayer, curPlayerVar);
+            // attribute and byAttribute players without data in the row bring back no statement
+            if (recursiveMatch.isEmpty()) nestedPlayersBound = false;
+            // now add whatever the recursion brought back:
+            statements.addAll(recursiveMatch);
         }
+        assert relationMatch != null;
+        relationMatch = relationMatch.isa(player.getMatch().getType());
+        statements.add(relationMatch);
+        return nestedPlayersBound;
+    }
 
-        // all required attributes part of the insert statement
-        if (relationConfiguration.getInsert().getRequiredOwnerships() != null) {
-            for (Configuration.Definition.Attribute attribute : relationConfiguration.getInsert().getRequiredOwnerships()) {
-                if (!insert.toString().contains("has " + attribute.getAttribute())) return false;
-            }
-        }
-        // all roles that are required must be in the insert statement
-        for (Configuration.Definition.Player player : relationConfiguration.getInsert().getRequiredPlayers()) {
-            if (!insert.toString().contains(player.getRole() + ":")) return false;
-        }
-        // must have number of requireNonNull players
-        int requiredPlayers = relationConfiguration.getInsert().getRequiredPlayers().length;
-        for (int i = 0; i < requiredPlayers; i++) {
-            if (!insert.toString().contains("player-" + i)) return false;
-        }
+    /**
+     * Returns whether the row binds a valid insert: every required player is bound with all of its identifying
+     * data, and every required ownership has a value.
+     */
+    public boolean isMatchInsertValid(String[] row) {
+        return bindMatchInsertStatement(row, bindPlayers(row), null).isValid();
+    }
 
-        return true;
+    public char getFileSeparator() {
+        return this.fileSeparator;
     }
 
-    private boolean validateAttributePlayer(Configuration.Definition.Player player, TypeQLInsert insert) {
-        return insert.toString().contains("isa " + player.getMatch().getType());
+    public boolean[] getReferencedColumns() {
+        return GeneratorUtil.getReferencedColumns(header, referencedAttributes());
     }
 
-    private boolean validateByAttributePlayer(Configuration.Definition.Player player, TypeQLInsert insert) {
-        if (!insert.toString().contains("isa " + player.getMatch().getType())) return false;
-        // each identifying attribute of the entity must be in the match statement
-        Configuration.Definition.Attribute[] ownerships = player.getMatch().getOwnerships();
-        for (Configuration.Definition.Attribute ownership : ownerships) {
-            if (ownership != null) {
-                if (!insert.toString().contains("has " + ownership.getAttribute())) return false;
-            }
+    private ArrayList<Configuration.Definition.Attribute> referencedAttributes() {
+        ArrayList<Configuration.Definition.Attribute> attributes = new ArrayList<>();
+        GeneratorUtil.addAttributes(attributes, relationConfiguration.getInsert().getOwnerships());
+        GeneratorUtil.addPlayerAttributes(attributes, relationConfiguration.getInsert().getPlayers());
+        return attributes;
+    }
+
+    private static class ResolvedInsert {
+        private final String[] row;
+        private final BoundRelation bound;
+        private final Stream<ConceptMap> answers;
+
+        private ResolvedInsert(String[] row, BoundRelation bound, Stream<ConceptMap> answers) {
+            this.row = row;
+            this.bound = bound;
+            this.answers = answers;
         }
-        return true;
     }
 
-    private boolean recursiveValidationPlayers(Configuration.Definition.Player player, TypeQLInsert insert, String playerVar) {
+    private static class PendingMatch {
+        private final String[] row;
+        private final BoundRelation bound;
+        private final Iterator<ConceptMap> answers;
 
-        if (Util.playerType(player).equals("attribute")) {
-            //terminating condition - attribute player:
-            return validateAttributePlayer(player, insert);
-        } else if (Util.playerType(player).equals("byAttribute")) {
-            //terminating condition - byAttribute player:
-            return validateByAttributePlayer(player, insert);
-        } else if (Util.playerType(player).equals("byPlayer")) {
-            for (int idx = 0; idx < player.getMatch().getPlayers().length; idx++) {
-                // if player is a relation with players - check validity of "shallow" relation player
-                Configuration.Definition.Player curPlayer = player.getMatch().getPlayers()[idx];
-                String curPlayerVar = playerVar + "-" + idx;
-                if (!insert.toString().contains("isa " + curPlayer.getMatch().getType())) return false;
-                if (!insert.toString().contains(curPlayer.getRole() + ":")) return false;
-                if (!insert.toString().contains(curPlayerVar)) return false;
-                recursiveValidationPlayers(curPlayer, insert, curPlayerVar);
-            }
-            return true;
-        } else {
-            return false;
+        private PendingMatch(String[] row, BoundRelation bound, Iterator<ConceptMap> answers) {
+            this.row = row;
+            this.bound = bound;
+            this.answers = answers;
         }
     }
 
-    public char getFileSeparator() {
-        return this.fileSeparator;
+    private static class BoundPlayer {
+        private final ArrayList<ArrayList<Object>> values;
+        private final int boundOwnerships;
+        private final boolean singleValued;
+        private final String key;
+
+        private BoundPlayer(ArrayList<ArrayList<Object>> values, int boundOwnerships, boolean singleValued, String key) {
+            this.values = values;
+            this.boundOwnerships = boundOwnerships;
+            this.singleValued = singleValued;
+            this.key = key;
+        }
+    }
+
+    private static class PendingLookup {
+        private final PlayerKeyScan scan;
+        private final Iterator<ConceptMap> answers;
+
+        private PendingLookup(PlayerKeyScan scan, Iterator<ConceptMap> answers) {
+            this.scan = scan;
+            this.answers = answers;
+        }
+    }
+
+    /**
+     * A relation insert whose players are either all resolved to IIDs from the cache, so it can be inserted
+     * without a match round trip, or keyed by player variable for caching once they are matched. The keys of the
+     * players matched by IID are kept to evict them if the IIDs turn out to be stale.
+     */
+    private static class BoundRelation extends BoundInsert {
+        private final boolean resolved;
+        private final List<String> resolvedPlayerKeys;
+        private final Map<String, String> uncachedPlayerKeys;
+
+        private BoundRelation(TypeQLInsert query, boolean valid, boolean resolved, List<String> resolvedPlayerKeys,
+                              Map<String, String> uncachedPlayerKeys) {
+            super(query, valid);
+            this.resolved = resolved;
+            this.resolvedPlayerKeys = resolvedPlayerKeys;
+            this.uncachedPlayerKeys = uncachedPlayerKeys;
+        }
+
+        static BoundRelation invalid() {
+            return new BoundRelation(BoundInsert.invalid().getQuery(), false, false, Collections.emptyList(), null);
+        }
     }
 }
@@ -23,12 +23,16 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 public class FileLogger {
 
     private static FileLogger logger = null;
     private final String directoryString;
+    // row logs held back by the calling thread, null if it logs right away
+    private final ThreadLocal<List<Runnable>> deferred = new ThreadLocal<>();
 
     private FileLogger() {
         DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH_mm_ss").withZone(ZoneId.systemDefault());
@@ -46,7 +50,44 @@ public class FileLogger {
         return logger;
     }
 
+    public String getDirectory() {
+        return directoryString;
+    }
+
+    /**
+     * Holds back the malformed, invalid, unavailable, no-match, too-many-matches and column type rows the calling
+     * thread logs, until they are flushed or discarded: the rows of a transaction that fails to commit are written
+     * again, and logged by the attempt that commits them.
+     */
+    public void defer() {
+        deferred.set(new ArrayList<>());
+    }
+
+    /**
+     * Writes the rows held back by the calling thread, which logs right away again.
+     */
+    public void flush() {
+        List<Runnable> logs = deferred.get();
+        deferred.remove();
+        if (logs != null) logs.forEach(Runnable::run);
+    }
+
+    /**
+     * Drops the rows held back by the calling thread, which logs right away again.
+     */
+    public void discard() {
+        deferred.remove();
+    }
+
+    private boolean deferred(Runnable log) {
+        List<Runnable> logs = deferred.get();
+        if (logs == null) return false;
+        logs.add(log);
+        return true;
+    }
+
     public synchronized void logMalformed(String sourceFile, String errorString) {
+        if (deferred(() -> logMalformed(sourceFile, errorString))) return;
         try {
             FileWriter fw = new FileWriter(directoryString + "/" + FilenameUtils.removeExtension(sourceFile) + "_malformed.log", true);
             fw.append(errorString.replace("null", ""));
@@ -59,6 +100,7 @@ public class FileLogger {
     }
 
     public synchronized void logInvalid(String sourceFile, String errorString) {
+        if (deferred(() -> logInvalid(sourceFile, errorString))) return;
         try {
             FileWriter fw = new FileWriter(directoryString + "/" + FilenameUtils.removeExtension(sourceFile) + "_invalid.log", true);
             fw.append(errorString.replace("null", ""));
@@ -71,6 +113,7 @@ public class FileLogger {
     }
 
     public synchronized void logUnavailable(String sourceFile, String errorString) {
+        if (deferred(() -> logUnavailable(sourceFile, errorString))) return;
         try {
             FileWriter fw = new FileWriter(directoryString + "/" + FilenameUtils.removeExtension(sourceFile) + "_unavailable.log", true);
             fw.append(errorString.replace("null", ""));
@@ -83,6 +126,7 @@ public class FileLogger {
     }
 
     public void logNoMatches(String sourceFile, String row) {
+        if (deferred(() -> logNoMatches(sourceFile, row))) return;
         try {
             FileWriter fw = new FileWriter(directoryString + "/" + FilenameUtils.removeExtension(sourceFile) + "_no_matches.log", true);
             fw.append(row.replace("null", ""));
@@ -95,6 +139,7 @@ public class FileLogger {
     }
 
     public void logTooManyMatches(String sourceFile, String row) {
+        if (deferred(() -> logTooManyMatches(sourceFile, row))) return;
         try {
             FileWriter fw = new FileWriter(directoryString + "/" + FilenameUtils.removeExtension(sourceFile) + "_too_many_matches.log", true);
             fw.append(row.replace("null", ""));
@@ -106,7 +151,20 @@ public class FileLogger {
         }
     }
 
+    public synchronized void logFailedCommit(String sourceFile, String row) {
+        try {
+            FileWriter fw = new FileWriter(directoryString + "/" + FilenameUtils.removeExtension(sourceFile) + "_failed_commit.log", true);
+            fw.append(row.replace("null", ""));
+            fw.append("\n");
+            fw.flush();
+            fw.close();
+        } catch (IOException ioException) {
+            ioException.printStackTrace();
+        }
+    }
+
     public synchronized void logColumnWarnings(String sourceFile, String errorString) {
+        if (deferred(() -> logColumnWarnings(sourceFile, errorString))) return;
         try {
             FileWriter fw = new FileWriter(directoryString + "/" + FilenameUtils.removeExtension(sourceFile) + "_column_type.log", true);
             fw.append(errorString.replace("null", ""));
@@ -20,6 +20,9 @@ import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.zip.GZIPInputStream;
 
 public class FileToInputStream {
@@ -38,4 +41,14 @@ public class FileToInputStream {
             return null;
         }
     }
+
+    public static InputStream getMappedInputStream(String filepath, long position) throws IOException {
+        return new MappedInputStream(FileChannel.open(Path.of(filepath), StandardOpenOption.READ), position);
+    }
+
+    public static InputStream getGzipInputStream(String filepath, long position) throws IOException {
+        FileInputStream in = new FileInputStream(filepath);
+        in.getChannel().position(position);
+        return new GZIPInputStream(in, 128_000);
+    }
 }
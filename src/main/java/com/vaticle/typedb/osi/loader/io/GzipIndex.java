@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.io;
+
+import com.vaticle.typedb.osi.loader.util.Util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Index of the members of a multi-member gzip file: the compressed offset at which each member starts and
+ * the offset of its first byte in the uncompressed data. Every member can be decompressed on its own, so
+ * regions made of whole members can be decompressed in parallel.
+ * <p>
+ * BGZF files (bgzip) are indexed by hopping from block header to block header without decompressing.
+ * Other files need one full decompression pass to find their member boundaries; the result is cached next
+ * to the file. A single-member gzip file cannot be split and yields no index.
+ */
+public class GzipIndex {
+
+    private static final String INDEX_SUFFIX = ".tdlidx";
+    private static final long INDEX_MAGIC = 0x54444c475a495831L;
+    private static final int BUFFER_SIZE = 128_000;
+
+    private final long[] compressedOffsets;
+    private final long[] uncompressedOffsets;
+    private final long uncompressedSize;
+
+    private GzipIndex(long[] compressedOffsets, long[] uncompressedOffsets, long uncompressedSize) {
+        this.compressedOffsets = compressedOffsets;
+        this.uncompressedOffsets = uncompressedOffsets;
+        this.uncompressedSize = uncompressedSize;
+    }
+
+    /**
+     * Loads the cached index of the given file, or builds and caches it. Returns null if the file has a single
+     * member, or if it is not BGZF and scanning members was not requested.
+     */
+    public static GzipIndex load(String filepath, boolean scanMembers) throws IOException {
+        File file = new File(filepath);
+        File indexFile = new File(filepath + INDEX_SUFFIX);
+        GzipIndex index = readCached(file, indexFile);
+        if (index != null) return index.members() > 1 ? index : null;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            index = indexBgzf(channel);
+            if (index == null && scanMembers) {
+                Util.info("gzip-index: scanning members of {}", filepath);
+                index = scanMembers(channel);
+            }
+        }
+        if (index == null) return null;
+        writeCached(file, indexFile, index);
+        return index.members() > 1 ? index : null;
+    }
+
+    public int members() {
+        return compressedOffsets.length;
+    }
+
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    /**
+     * Splits the file into at most the given number of regions of whole members with at least minRangeSize
+     * uncompressed bytes. Region i starts at compressed offset result[0][i] and spans the uncompressed range
+     * [result[1][i], result[1][i + 1]].
+     */
+    public long[][] split(int ranges, long minRangeSize) {
+        int n = (int) Math.max(1, Math.min(ranges, uncompressedSize / Math.max(1, minRangeSize)));
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        int member = 0;
+        for (int i = 1; i < n; i++) {
+            long target = uncompressedSize / n * i;
+            while (member < members() && uncompressedOffsets[member] < target) member++;
+            if (member >= members()) break;
+            if (member > starts.get(starts.size() - 1)) starts.add(member);
+        }
+        long[] compressed = new long[starts.size()];
+        long[] uncompressed = new long[starts.size() + 1];
+        for (int i = 0; i < starts.size(); i++) {
+            compressed[i] = compressedOffsets[starts.get(i)];
+            uncompressed[i] = uncompressedOffsets[starts.get(i)];
+        }
+        uncompressed[starts.size()] = uncompressedSize;
+        return new long[][]{compressed, uncompressed};
+    }
+
+    private static GzipIndex indexBgzf(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<long[]> blocks = new ArrayList<>();
+        long position = 0;
+        long uncompressed = 0;
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        while (position < size) {
+            header.clear();
+            if (readFully(channel, header, position) < 12) return null;
+            if ((header.get(0) & 0xFF) != 0x1f || (header.get(1) & 0xFF) != 0x8b || header.get(2) != 8) return null;
+            if ((header.get(3) & 0x04) == 0) return null;
+            int xlen = header.getShort(10) & 0xFFFF;
+            ByteBuffer extra = ByteBuffer.allocate(xlen).order(ByteOrder.LITTLE_ENDIAN);
+            if (readFully(channel, extra, position + 12) < xlen) return null;
+            int blockSize = -1;
+            int i = 0;
+            while (i + 4 <= xlen) {
+                int slen = extra.getShort(i + 2) & 0xFFFF;
+                if (extra.get(i) == 'B' && extra.get(i + 1) == 'C' && slen == 2 && i + 6 <= xlen) {
+                    blockSize = (extra.getShort(i + 4) & 0xFFFF) + 1;
+                }
+                i += 4 + slen;
+            }
+            if (blockSize < 0) return null;
+            trailer.clear();
+            if (readFully(channel, trailer, position + blockSize - 4) < 4) return null;
+            long isize = trailer.getInt(0) & 0xFFFFFFFFL;
+            if (isize > 0) blocks.add(new long[]{position, uncompressed});
+            uncompressed += isize;
+            position += blockSize;
+        }
+        return fromMembers(blocks, uncompressed);
+    }
+
+    private static GzipIndex scanMembers(FileChannel channel) throws IOException {
+        List<long[]> members = new ArrayList<>();
+        long size = channel.size();
+        long position = 0;
+        long uncompressed = 0;
+        byte[] input = new byte[BUFFER_SIZE];
+        byte[] output = new byte[BUFFER_SIZE];
+        Inflater inflater = new Inflater(true);
+        try {
+            while (position < size) {
+                long dataStart = skipHeader(channel, position);
+                if (dataStart < 0) break;
+                inflater.reset();
+                long inputPosition = dataStart;
+                int inputLength = 0;
+                while (!inflater.finished()) {
+                    if (inflater.needsInput()) {
+                        ByteBuffer buffer = ByteBuffer.wrap(input);
+                        inputLength = Math.max(0, channel.read(buffer, inputPosition));
+                        if (inputLength == 0) throw new EOFException("Unexpected end of gzip member at " + inputPosition);
+                        inflater.setInput(input, 0, inputLength);
+                        inputPosition += inputLength;
+                    }
+                    try {
+                        inflater.inflate(output);
+                    } catch (DataFormatException dataFormatException) {
+                        throw new IOException("Invalid gzip data in member at " + position, dataFormatException);
+                    }
+                }
+                long memberSize = inflater.getBytesWritten();
+                if (memberSize > 0) members.add(new long[]{position, uncompressed});
+                uncompressed += memberSize;
+                // the 8 byte trailer (CRC32, ISIZE) follows the deflate data
+                position = inputPosition - inflater.getRemaining() + 8;
+            }
+        } finally {
+            inflater.end();
+        }
+        return fromMembers(members, uncompressed);
+    }
+
+    private static long skipHeader(FileChannel channel, long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(10).order(ByteOrder.LITTLE_ENDIAN);
+        if (readFully(channel, header, position) < 10) return -1;
+        // trailing garbage or padding after the last member
+        if ((header.get(0) & 0xFF) != 0x1f || (header.get(1) & 0xFF) != 0x8b || header.get(2) != 8) return -1;
+        int flags = header.get(3) & 0xFF;
+        long offset = position + 10;
+        if ((flags & 0x04) != 0) {
+            ByteBuffer xlen = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, xlen, offset);
+            offset += 2 + (xlen.getShort(0) & 0xFFFF);
+        }
+        if ((flags & 0x08) != 0) offset = skipZeroTerminated(channel, offset);
+        if ((flags & 0x10) != 0) offset = skipZeroTerminated(channel, offset);
+        if ((flags & 0x02) != 0) offset += 2;
+        return offset;
+    }
+
+    private static long skipZeroTerminated(FileChannel channel, long position) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(1);
+        while (true) {
+            b.clear();
+            if (channel.read(b, position++) <= 0) throw new EOFException("Unexpected end of gzip header");
+            if (b.get(0) == 0) return position;
+        }
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + total);
+            if (n <= 0) break;
+            total += n;
+        }
+        return total;
+    }
+
+    private static GzipIndex fromMembers(List<long[]> members, long uncompressedSize) {
+        long[] compressedOffsets = new long[members.size()];
+        long[] uncompressedOffsets = new long[members.size()];
+        for (int i = 0; i < members.size(); i++) {
+            compressedOffsets[i] = members.get(i)[0];
+            uncompressedOffsets[i] = members.get(i)[1];
+        }
+        return new GzipIndex(compressedOffsets, uncompressedOffsets, uncompressedSize);
+    }
+
+    private static GzipIndex readCached(File file, File indexFile) {
+        if (!indexFile.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readLong() != INDEX_MAGIC) return null;
+            if (in.readLong() != file.length() || in.readLong() != file.lastModified()) {
+                Util.info("gzip-index: ignoring stale index {}", indexFile);
+                return null;
+            }
+            long uncompressedSize = in.readLong();
+            int members = in.readInt();
+            long[] compressedOffsets = new long[members];
+            long[] uncompressedOffsets = new long[members];
+            for (int i = 0; i < members; i++) {
+                compressedOffsets[i] = in.readLong();
+                uncompressedOffsets[i] = in.readLong();
+            }
+            return new GzipIndex(compressedOffsets, uncompressedOffsets, uncompressedSize);
+        } catch (IOException ioException) {
+            Util.warn("gzip-index: could not read index {}: {}", indexFile, ioException.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeCached(File file, File indexFile, GzipIndex index) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeLong(INDEX_MAGIC);
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeLong(index.uncompressedSize);
+            out.writeInt(index.members());
+            for (int i = 0; i < index.members(); i++) {
+                out.writeLong(index.compressedOffsets[i]);
+                out.writeLong(index.uncompressedOffsets[i]);
+            }
+        } catch (IOException ioException) {
+            Util.warn("gzip-index: could not cache index next to {}: {}", file, ioException.getMessage());
+        }
+    }
+}
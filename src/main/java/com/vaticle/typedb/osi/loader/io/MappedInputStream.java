@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file from a given position through memory-mapped windows of the underlying channel.
+ * Windows are mapped lazily one after the other, so a stream over a file larger than 2GB never
+ * holds more than one window.
+ */
+public class MappedInputStream extends InputStream {
+
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private long windowPosition;
+    private MappedByteBuffer window;
+
+    public MappedInputStream(FileChannel channel, long position) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.windowPosition = position;
+        this.window = null;
+    }
+
+    private boolean ensureWindow() throws IOException {
+        if (window != null && window.hasRemaining()) return true;
+        if (window != null) windowPosition += window.capacity();
+        if (windowPosition >= size) return false;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowPosition, Math.min(WINDOW_SIZE, size - windowPosition));
+        return window.hasRemaining();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureWindow()) return -1;
+        return window.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!ensureWindow()) return -1;
+        int n = Math.min(len, window.remaining());
+        window.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
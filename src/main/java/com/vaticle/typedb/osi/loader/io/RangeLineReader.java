@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Iterates the lines of one byte range [start, end] of a file. The stream must be positioned at start.
+ * <p>
+ * The first line of every range is skipped: for the first range this is the header, for all others it is
+ * either the tail of a line owned by the previous range or a line that starts exactly at the previous range's
+ * end. A range returns every line starting at or before its end, reading past the end to complete the last one.
+ * Together the ranges of a file therefore return each data line exactly once.
+ */
+public class RangeLineReader implements Iterator<String>, Closeable {
+
+    private static final int BUFFER_SIZE = 128_000;
+
+    private final InputStream in;
+    private final long end;
+    private final byte[] buffer;
+    private int bufferPosition;
+    private int bufferLimit;
+    private long position;
+    private byte[] line;
+    private String next;
+
+    public RangeLineReader(InputStream in, long start, long end) {
+        this.in = in;
+        this.end = end;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.bufferPosition = 0;
+        this.bufferLimit = 0;
+        this.position = start;
+        this.line = new byte[1024];
+        try {
+            readLine();
+            this.next = position <= end ? readLine() : null;
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+    }
+
+    /**
+     * Splits a file of the given size into at most the given number of ranges of at least minRangeSize bytes.
+     * Returns the range boundaries, such that range i is [boundaries[i], boundaries[i + 1]].
+     */
+    public static long[] split(long size, int ranges, long minRangeSize) {
+        int n = (int) Math.max(1, Math.min(ranges, size / Math.max(1, minRangeSize)));
+        long[] boundaries = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            boundaries[i] = size / n * i;
+        }
+        boundaries[n] = size;
+        return boundaries;
+    }
+
+    private String readLine() throws IOException {
+        int length = 0;
+        boolean eof = true;
+        while (true) {
+            if (bufferPosition == bufferLimit) {
+                bufferLimit = in.read(buffer, 0, buffer.length);
+                bufferPosition = 0;
+                if (bufferLimit <= 0) {
+                    bufferLimit = 0;
+                    break;
+                }
+            }
+            eof = false;
+            int newline = -1;
+            for (int i = bufferPosition; i < bufferLimit; i++) {
+                if (buffer[i] == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+            int copyEnd = newline == -1 ? bufferLimit : newline;
+            int copyLength = copyEnd - bufferPosition;
+            if (length + copyLength > line.length) {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, length + copyLength));
+            }
+            System.arraycopy(buffer, bufferPosition, line, length, copyLength);
+            length += copyLength;
+            position += copyLength;
+            bufferPosition = copyEnd;
+            if (newline != -1) {
+                bufferPosition++;
+                position++;
+                break;
+            }
+        }
+        if (eof && length == 0) return null;
+        if (length > 0 && line[length - 1] == '\r') length--;
+        return new String(line, 0, length, UTF_8);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public String next() {
+        if (next == null) throw new NoSuchElementException();
+        String current = next;
+        try {
+            // a line starting after the end of the range belongs to the next range
+            next = position <= end ? readLine() : null;
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+        return current;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
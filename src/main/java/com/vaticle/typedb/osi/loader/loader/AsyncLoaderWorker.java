@@ -18,9 +18,14 @@ package com.vaticle.typedb.osi.loader.loader;
 
 import com.vaticle.typedb.driver.api.TypeDBDriver;
 import com.vaticle.typedb.driver.api.TypeDBSession;
-import com.vaticle.typedb.driver.api.TypeDBTransaction;
 import com.vaticle.typedb.common.collection.Either;
 import com.vaticle.typedb.common.concurrent.NamedThreadFactory;
+import com.vaticle.typedb.osi.loader.cache.IIDCache;
+import com.vaticle.typedb.osi.loader.cache.IIDIndex;
+import com.vaticle.typedb.osi.loader.cache.KeyFilter;
+import com.vaticle.typedb.osi.loader.cache.PlayerKeyScan;
+import com.vaticle.typedb.osi.loader.cache.RecentKeys;
+import com.vaticle.typedb.osi.loader.cache.ValueSet;
 import com.vaticle.typedb.osi.loader.cli.LoadOptions;
 import com.vaticle.typedb.osi.loader.config.Configuration;
 import com.vaticle.typedb.osi.loader.generator.AppendAttributeGenerator;
@@ -29,38 +34,68 @@ import com.vaticle.typedb.osi.loader.generator.AttributeGenerator;
 import com.vaticle.typedb.osi.loader.generator.EntityGenerator;
 import com.vaticle.typedb.osi.loader.generator.Generator;
 import com.vaticle.typedb.osi.loader.generator.RelationGenerator;
+import com.vaticle.typedb.osi.loader.io.FileLogger;
+import com.vaticle.typedb.osi.loader.io.FileToInputStream;
+import com.vaticle.typedb.osi.loader.io.GzipIndex;
+import com.vaticle.typedb.osi.loader.io.RangeLineReader;
 import com.vaticle.typedb.osi.loader.util.TypeDBUtil;
 import com.vaticle.typedb.osi.loader.util.Util;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.StreamSupport;
 
 public class AsyncLoaderWorker {
 
     private static final DecimalFormat countFormat = new DecimalFormat("#,###");
     private static final DecimalFormat decimalFormat = new DecimalFormat("#,###.00");
+    private static final long MIN_READ_RANGE_SIZE = 16L * 1024 * 1024;
+    private static final int IID_INDEX_SAMPLES = 16;
     private final Configuration dc;
     private final LoadOptions loadOptions;
     private final ExecutorService executor;
+    private final ExecutorService parseExecutor;
+    private final ExecutorService readExecutor;
+    private final ExecutorService routeExecutor;
+    private final ExecutorService scheduleExecutor;
     private final int threads;
+    private final int parseThreads;
+    private final int readThreads;
     private final String databaseName;
     private final AtomicBoolean hasError;
     private final int batchGroup;
-    private Status status;
+    private IIDIndex iidIndex;
+    private IIDCache iidCache;
+    private final Set<String> prefetchedPlayerKeys;
+    private final Map<String, BatchSizeController> batchSizes;
+    private final WriterLimit writerLimit;
+    private final Semaphore writerThreads;
+    private final AtomicInteger runningGenerators;
+    private final ValueSet attributeValues;
+    private volatile Status status;
 
     private enum Status {OK, ERROR}
 
@@ -72,6 +107,26 @@ public class AsyncLoaderWorker {
         this.hasError = new AtomicBoolean(false);
         this.batchGroup = 1;
         this.executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory(this.databaseName));
+        this.parseThreads = dc.getGlobalConfig().getParseParallelisation();
+        this.parseExecutor = parseThreads > 0 ?
+                Executors.newFixedThreadPool(parseThreads, new NamedThreadFactory(this.databaseName + "-parse")) : null;
+        this.readThreads = dc.getGlobalConfig().getReadParallelisation();
+        this.readExecutor = readThreads > 1 ?
+                Executors.newFixedThreadPool(readThreads, new NamedThreadFactory(this.databaseName + "-read")) : null;
+        this.routeExecutor = Executors.newCachedThreadPool(new NamedThreadFactory(this.databaseName + "-route"));
+        this.scheduleExecutor = Executors.newCachedThreadPool(new NamedThreadFactory(this.databaseName + "-schedule"));
+        this.prefetchedPlayerKeys = ConcurrentHashMap.newKeySet();
+        this.batchSizes = new ConcurrentHashMap<>();
+        // writer threads are created up to parallelisation, the limit decides how many of them write at a time
+        this.writerLimit = dc.getGlobalConfig().getAdaptiveParallelisation() ?
+                WriterLimit.adaptive(dc.getGlobalConfig().getMinParallelisation(), threads) : WriterLimit.fixed(threads);
+        // scheduled generators run at the same time, and share the parallelisation writer threads
+        this.writerThreads = dc.getGlobalConfig().getScheduleGenerators() ? new Semaphore(threads) : null;
+        this.runningGenerators = new AtomicInteger();
+        int attributeDedupSize = dc.getGlobalConfig().getAttributeDedupSize();
+        String attributeDedupDirectory = dc.getGlobalConfig().getAttributeDedupDirectory();
+        this.attributeValues = attributeDedupSize > 0 ?
+                new ValueSet(attributeDedupSize, attributeDedupDirectory == null ? null : new File(attributeDedupDirectory)) : null;
         this.status = Status.OK;
     }
 
@@ -93,6 +148,12 @@ public class AsyncLoaderWorker {
 
         try (TypeDBSession session = TypeDBUtil.getDataSession(driver, databaseName)) {
 
+            int iidCacheSize = dc.getGlobalConfig().getIidCacheSize();
+            if (iidCacheSize > 0) {
+                iidIndex = openIIDIndex(driver, session);
+                iidCache = new IIDCache(iidCacheSize, iidIndex);
+            }
+
             //Load OrderBefore things...
             Util.info("loading ordered before things");
             for (String generatorKey : orderedBeforeGenerators) {
@@ -107,57 +168,64 @@ public class AsyncLoaderWorker {
                 }
             }
 
-            // Load attributes
-            Util.info("loading attributes");
-            if (dc.getAttributes() != null) {
-                for (Map.Entry<String, Configuration.Generator.Attribute> attribute : dc.getAttributes().entrySet()) {
-                    if (!separateGenerators.contains(attribute.getKey())) {
-                        loadAttribute(session, attribute.getKey(), attribute.getValue());
-                        if (status == Status.ERROR) return;
+            if (dc.getGlobalConfig().getScheduleGenerators()) {
+                Util.info("loading generators by dependency");
+                List<String> generatorKeys = unorderedGenerators(separateGenerators);
+                runScheduled(session, generatorKeys, GeneratorDependencies.supertypes(session, dc, generatorKeys));
+                if (status == Status.ERROR) return;
+            } else {
+                // Load attributes
+                Util.info("loading attributes");
+                if (dc.getAttributes() != null) {
+                    for (Map.Entry<String, Configuration.Generator.Attribute> attribute : dc.getAttributes().entrySet()) {
+                        if (!separateGenerators.contains(attribute.getKey())) {
+                            loadAttribute(session, attribute.getKey(), attribute.getValue());
+                            if (status == Status.ERROR) return;
+                        }
                     }
                 }
-            }
 
-            // Load entities
-            Util.info("loading entities");
-            if (dc.getEntities() != null) {
-                for (Map.Entry<String, Configuration.Generator.Entity> entity : dc.getEntities().entrySet()) {
-                    if (!separateGenerators.contains(entity.getKey())) {
-                        loadEntity(session, entity.getKey(), entity.getValue());
-                        if (status == Status.ERROR) return;
+                // Load entities
+                Util.info("loading entities");
+                if (dc.getEntities() != null) {
+                    for (Map.Entry<String, Configuration.Generator.Entity> entity : dc.getEntities().entrySet()) {
+                        if (!separateGenerators.contains(entity.getKey())) {
+                            loadEntity(session, entity.getKey(), entity.getValue());
+                            if (status == Status.ERROR) return;
+                        }
                     }
                 }
-            }
 
-            //Load relations
-            Util.info("loading relations");
-            if (dc.getRelations() != null) {
-                for (Map.Entry<String, Configuration.Generator.Relation> relation : dc.getRelations().entrySet()) {
-                    if (!separateGenerators.contains(relation.getKey())) {
-                        loadRelation(session, relation.getKey(), relation.getValue());
-                        if (status == Status.ERROR) return;
+                //Load relations
+                Util.info("loading relations");
+                if (dc.getRelations() != null) {
+                    for (Map.Entry<String, Configuration.Generator.Relation> relation : dc.getRelations().entrySet()) {
+                        if (!separateGenerators.contains(relation.getKey())) {
+                            loadRelation(session, relation.getKey(), relation.getValue());
+                            if (status == Status.ERROR) return;
+                        }
                     }
                 }
-            }
 
-            //Load appendAttributes
-            Util.info("loading appendAttributes");
-            if (dc.getAppendAttribute() != null) {
-                for (Map.Entry<String, Configuration.Generator.AppendAttribute> appendAttribute : dc.getAppendAttribute().entrySet()) {
-                    if (!separateGenerators.contains(appendAttribute.getKey())) {
-                        loadAppendAttribute(session, appendAttribute.getKey(), appendAttribute.getValue());
-                        if (status == Status.ERROR) return;
+                //Load appendAttributes
+                Util.info("loading appendAttributes");
+                if (dc.getAppendAttribute() != null) {
+                    for (Map.Entry<String, Configuration.Generator.AppendAttribute> appendAttribute : dc.getAppendAttribute().entrySet()) {
+                        if (!separateGenerators.contains(appendAttribute.getKey())) {
+                            loadAppendAttribute(session, appendAttribute.getKey(), appendAttribute.getValue());
+                            if (status == Status.ERROR) return;
+                        }
                     }
                 }
-            }
 
-            //Load appendAttributesOrInsertThing
-            Util.info("loading appendAttributesOrInsertThing");
-            if (dc.getAppendAttributeOrInsertThing() != null) {
-                for (Map.Entry<String, Configuration.Generator.AppendAttributeOrInsertThing> appendAttributeOrInsertThing : dc.getAppendAttributeOrInsertThing().entrySet()) {
-                    if (!separateGenerators.contains(appendAttributeOrInsertThing.getKey())) {
-                        loadAppendOrInsert(session, appendAttributeOrInsertThing.getKey(), appendAttributeOrInsertThing.getValue());
-                        if (status == Status.ERROR) return;
+                //Load appendAttributesOrInsertThing
+                Util.info("loading appendAttributesOrInsertThing");
+                if (dc.getAppendAttributeOrInsertThing() != null) {
+                    for (Map.Entry<String, Configuration.Generator.AppendAttributeOrInsertThing> appendAttributeOrInsertThing : dc.getAppendAttributeOrInsertThing().entrySet()) {
+                        if (!separateGenerators.contains(appendAttributeOrInsertThing.getKey())) {
+                            loadAppendOrInsert(session, appendAttributeOrInsertThing.getKey(), appendAttributeOrInsertThing.getValue());
+                            if (status == Status.ERROR) return;
+                        }
                     }
                 }
             }
@@ -183,16 +251,110 @@ public class AsyncLoaderWorker {
         }
     }
 
+    /**
+     * Returns the keys of the generators that are not ordered before or after the rest, or ignored, in the order
+     * the phases of an unscheduled run would load them.
+     */
+    private List<String> unorderedGenerators(Set<String> separateGenerators) {
+        List<String> generatorKeys = new ArrayList<>();
+        for (Map<String, ? extends Configuration.Generator> generators : Arrays.asList(dc.getAttributes(), dc.getEntities(),
+                dc.getRelations(), dc.getAppendAttribute(), dc.getAppendAttributeOrInsertThing())) {
+            if (generators == null) continue;
+            for (String generatorKey : generators.keySet()) {
+                if (!separateGenerators.contains(generatorKey)) generatorKeys.add(generatorKey);
+            }
+        }
+        return generatorKeys;
+    }
+
+    /**
+     * Runs every generator once the generators it depends on are done, concurrently with the other generators
+     * that are ready. See GeneratorDependencies for what a generator depends on.
+     */
+    private void runScheduled(TypeDBSession session, List<String> generatorKeys, Map<String, Set<String>> supertypes) {
+        // generators are counted as running once they are ready, before they take their share of the writers
+        CompletableFuture<Void> start = new CompletableFuture<>();
+        Map<String, CompletableFuture<Void>> runs = new LinkedHashMap<>();
+        for (int i = 0; i < generatorKeys.size(); i++) {
+            String generatorKey = generatorKeys.get(i);
+            List<String> dependencies = GeneratorDependencies.dependencies(dc, generatorKeys, i, supertypes);
+            Util.info("scheduler: {} runs after [{}]", generatorKey, String.join(", ", dependencies));
+            List<CompletableFuture<Void>> upstream = new ArrayList<>();
+            upstream.add(start);
+            dependencies.forEach(dependency -> upstream.add(runs.get(dependency)));
+            runs.put(generatorKey, CompletableFuture.allOf(upstream.toArray(new CompletableFuture[0]))
+                    .thenRun(runningGenerators::incrementAndGet)
+                    .thenRunAsync(() -> {
+                        try {
+                            if (hasError.get() || status == Status.ERROR) return;
+                            executeGenerator(session, generatorKey, dc.getGeneratorTypeByKey(generatorKey), dc.getGeneratorByKey(generatorKey));
+                        } catch (IOException | InterruptedException e) {
+                            hasError.set(true);
+                            Util.error("scheduler: " + generatorKey + ": " + e.getMessage());
+                            throw new RuntimeException(e);
+                        } finally {
+                            runningGenerators.decrementAndGet();
+                        }
+                    }, scheduleExecutor));
+        }
+        start.complete(null);
+        try {
+            CompletableFuture.allOf(runs.values().toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException completionException) {
+            hasError.set(true);
+        }
+        if (hasError.get()) status = Status.ERROR;
+    }
+
     public void close() {
         executor.shutdown();
+        if (parseExecutor != null) parseExecutor.shutdown();
+        if (readExecutor != null) readExecutor.shutdown();
+        routeExecutor.shutdown();
+        scheduleExecutor.shutdown();
+        if (iidIndex != null) {
+            try {
+                // a failed run may leave IIDs of uncommitted things in the index
+                iidIndex.close(!hasError.get());
+            } catch (IOException e) {
+                Util.error("iid-index: " + e.getMessage());
+            }
+        }
+        if (attributeValues != null) {
+            try {
+                attributeValues.close();
+            } catch (IOException e) {
+                Util.error("attribute-dedup: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Opens the IID index of the previous runs, if one is configured. The index is rebuilt on a clean migration
+     * and when it belongs to another database or schema, or when IIDs sampled from it no longer exist.
+     */
+    private IIDIndex openIIDIndex(TypeDBDriver driver, TypeDBSession session) throws IOException {
+        String path = dc.getGlobalConfig().getIidIndex();
+        if (path == null) return null;
+        byte[] fingerprint = IIDIndex.fingerprint(databaseName, driver.databases().get(databaseName).schema());
+        IIDIndex index = IIDIndex.open(path, fingerprint, loadOptions.cleanMigration);
+        if (!TypeDBUtil.thingsExist(session, index.sample(IID_INDEX_SAMPLES))) {
+            Util.warn("iid-index: sampled IIDs do not exist in database <{}> - rebuilding {}", databaseName, path);
+            index.close();
+            index = IIDIndex.open(path, fingerprint, true);
+        }
+        Util.info("iid-index: {}", index);
+        return index;
     }
 
     private void loadAttribute(TypeDBSession session, String generatorKey, Configuration.Generator.Attribute attributeGenerator)
             throws IOException, InterruptedException {
         initializeAttributeConceptValueType(session, attributeGenerator.getInsert());
         for (String filePath : attributeGenerator.getData()) {
-            Generator gen = new AttributeGenerator(filePath, attributeGenerator, Util.getSeparator(dc, attributeGenerator.getConfig()));
-            asyncLoad(session, generatorKey, filePath, gen, Util.getRowsPerCommit(dc, attributeGenerator.getConfig()));
+            Generator gen = new AttributeGenerator(filePath, attributeGenerator, Util.getSeparator(dc, attributeGenerator.getConfig()),
+                    Util.getQueryTemplates(dc, attributeGenerator.getConfig()), Util.getRowsPerQuery(dc, attributeGenerator.getConfig()), attributeValues);
+            asyncLoad(session, generatorKey, filePath, gen, attributeGenerator.getConfig());
+            if (attributeValues != null) Util.info("attribute-dedup: {}", attributeValues);
             if (status == Status.ERROR) return;
         }
     }
@@ -200,29 +362,101 @@ public class AsyncLoaderWorker {
     private void loadEntity(TypeDBSession session, String generatorKey, Configuration.Generator.Entity entityGenerator)
             throws IOException, InterruptedException {
         Util.setConstrainingAttributeConceptType(entityGenerator.getInsert().getOwnerships(), session);
+        // keys inserted by earlier transactions, shared by all files of the generator
+        int mergeWindow = Util.getMergeWindow(dc, entityGenerator.getConfig());
+        RecentKeys recentKeys = entityGenerator.getInsert().getKey() != null && mergeWindow > 0 ? new RecentKeys(mergeWindow) : null;
         for (String filePath : entityGenerator.getData()) {
-            Generator gen = new EntityGenerator(filePath, entityGenerator, Util.getSeparator(dc, entityGenerator.getConfig()));
-            asyncLoad(session, generatorKey, filePath, gen, Util.getRowsPerCommit(dc, entityGenerator.getConfig()));
+            Generator gen = new EntityGenerator(filePath, entityGenerator, Util.getSeparator(dc, entityGenerator.getConfig()),
+                    Util.getQueryTemplates(dc, entityGenerator.getConfig()), Util.getRowsPerQuery(dc, entityGenerator.getConfig()),
+                    Util.getCaptureIIDs(dc, entityGenerator.getConfig()) ? iidCache : null, playerKeyAttributes(entityGenerator.getInsert().getEntity()),
+                    recentKeys);
+            asyncLoad(session, generatorKey, filePath, gen, entityGenerator.getConfig());
+            if (recentKeys != null) Util.info("merge-window: {}", recentKeys);
             if (status == Status.ERROR) return;
         }
     }
 
+    /**
+     * Returns the sets of attributes by which relation generators identify players of the given type.
+     */
+    private List<String[]> playerKeyAttributes(String type) {
+        List<String[]> keyAttributes = new ArrayList<>();
+        if (dc.getRelations() == null) return keyAttributes;
+        for (Configuration.Generator.Relation relation : dc.getRelations().values()) {
+            for (Configuration.Definition.Player player : relation.getInsert().getPlayers()) {
+                if (Util.playerType(player).equals("byAttribute") && type.equals(player.getMatch().getType())) {
+                    String[] attributes = Arrays.stream(player.getMatch().getOwnerships())
+                            .map(Configuration.Definition.Attribute::getAttribute).toArray(String[]::new);
+                    if (keyAttributes.stream().noneMatch(key -> Arrays.equals(key, attributes))) keyAttributes.add(attributes);
+                }
+            }
+        }
+        return keyAttributes;
+    }
+
     private void loadRelation(TypeDBSession session, String generatorKey, Configuration.Generator.Relation relation)
             throws IOException, InterruptedException {
         initializeRelationAttributeConceptValueTypes(session, relation);
+        if (iidCache != null && Util.getPrefetchPlayers(dc, relation.getConfig())) {
+            prefetchPlayers(session, relation);
+        }
         for (String filePath : relation.getData()) {
-            Generator gen = new RelationGenerator(filePath, relation, Util.getSeparator(dc, relation.getConfig()));
-            asyncLoad(session, generatorKey, filePath, gen, Util.getRowsPerCommit(dc, relation.getConfig()));
+            Generator gen = new RelationGenerator(filePath, relation, Util.getSeparator(dc, relation.getConfig()),
+                    Util.getMatchPipelineDepth(dc, relation.getConfig()), iidCache, Util.getPlayerLookupGroupSize(dc, relation.getConfig()));
+            asyncLoad(session, generatorKey, filePath, gen, relation.getConfig());
+            if (iidCache != null) Util.info("iid-cache: {}", iidCache);
             if (status == Status.ERROR) return;
         }
     }
 
+    /**
+     * Scans the keys of the player types the relation identifies by attributes into the IID cache, in parallel
+     * read transactions over ranges of the first key attribute of each player type. Each player type and key is
+     * scanned once per load. Without an IID index, the scans stop once they have filled the free capacity of the
+     * cache, as further keys would only evict the ones read before.
+     */
+    private void prefetchPlayers(TypeDBSession session, Configuration.Generator.Relation relation) {
+        AtomicLong budget = new AtomicLong(iidCache.hasIndex() ? Long.MAX_VALUE : Math.max(0, iidCache.getCapacity() - iidCache.size()));
+        if (budget.get() == 0) {
+            Util.warn("prefetch-players: skipped - the IID cache is full, increase iidCacheSize or set an iidIndex");
+            return;
+        }
+        List<CompletableFuture<Void>> scans = new ArrayList<>();
+        for (Configuration.Definition.Player player : relation.getInsert().getPlayers()) {
+            if (!Util.playerType(player).equals("byAttribute")) continue;
+            PlayerKeyScan playerScan = new PlayerKeyScan(player.getMatch().getType(), player.getMatch().getOwnerships());
+            if (!prefetchedPlayerKeys.add(playerScan.id())) continue;
+            for (PlayerKeyScan scan : playerScan.partition(session, threads)) {
+                scans.add(CompletableFuture.runAsync(() -> {
+                    Util.debug("prefetch-players (start): {}", scan.query());
+                    Instant start = Instant.now();
+                    try {
+                        long answers = scan.scan(session, iidCache, budget);
+                        Util.info("prefetch-players: {} - {} answers in {}", scan.query(), countFormat.format(answers), Util.printDuration(start, Instant.now()));
+                    } catch (Throwable e) {
+                        hasError.set(true);
+                        Util.error("prefetch-players: " + scan.id() + ": " + e.getMessage());
+                        throw new RuntimeException(e);
+                    }
+                }, executor));
+            }
+        }
+        if (scans.isEmpty()) return;
+        CompletableFuture.allOf(scans.toArray(new CompletableFuture[0])).join();
+        if (budget.get() < 0) {
+            Util.warn("prefetch-players: stopped once the IID cache was full - the remaining players are matched by attributes, " +
+                    "increase iidCacheSize or set an iidIndex to prefetch them all");
+        }
+        Util.info("iid-cache: {}", iidCache);
+    }
+
     private void loadAppendAttribute(TypeDBSession session, String generatorKey, Configuration.Generator.AppendAttribute appendAttribute)
             throws IOException, InterruptedException {
         initializeAppendAttributeConceptValueTypes(session, appendAttribute);
         for (String filePath : appendAttribute.getData()) {
-            Generator gen = new AppendAttributeGenerator(filePath, appendAttribute, Util.getSeparator(dc, appendAttribute.getConfig()));
-            asyncLoad(session, generatorKey, filePath, gen, Util.getRowsPerCommit(dc, appendAttribute.getConfig()));
+            Generator gen = new AppendAttributeGenerator(filePath, appendAttribute, Util.getSeparator(dc, appendAttribute.getConfig()),
+                    Util.getCoalesceAppends(dc, appendAttribute.getConfig()));
+            asyncLoad(session, generatorKey, filePath, gen, appendAttribute.getConfig());
             if (status == Status.ERROR) return;
         }
     }
@@ -231,13 +465,43 @@ public class AsyncLoaderWorker {
                                       Configuration.Generator.AppendAttributeOrInsertThing appendAttributeOrInsertThing)
             throws IOException, InterruptedException {
         initializeAppendAttributeConceptValueTypes(session, appendAttributeOrInsertThing);
+        KeyFilter keyFilter = keyFilter(session, generatorKey, appendAttributeOrInsertThing);
         for (String filePath : appendAttributeOrInsertThing.getData()) {
-            Generator gen = new AppendAttributeOrInsertThingGenerator(filePath, appendAttributeOrInsertThing, Util.getSeparator(dc, appendAttributeOrInsertThing.getConfig()));
-            asyncLoad(session, generatorKey, filePath, gen, Util.getRowsPerCommit(dc, appendAttributeOrInsertThing.getConfig()));
+            Generator gen = new AppendAttributeOrInsertThingGenerator(filePath, appendAttributeOrInsertThing, Util.getSeparator(dc, appendAttributeOrInsertThing.getConfig()), keyFilter);
+            asyncLoad(session, generatorKey, filePath, gen, appendAttributeOrInsertThing.getConfig());
+            if (keyFilter != null) Util.info("key-filter: {}", keyFilter);
             if (status == Status.ERROR) return;
         }
     }
 
+    private KeyFilter keyFilter(TypeDBSession session, String generatorKey,
+                                Configuration.Generator.AppendAttributeOrInsertThing appendAttributeOrInsertThing) {
+        Configuration.Generator.GeneratorConfig config = appendAttributeOrInsertThing.getConfig();
+        int size = Util.getKeyFilterSize(dc, config);
+        if (size <= 0) return null;
+        Configuration.Generator.AppendAttribute.Match match = appendAttributeOrInsertThing.getMatch();
+        Set<String> matchAttributes = new HashSet<>();
+        for (Configuration.Definition.Attribute ownership : match.getOwnerships()) {
+            matchAttributes.add(ownership.getAttribute());
+        }
+        for (Configuration.Definition.Attribute ownership : appendAttributeOrInsertThing.getInsert().getOwnerships()) {
+            if (matchAttributes.contains(ownership.getAttribute())) {
+                // appending a match attribute gives the thing keys the filter does not know
+                Util.warn("key-filter: not used by {} - it appends match attribute {}", generatorKey, ownership.getAttribute());
+                return null;
+            }
+        }
+        KeyFilter keyFilter = new KeyFilter(size * 1024L * 1024L, Util.getKeyFilterFalsePositiveRate(dc, config));
+        if (Util.getKeyFilterScan(dc, config)) {
+            long keys = new PlayerKeyScan(match.getType(), match.getOwnerships()).scan(session, keyFilter);
+            if (keys > keyFilter.getCapacity()) {
+                Util.warn("key-filter: {} holds {} keys of {} but has a capacity of {} - increase keyFilterSize to keep its false positive rate",
+                        generatorKey, keys, match.getType(), keyFilter.getCapacity());
+            }
+        }
+        return keyFilter;
+    }
+
     private void executeGenerator(TypeDBSession session, String generatorKey, String generatorType,
                                     Configuration.Generator generatorConfig) throws IOException, InterruptedException {
         switch (generatorType) {
@@ -305,50 +569,316 @@ public class AsyncLoaderWorker {
         }
     }
 
-    private void asyncLoad(TypeDBSession session, String generatorKey, String filename, Generator gen, int batch)
+    private void asyncLoad(TypeDBSession session, String generatorKey, String filename, Generator gen,
+                           Configuration.Generator.GeneratorConfig generatorConfig)
             throws IOException, InterruptedException {
-        Util.info("async-load (start): {} reading from {}", generatorKey, filename);
-        LinkedBlockingQueue<Either<List<List<String[]>>, Done>> queue = new LinkedBlockingQueue<>(threads * 4);
-        List<CompletableFuture<Void>> asyncWrites = new ArrayList<>(threads);
-        for (int i = 0; i < threads; i++) {
-            asyncWrites.add(asyncWrite(i + 1, filename, gen, session, queue));
+        int writers = acquireWriters();
+        try {
+            asyncLoad(session, generatorKey, filename, gen, generatorConfig, writers);
+        } finally {
+            releaseWriters(writers);
         }
-        bufferedRead(filename, gen, batch, queue);
+    }
+
+    private void asyncLoad(TypeDBSession session, String generatorKey, String filename, Generator gen,
+                           Configuration.Generator.GeneratorConfig generatorConfig, int writers)
+            throws IOException, InterruptedException {
+        Util.info("async-load (start): {} reading from {} with {} writers", generatorKey, filename, writers);
+        BatchSizeController batch = batchSize(generatorKey, generatorConfig);
+        boolean streamingRead = Util.getStreamingRead(dc, generatorConfig);
+        // cells of columns not referenced by the generator are not decoded and stay null
+        boolean[] columns = Util.getProjectColumns(dc, generatorConfig) ? gen.getReferencedColumns() : null;
+        int[] conflictColumns = conflictColumns(filename, gen, generatorConfig, writers);
+        if (columns != null && conflictColumns != null) {
+            for (int column : conflictColumns) {
+                if (column < columns.length) columns[column] = true;
+            }
+        }
+        int commitRetries = Util.getCommitRetries(dc, generatorConfig);
+        LinkedBlockingQueue<Either<List<List<String[]>>, Done>> queue = new LinkedBlockingQueue<>(writers * 4);
+        List<CompletableFuture<Void>> asyncWrites = new ArrayList<>(writers);
+        CompletableFuture<Void> asyncRoute = null;
+        if (conflictColumns == null) {
+            for (int i = 0; i < writers; i++) {
+                asyncWrites.add(asyncWrite(i + 1, filename, gen, session, queue, commitRetries, batch));
+            }
+        } else {
+            // rows with the same values in the conflict columns are always written by the same writer
+            List<LinkedBlockingQueue<Either<List<List<String[]>>, Done>>> writeQueues = new ArrayList<>(writers);
+            for (int i = 0; i < writers; i++) {
+                writeQueues.add(new LinkedBlockingQueue<>(4));
+                asyncWrites.add(asyncWrite(i + 1, filename, gen, session, writeQueues.get(i), commitRetries, batch));
+            }
+            asyncRoute = asyncRoute(filename, conflictColumns, batch, queue, writeQueues);
+        }
+        try {
+            if (streamingRead) {
+                // one parser per file - records may span several lines (quoted cells containing newlines)
+                bufferedRead(filename, Util.parseRecordsBySeparator(Util.newBufferedReader(filename), gen.getFileSeparator(), columns), batch, queue);
+            } else if (parseThreads == 0 || conflictColumns != null) {
+                // routed rows only keep their order within a writer if one thread reads and parses the file
+                read(filename, conflictColumns == null, (source, lines) -> bufferedRead(source, parseLines(lines, gen, columns), batch, queue));
+            } else {
+                asyncParse(filename, gen, columns, batch, queue);
+            }
+        } finally {
+            queue.put(Either.second(AsyncLoaderWorker.Done.INSTANCE));
+        }
+        if (asyncRoute != null) asyncRoute.join();
         CompletableFuture.allOf(asyncWrites.toArray(new CompletableFuture[0])).join();
         Util.info("async-load (end): {}", filename);
         if (hasError.get()) status = Status.ERROR;
     }
 
-    private void bufferedRead(String filename,
-                              Generator gen,
-                              int batch,
-                              LinkedBlockingQueue<Either<List<List<String[]>>, AsyncLoaderWorker.Done>> queue) throws InterruptedException, IOException {
+    /**
+     * Returns the number of writer threads for a file. Scheduled generators take an even share of parallelisation
+     * among the generators running at the same time, and at least one - waiting for it while the others hold them
+     * all - so that their writers and queued batches stay within the bounds of a single generator.
+     */
+    private int acquireWriters() throws InterruptedException {
+        if (writerThreads == null) return threads;
+        int share = Math.max(1, threads / Math.max(1, runningGenerators.get()));
+        writerThreads.acquire();
+        int writers = 1;
+        while (writers < share && writerThreads.tryAcquire()) writers++;
+        return writers;
+    }
 
-        BufferedReader br = Util.newBufferedReader(filename);
+    private void releaseWriters(int writers) {
+        if (writerThreads == null) return;
+        writerThreads.release(writers);
+    }
+
+    /**
+     * Returns the batch size controller of the generator, which carries its adapted size over to the next file.
+     */
+    private BatchSizeController batchSize(String generatorKey, Configuration.Generator.GeneratorConfig generatorConfig) {
+        return batchSizes.computeIfAbsent(generatorKey, key -> {
+            int rowsPerCommit = Util.getRowsPerCommit(dc, generatorConfig);
+            if (!Util.getAdaptiveRowsPerCommit(dc, generatorConfig)) return BatchSizeController.fixed(rowsPerCommit);
+            Integer min = Util.getMinRowsPerCommit(dc, generatorConfig);
+            Integer max = Util.getMaxRowsPerCommit(dc, generatorConfig);
+            return BatchSizeController.adaptive(generatorKey, rowsPerCommit,
+                    min != null ? min : rowsPerCommit / 16, max != null ? max : rowsPerCommit * 16);
+        });
+    }
+
+    /**
+     * Returns the indices of the conflict columns of the generator in the header of the file - the configured
+     * ones, or else the ones the generator requires - or null if rows are not routed by conflict columns.
+     */
+    private int[] conflictColumns(String filename, Generator gen, Configuration.Generator.GeneratorConfig generatorConfig, int writers) throws IOException {
+        String[] conflictColumnNames = generatorConfig != null && generatorConfig.getConflictColumns() != null ?
+                generatorConfig.getConflictColumns() : gen.getConflictColumns();
+        if (conflictColumnNames == null || writers <= 1) return null;
+        List<String> header = Arrays.asList(Util.getFileHeader(filename, gen.getFileSeparator()));
+        int[] conflictColumns = new int[conflictColumnNames.length];
+        for (int i = 0; i < conflictColumnNames.length; i++) {
+            conflictColumns[i] = header.indexOf(conflictColumnNames[i]);
+            if (conflictColumns[i] < 0) {
+                Util.warn("async-router: column <{}> not found in {} - rows are not routed by conflict columns", conflictColumnNames[i], filename);
+                return null;
+            }
+        }
+        return conflictColumns;
+    }
+
+    /**
+     * Regroups the rows read from the queue into batches per writer, by the hash of the values of their
+     * conflict columns. Rows keep their order within a writer, as the file is then read and parsed by a single
+     * thread (see asyncLoad). See RowRouter for the cost of a hot key.
+     */
+    private CompletableFuture<Void> asyncRoute(String filename,
+                                               int[] conflictColumns,
+                                               BatchSizeController batch,
+                                               LinkedBlockingQueue<Either<List<List<String[]>>, AsyncLoaderWorker.Done>> queue,
+                                               List<LinkedBlockingQueue<Either<List<List<String[]>>, AsyncLoaderWorker.Done>>> writeQueues) {
+        return CompletableFuture.runAsync(() -> {
+            Util.debug("async-router (start): {}", filename);
+            RowRouter router = new RowRouter(conflictColumns, writeQueues.size());
+            Either<List<List<String[]>>, Done> queueItem;
+            try {
+                while ((queueItem = queue.take()).isFirst() && !hasError.get()) {
+                    for (List<String[]> rows : queueItem.first()) {
+                        for (String[] row : rows) {
+                            int shard = router.add(row, batch.get());
+                            if (shard >= 0) route(writeQueues.get(shard), router.take(shard));
+                        }
+                    }
+                }
+                for (int i = 0; i < router.shards(); i++) {
+                    List<String[]> rows = router.take(i);
+                    if (!rows.isEmpty()) route(writeQueues.get(i), rows);
+                }
+            } catch (Throwable e) {
+                hasError.set(true);
+                Util.error("async-router: " + e.getMessage());
+                throw new RuntimeException(e);
+            } finally {
+                try {
+                    for (LinkedBlockingQueue<Either<List<List<String[]>>, Done>> writeQueue : writeQueues) {
+                        while (!writeQueue.offer(Either.second(AsyncLoaderWorker.Done.INSTANCE), 100, TimeUnit.MILLISECONDS)) {
+                            // writers stop taking rows on error, so make room for the end marker
+                            if (hasError.get()) writeQueue.clear();
+                        }
+                    }
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                Util.debug("async-router (end): {}", filename);
+            }
+        }, routeExecutor);
+    }
+
+    private void route(LinkedBlockingQueue<Either<List<List<String[]>>, AsyncLoaderWorker.Done>> writeQueue,
+                       List<String[]> rows) throws InterruptedException {
+        List<List<String[]>> rowGroups = new ArrayList<>(1);
+        rowGroups.add(rows);
+        while (!writeQueue.offer(Either.first(rowGroups), 100, TimeUnit.MILLISECONDS)) {
+            if (hasError.get()) return;
+        }
+    }
+
+    private void read(String filename, boolean ranged, LineConsumer consumer) throws IOException, InterruptedException {
+        // ranges are [ranges[i], ranges[i + 1]] of the uncompressed file, each read from offsets[i] of the file on disk
+        long[] offsets = null;
+        long[] ranges = null;
+        if (ranged && readThreads > 1 && filename.endsWith(".gz")) {
+            GzipIndex index = GzipIndex.load(filename, dc.getGlobalConfig().getIndexGzip());
+            if (index != null) {
+                long[][] split = index.split(readThreads, MIN_READ_RANGE_SIZE);
+                offsets = split[0];
+                ranges = split[1];
+            }
+        } else if (ranged && readThreads > 1) {
+            ranges = RangeLineReader.split(new File(filename).length(), readThreads, MIN_READ_RANGE_SIZE);
+            offsets = ranges;
+        }
+        if (ranges == null || ranges.length <= 2) {
+            consumer.accept(filename, Util.newBufferedReader(filename).lines().skip(1).iterator());
+        } else {
+            boolean gzip = filename.endsWith(".gz");
+            List<CompletableFuture<Void>> asyncReads = new ArrayList<>(ranges.length - 1);
+            for (int i = 0; i < ranges.length - 1; i++) {
+                asyncReads.add(asyncReadRange(filename + " [" + (i + 1) + "/" + (ranges.length - 1) + "]",
+                        filename, gzip, offsets[i], ranges[i], ranges[i + 1], consumer));
+            }
+            CompletableFuture.allOf(asyncReads.toArray(new CompletableFuture[0])).join();
+        }
+    }
+
+    private CompletableFuture<Void> asyncReadRange(String source, String filename, boolean gzip, long offset,
+                                                   long start, long end, LineConsumer consumer) {
+        return CompletableFuture.runAsync(() -> {
+            Util.debug("async-reader (start): {} bytes {} - {}", source, start, end);
+            try (RangeLineReader lines = new RangeLineReader(gzip ?
+                    FileToInputStream.getGzipInputStream(filename, offset) :
+                    FileToInputStream.getMappedInputStream(filename, offset), start, end)) {
+                consumer.accept(source, lines);
+            } catch (Throwable e) {
+                hasError.set(true);
+                Util.error("async-reader: " + source + ": " + e.getMessage());
+                throw new RuntimeException(e);
+            } finally {
+                Util.debug("async-reader (end): {}", source);
+            }
+        }, readExecutor);
+    }
+
+    private Iterator<String[]> parseLines(Iterator<String> lines, Generator gen, boolean[] columns) {
+        Iterable<String> iterable = () -> lines;
+        return StreamSupport.stream(iterable.spliterator(), false).map(line -> {
+            try {
+                return Util.parseBySeparator(line, gen.getFileSeparator(), columns);
+            } catch (IndexOutOfBoundsException indexOutOfBoundsException) {
+                return null;
+            }
+        }).filter(Objects::nonNull).iterator();
+    }
+
+    private void bufferedRead(String source,
+                              Iterator<String[]> iterator,
+                              BatchSizeController batch,
+                              LinkedBlockingQueue<Either<List<List<String[]>>, AsyncLoaderWorker.Done>> queue) throws InterruptedException {
 
-        Iterator<String> iterator = br.lines().skip(1).iterator();
         List<List<String[]>> rowGroups = new ArrayList<>(batchGroup);
-        List<String[]> rows = new ArrayList<>(batch);
+        List<String[]> rows = new ArrayList<>(batch.get());
+
+        int count = 0;
+        Instant startRead = Instant.now();
+        Instant startBatch = Instant.now();
+        try {
+            while (iterator.hasNext() && !hasError.get()) {
+                count++;
+                String[] rowTokens = iterator.next();
+                Util.debug("buffered-read: (line {}): {}", count, Arrays.toString(rowTokens));
+                rows.add(rowTokens);
+                if (rows.size() >= batch.get() || !iterator.hasNext()) {
+                    rowGroups.add(rows);
+                    rows = new ArrayList<>(batch.get());
+                    if (rowGroups.size() == batchGroup || !iterator.hasNext()) {
+                        queue.put(Either.first(rowGroups));
+                        rowGroups = new ArrayList<>(batchGroup);
+                    }
+                }
+
+                if (count % 50_000 == 0) {
+                    Instant endBatch = Instant.now();
+                    double rate = Util.calculateRate(50_000, startBatch, endBatch);
+                    double average = Util.calculateRate(count, startRead, endBatch);
+                    Util.info("buffered-read: source: {}, progress: {}, rate: {}/s, average: {}/s",
+                            source, countFormat.format(count), decimalFormat.format(rate), decimalFormat.format(average));
+                    startBatch = Instant.now();
+                }
+            }
+        } catch (IllegalStateException parseException) {
+            // the streaming parser cannot resynchronise after a malformed record
+            hasError.set(true);
+            Util.error("buffered-read: source: {}, malformed record after row {}: {}", source, count, parseException.getMessage());
+        }
+        Instant endRead = Instant.now();
+        double rate = Util.calculateRate(count, startRead, endRead);
+        Util.info("buffered-read: source: {}, total: {}, rate: {}/s", source, countFormat.format(count), decimalFormat.format(rate));
+    }
+
+    private void asyncParse(String filename,
+                            Generator gen,
+                            boolean[] columns,
+                            BatchSizeController batch,
+                            LinkedBlockingQueue<Either<List<List<String[]>>, AsyncLoaderWorker.Done>> queue) throws InterruptedException, IOException {
+        LinkedBlockingQueue<Either<List<List<String>>, Done>> lineQueue = new LinkedBlockingQueue<>(parseThreads * 4);
+        List<CompletableFuture<Void>> asyncParses = new ArrayList<>(parseThreads);
+        for (int i = 0; i < parseThreads; i++) {
+            asyncParses.add(asyncParse(i + 1, filename, gen, columns, lineQueue, queue));
+        }
+        try {
+            read(filename, true, (source, lines) -> bufferedReadLines(source, lines, batch, lineQueue));
+        } finally {
+            lineQueue.put(Either.second(AsyncLoaderWorker.Done.INSTANCE));
+        }
+        CompletableFuture.allOf(asyncParses.toArray(new CompletableFuture[0])).join();
+    }
+
+    private void bufferedReadLines(String source,
+                                   Iterator<String> iterator,
+                                   BatchSizeController batch,
+                                   LinkedBlockingQueue<Either<List<List<String>>, AsyncLoaderWorker.Done>> lineQueue) throws InterruptedException {
+
+        List<List<String>> lineGroups = new ArrayList<>(batchGroup);
+        List<String> lines = new ArrayList<>(batch.get());
 
         int count = 0;
         Instant startRead = Instant.now();
         Instant startBatch = Instant.now();
         while (iterator.hasNext() && !hasError.get()) {
             count++;
-            String[] rowTokens;
-            try {
-                rowTokens = Util.parseBySeparator(iterator.next(), gen.getFileSeparator());
-            } catch (IndexOutOfBoundsException indexOutOfBoundsException) {
-                continue;
-            }
-            Util.debug("buffered-read: (line {}): {}", count, Arrays.toString(rowTokens));
-            rows.add(rowTokens);
-            if (rows.size() == batch || !iterator.hasNext()) {
-                rowGroups.add(rows);
-                rows = new ArrayList<>(batch);
-                if (rowGroups.size() == batchGroup || !iterator.hasNext()) {
-                    queue.put(Either.first(rowGroups));
-                    rowGroups = new ArrayList<>(batchGroup);
+            lines.add(iterator.next());
+            if (lines.size() >= batch.get() || !iterator.hasNext()) {
+                lineGroups.add(lines);
+                lines = new ArrayList<>(batch.get());
+                if (lineGroups.size() == batchGroup || !iterator.hasNext()) {
+                    lineQueue.put(Either.first(lineGroups));
+                    lineGroups = new ArrayList<>(batchGroup);
                 }
             }
 
@@ -357,21 +887,62 @@ public class AsyncLoaderWorker {
                 double rate = Util.calculateRate(50_000, startBatch, endBatch);
                 double average = Util.calculateRate(count, startRead, endBatch);
                 Util.info("buffered-read: source: {}, progress: {}, rate: {}/s, average: {}/s",
-                        filename, countFormat.format(count), decimalFormat.format(rate), decimalFormat.format(average));
+                        source, countFormat.format(count), decimalFormat.format(rate), decimalFormat.format(average));
                 startBatch = Instant.now();
             }
         }
-        queue.put(Either.second(AsyncLoaderWorker.Done.INSTANCE));
         Instant endRead = Instant.now();
         double rate = Util.calculateRate(count, startRead, endRead);
-        Util.info("buffered-read: total: {}, rate: {}/s", countFormat.format(count), decimalFormat.format(rate));
+        Util.info("buffered-read: source: {}, total: {}, rate: {}/s", source, countFormat.format(count), decimalFormat.format(rate));
+    }
+
+    private CompletableFuture<Void> asyncParse(int id,
+                                               String filename,
+                                               Generator gen,
+                                               boolean[] columns,
+                                               LinkedBlockingQueue<Either<List<List<String>>, AsyncLoaderWorker.Done>> lineQueue,
+                                               LinkedBlockingQueue<Either<List<List<String[]>>, AsyncLoaderWorker.Done>> queue) {
+        return CompletableFuture.runAsync(() -> {
+            Util.debug("async-parser-{} (start): {}", id, filename);
+            Either<List<List<String>>, Done> queueItem;
+            try {
+                while ((queueItem = lineQueue.take()).isFirst() && !hasError.get()) {
+                    List<List<String>> lineGroups = queueItem.first();
+                    List<List<String[]>> rowGroups = new ArrayList<>(lineGroups.size());
+                    for (List<String> lines : lineGroups) {
+                        List<String[]> rows = new ArrayList<>(lines.size());
+                        for (String line : lines) {
+                            try {
+                                rows.add(Util.parseBySeparator(line, gen.getFileSeparator(), columns));
+                            } catch (IndexOutOfBoundsException indexOutOfBoundsException) {
+                                continue;
+                            }
+                        }
+                        // keep the batch boundaries of the reader
+                        if (!rows.isEmpty()) rowGroups.add(rows);
+                    }
+                    if (!rowGroups.isEmpty()) queue.put(Either.first(rowGroups));
+                }
+                assert queueItem.isSecond() || hasError.get();
+                if (queueItem.isSecond()) lineQueue.put(queueItem);
+            } catch (Throwable e) {
+                hasError.set(true);
+                Util.error("async-parser-" + id + ": " + e.getMessage());
+                throw new RuntimeException(e);
+            } finally {
+                Util.debug("async-parser-{} (end): {}", id, filename);
+            }
+        }, parseExecutor);
     }
 
     private CompletableFuture<Void> asyncWrite(int id,
                                                String filename,
                                                Generator gen,
                                                TypeDBSession session,
-                                               LinkedBlockingQueue<Either<List<List<String[]>>, AsyncLoaderWorker.Done>> queue) {
+                                               LinkedBlockingQueue<Either<List<List<String[]>>, AsyncLoaderWorker.Done>> queue,
+                                               int commitRetries,
+                                               BatchSizeController batch) {
+        BatchCommitter committer = new BatchCommitter(session, gen, filename, commitRetries, loadOptions.multiInsert, writerLimit);
         return CompletableFuture.runAsync(() -> {
             Util.debug("async-writer-{} (start): {}", id, filename);
             Either<List<List<String[]>>, Done> queueItem;
@@ -379,12 +950,20 @@ public class AsyncLoaderWorker {
                 while ((queueItem = queue.take()).isFirst() && !hasError.get()) {
                     List<List<String[]>> rowGroups = queueItem.first();
                     for (List<String[]> rows : rowGroups) {
-                        try (TypeDBTransaction tx = session.transaction(TypeDBTransaction.Type.WRITE)) {
-                            rows.forEach(csv -> {
-                                Util.debug("async-writer-{}: {}", id, csv);
-                                gen.write(tx, csv, loadOptions.multiInsert);
-                            });
-                            tx.commit();
+                        double backlog = (double) queue.size() / (queue.size() + queue.remainingCapacity());
+                        int failedRows;
+                        long nanos;
+                        writerLimit.acquire();
+                        try {
+                            long start = System.nanoTime();
+                            failedRows = committer.commit(id, rows);
+                            nanos = System.nanoTime() - start;
+                        } finally {
+                            writerLimit.release();
+                        }
+                        if (failedRows == 0) {
+                            batch.record(rows.size(), nanos);
+                            writerLimit.recordCommit(rows.size(), nanos, backlog);
                         }
                     }
                 }
@@ -400,6 +979,10 @@ public class AsyncLoaderWorker {
         }, executor);
     }
 
+    private interface LineConsumer {
+        void accept(String source, Iterator<String> lines) throws InterruptedException;
+    }
+
     private static class Done {
         private static final Done INSTANCE = new Done();
     }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.loader;
+
+import com.vaticle.typedb.driver.api.TypeDBSession;
+import com.vaticle.typedb.driver.api.TypeDBTransaction;
+import com.vaticle.typedb.driver.common.exception.TypeDBDriverException;
+import com.vaticle.typedb.osi.loader.generator.Generator;
+import com.vaticle.typedb.osi.loader.io.FileLogger;
+import com.vaticle.typedb.osi.loader.util.Util;
+import org.apache.commons.io.FilenameUtils;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes batches of rows of a file with a generator, one transaction per batch. A commit that fails in a way a
+ * retry can fix - a conflict or a lost connection - is retried up to commitRetries times, with exponential backoff
+ * and jitter, and stops the load if it still fails. A commit that fails in a way a retry cannot fix - a schema or
+ * key violation - is split in halves that are committed on their own, until the failing rows are isolated and
+ * written to the failed commit log.
+ * <p>
+ * The rows a generator logs while writing a batch - invalid, malformed, unmatched rows - are held back until the
+ * transaction commits, so that rows written again by a retry or a half are logged once.
+ */
+class BatchCommitter {
+
+    static final long COMMIT_BACKOFF_MILLIS = 100;
+    static final long MAX_COMMIT_BACKOFF_MILLIS = 10_000;
+    // fragments of the messages of failures that can pass on a later attempt
+    private static final String[] TRANSIENT_FAILURES = {"isolation", "conflict", "concurrent", "unavailable", "connect",
+            "timeout", "timed out", "deadline", "[cxn", "[iso"};
+
+    private final TypeDBSession session;
+    private final Generator gen;
+    private final String filename;
+    private final int commitRetries;
+    private final boolean multiInsert;
+    private final WriterLimit writerLimit;
+
+    BatchCommitter(TypeDBSession session, Generator gen, String filename, int commitRetries, boolean multiInsert, WriterLimit writerLimit) {
+        this.session = session;
+        this.gen = gen;
+        this.filename = filename;
+        this.commitRetries = commitRetries;
+        this.multiInsert = multiInsert;
+        this.writerLimit = writerLimit;
+    }
+
+    /**
+     * Commits the rows while holding a place of the writer limit, and returns the number of rows written to the
+     * failed commit log. A transient failure that outlasts the retries is thrown, as is any failure without retries.
+     */
+    int commit(int id, List<String[]> rows) throws InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            FileLogger.getLogger().defer();
+            try (TypeDBTransaction tx = session.transaction(TypeDBTransaction.Type.WRITE)) {
+                rows.forEach(csv -> Util.debug("async-writer-{}: {}", id, csv));
+                gen.write(tx, rows, multiInsert);
+                tx.commit();
+                gen.committed(rows);
+                FileLogger.getLogger().flush();
+                return 0;
+            } catch (TypeDBDriverException driverException) {
+                gen.rollback(rows);
+                boolean isTransient = isTransient(driverException);
+                // conflicts and lost connections mean the database is loaded - bad rows do not
+                if (isTransient) writerLimit.recordError();
+                if (commitRetries <= 0 || (isTransient && attempt == commitRetries)) {
+                    FileLogger.getLogger().flush();
+                    throw driverException;
+                }
+                // the rows are written again, and logged by the attempt that commits them
+                FileLogger.getLogger().discard();
+                if (!isTransient) {
+                    Util.debug("async-writer-{}: commit of {} rows failed: {}", id, rows.size(), driverException.getMessage());
+                    break;
+                }
+                // full jitter: a random wait up to the exponential backoff of the attempt
+                long backoff = Math.min(MAX_COMMIT_BACKOFF_MILLIS, COMMIT_BACKOFF_MILLIS << Math.min(attempt, 20));
+                // let another writer use the place while this one waits
+                writerLimit.release();
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(backoff + 1));
+                } finally {
+                    writerLimit.acquire();
+                }
+            } catch (RuntimeException e) {
+                FileLogger.getLogger().flush();
+                throw e;
+            }
+        }
+        if (rows.size() == 1) {
+            FileLogger.getLogger().logFailedCommit(FilenameUtils.getName(filename), String.join(Character.toString(gen.getFileSeparator()), rows.get(0)));
+            Util.warn("async-writer-{}: row in <{}> failed to commit - written to <{}_failed_commit.log>", id, filename, FilenameUtils.getBaseName(filename));
+            return 1;
+        }
+        int middle = rows.size() / 2;
+        return commit(id, rows.subList(0, middle)) + commit(id, rows.subList(middle, rows.size()));
+    }
+
+    /**
+     * Returns whether the failure can pass when the transaction is tried again - a conflict with a concurrent
+     * transaction or a lost connection - rather than fail the same way, like a schema or key violation.
+     */
+    static boolean isTransient(TypeDBDriverException driverException) {
+        if (driverException.getMessage() == null) return false;
+        String message = driverException.getMessage().toLowerCase(Locale.ROOT);
+        for (String failure : TRANSIENT_FAILURES) {
+            if (message.contains(failure)) return true;
+        }
+        return false;
+    }
+}
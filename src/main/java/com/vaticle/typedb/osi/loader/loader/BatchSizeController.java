@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.loader;
+
+import com.vaticle.typedb.osi.loader.util.Util;
+
+import java.text.DecimalFormat;
+
+/**
+ * Decides the number of rows per commit of a generator. A fixed controller always returns the configured
+ * size. An adaptive controller hill-climbs on the throughput of the commits: after each window of commits it
+ * compares the rows committed per second of commit latency with the previous window, keeps growing or
+ * shrinking the size while throughput improves, and turns around when it drops. Sizes stay within the
+ * configured bounds.
+ */
+class BatchSizeController {
+
+    static final int WINDOW_COMMITS = 8;
+    static final double STEP = 1.25;
+    private static final DecimalFormat rateFormat = new DecimalFormat("#,###.00");
+
+    private final String name;
+    private final int min;
+    private final int max;
+    private volatile int size;
+    private int direction;
+    private int windowCommits;
+    private long windowRows;
+    private long windowNanos;
+    private double lastThroughput;
+
+    private BatchSizeController(String name, int size, int min, int max) {
+        this.name = name;
+        this.min = min;
+        this.max = max;
+        this.size = Math.max(min, Math.min(max, size));
+        this.direction = 1;
+        this.lastThroughput = -1;
+    }
+
+    static BatchSizeController fixed(int size) {
+        return new BatchSizeController(null, size, size, size);
+    }
+
+    static BatchSizeController adaptive(String name, int size, int min, int max) {
+        return new BatchSizeController(name, size, Math.max(1, min), Math.max(Math.max(1, min), max));
+    }
+
+    int get() {
+        return size;
+    }
+
+    /**
+     * Records a commit of the given number of rows that took the given time, from writing its first row to
+     * the end of its commit.
+     */
+    synchronized void record(int rows, long nanos) {
+        if (min == max) return;
+        windowCommits++;
+        windowRows += rows;
+        windowNanos += nanos;
+        if (windowCommits < WINDOW_COMMITS) return;
+
+        double throughput = windowRows * 1e9 / Math.max(1, windowNanos);
+        if (lastThroughput >= 0 && throughput < lastThroughput) direction = -direction;
+        int previous = size;
+        int next = (int) Math.round(direction > 0 ? size * STEP : size / STEP);
+        if (next == size) next += direction;
+        size = Math.max(min, Math.min(max, next));
+        // at a bound, head back so that the controller keeps probing
+        if (size == min) direction = 1;
+        else if (size == max) direction = -1;
+        if (size != previous) {
+            Util.info("batch-size: {}: {} -> {} rows per commit ({} rows/s per writer, previously {} rows/s)",
+                    name, previous, size, rateFormat.format(throughput), lastThroughput < 0 ? "-" : rateFormat.format(lastThroughput));
+        }
+        lastThroughput = throughput;
+        windowCommits = 0;
+        windowRows = 0;
+        windowNanos = 0;
+    }
+}
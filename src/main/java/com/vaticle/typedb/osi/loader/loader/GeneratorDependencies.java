@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.loader;
+
+import com.vaticle.typedb.driver.api.TypeDBSession;
+import com.vaticle.typedb.driver.api.TypeDBTransaction;
+import com.vaticle.typedb.driver.api.answer.ConceptMap;
+import com.vaticle.typedb.osi.loader.config.Configuration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Dependencies between the generators run by the scheduler. A generator depends on the generators before it in
+ * phase order that write a type, or a subtype of a type, it matches: the player types of a relation, or the
+ * type an append matches. A generator writes the type it inserts or appends to, and the attribute types it
+ * inserts through its ownerships. Dependencies only point to earlier generators, so generators that write each
+ * other's types keep their phase order.
+ */
+class GeneratorDependencies {
+
+    /**
+     * Returns the generators before the generator at the given index that it depends on.
+     */
+    static List<String> dependencies(Configuration dc, List<String> generatorKeys, int index, Map<String, Set<String>> supertypes) {
+        Set<String> matched = matchedTypes(dc.getGeneratorByKey(generatorKeys.get(index)));
+        List<String> dependencies = new ArrayList<>();
+        for (int j = 0; j < index; j++) {
+            Set<String> written = writtenTypes(dc.getGeneratorByKey(generatorKeys.get(j)), supertypes);
+            if (!Collections.disjoint(matched, written)) dependencies.add(generatorKeys.get(j));
+        }
+        return dependencies;
+    }
+
+    /**
+     * Returns the supertypes of the types the generators write, read from the schema of the database in one
+     * read transaction.
+     */
+    static Map<String, Set<String>> supertypes(TypeDBSession session, Configuration dc, List<String> generatorKeys) {
+        Set<String> types = new HashSet<>();
+        for (String generatorKey : generatorKeys) {
+            types.addAll(writtenTypes(dc.getGeneratorByKey(generatorKey), Collections.emptyMap()));
+        }
+        Map<String, Set<String>> supertypes = new HashMap<>();
+        try (TypeDBTransaction tx = session.transaction(TypeDBTransaction.Type.READ)) {
+            for (String type : types) {
+                List<ConceptMap> answers = tx.query().get("match $t type " + type + "; get $t;").collect(Collectors.toList());
+                if (answers.isEmpty()) continue;
+                supertypes.put(type, answers.get(0).get("t").asThingType().getSupertypes(tx)
+                        .map(supertype -> supertype.getLabel().name())
+                        .collect(Collectors.toSet()));
+            }
+        }
+        return supertypes;
+    }
+
+    static Set<String> writtenTypes(Configuration.Generator generator, Map<String, Set<String>> supertypes) {
+        Set<String> types = new HashSet<>();
+        if (generator instanceof Configuration.Generator.Attribute) {
+            types.add(((Configuration.Generator.Attribute) generator).getInsert().getAttribute());
+        } else if (generator instanceof Configuration.Generator.Entity) {
+            Configuration.Generator.Entity entity = (Configuration.Generator.Entity) generator;
+            types.add(entity.getInsert().getEntity());
+            addAttributeTypes(entity.getInsert().getOwnerships(), types);
+        } else if (generator instanceof Configuration.Generator.Relation) {
+            Configuration.Generator.Relation relation = (Configuration.Generator.Relation) generator;
+            types.add(relation.getInsert().getRelation());
+            addAttributeTypes(relation.getInsert().getOwnerships(), types);
+        } else if (generator instanceof Configuration.Generator.AppendAttribute) {
+            // appends change the things they match, which covers appendAttributeOrInsertThing
+            Configuration.Generator.AppendAttribute append = (Configuration.Generator.AppendAttribute) generator;
+            types.add(append.getMatch().getType());
+            addAttributeTypes(append.getInsert().getOwnerships(), types);
+        }
+        for (String type : new ArrayList<>(types)) {
+            types.addAll(supertypes.getOrDefault(type, Collections.emptySet()));
+        }
+        return types;
+    }
+
+    static Set<String> matchedTypes(Configuration.Generator generator) {
+        Set<String> types = new HashSet<>();
+        if (generator instanceof Configuration.Generator.Relation) {
+            for (Configuration.Definition.Player player : ((Configuration.Generator.Relation) generator).getInsert().getPlayers()) {
+                addPlayerTypes(player, types);
+            }
+        } else if (generator instanceof Configuration.Generator.AppendAttribute) {
+            types.add(((Configuration.Generator.AppendAttribute) generator).getMatch().getType());
+        }
+        return types;
+    }
+
+    private static void addAttributeTypes(Configuration.Definition.Attribute[] ownerships, Set<String> types) {
+        if (ownerships == null) return;
+        for (Configuration.Definition.Attribute ownership : ownerships) {
+            types.add(ownership.getAttribute());
+        }
+    }
+
+    private static void addPlayerTypes(Configuration.Definition.Player player, Set<String> types) {
+        Configuration.Definition.Thing match = player.getMatch();
+        if (match == null) return;
+        if (match.getType() != null) types.add(match.getType());
+        if (match.getAttribute() != null && match.getAttribute().getAttribute() != null) types.add(match.getAttribute().getAttribute());
+        if (match.getPlayers() != null) {
+            for (Configuration.Definition.Player nestedPlayer : match.getPlayers()) {
+                addPlayerTypes(nestedPlayer, types);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.loader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Splits rows into batches per writer by the hash of the values of their conflict columns, so that rows with the
+ * same values are always written by the same writer, in the order they are added, and never conflict with the
+ * rows of another writer. Rows are only added in file order if one thread reads and parses the file, which is why
+ * routed files are neither split among range readers nor handed to parse workers.
+ * <p>
+ * The trade-off is balance: all rows pass through one router, and a writer only gets the rows of its shard. A hot
+ * key - values shared by a large part of the rows - keeps its writer busy while the router waits for room in that
+ * writer's queue, so the other writers are starved of rows until it catches up. Conflict columns pay off when
+ * rows of a key would otherwise conflict across writers, not when a few keys dominate the data.
+ */
+class RowRouter {
+
+    private final int[] conflictColumns;
+    private final List<List<String[]>> batches;
+
+    RowRouter(int[] conflictColumns, int shards) {
+        this.conflictColumns = conflictColumns;
+        this.batches = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            batches.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Adds the row to the batch of its shard, and returns the shard if its batch holds batchSize rows, or -1.
+     */
+    int add(String[] row, int batchSize) {
+        int shard = shard(row);
+        List<String[]> batch = batches.get(shard);
+        batch.add(row);
+        return batch.size() >= batchSize ? shard : -1;
+    }
+
+    /**
+     * Returns the rows of the shard added since it was last taken, in the order they were added.
+     */
+    List<String[]> take(int shard) {
+        List<String[]> batch = batches.get(shard);
+        batches.set(shard, new ArrayList<>(batch.size()));
+        return batch;
+    }
+
+    int shards() {
+        return batches.size();
+    }
+
+    int shard(String[] row) {
+        int hash = 1;
+        for (int column : conflictColumns) {
+            hash = 31 * hash + (column < row.length ? Objects.hashCode(row[column]) : 0);
+        }
+        // spread the bits of similar keys before taking the modulo
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash * 0x9e3779b9, batches.size());
+    }
+}
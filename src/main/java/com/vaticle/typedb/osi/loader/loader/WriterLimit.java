@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.loader;
+
+import com.vaticle.typedb.osi.loader.util.Util;
+
+import java.text.DecimalFormat;
+
+/**
+ * Limits the number of writers that hold a transaction at the same time. A fixed limit lets every writer
+ * thread write. An adaptive limit follows an AIMD policy over windows of commits: it is cut by a quarter when
+ * commits fail on conflicts or lost connections, or their latency per row rises well above the best latency seen,
+ * and grows by one writer when latency stays close to the best and the writers cannot keep up with the readers.
+ * The best latency slowly drifts up, so that a database that gets slower as it grows is not mistaken for an
+ * overloaded one. The limit stays within the configured bounds.
+ */
+class WriterLimit {
+
+    static final int WINDOW_COMMITS = 16;
+    static final double DECREASE = 0.75;
+    static final double OVERLOAD_LATENCY = 1.5;
+    static final double HEALTHY_LATENCY = 1.2;
+    static final double BACKLOG = 0.5;
+    static final double BEST_LATENCY_DRIFT = 1.01;
+    private static final DecimalFormat latencyFormat = new DecimalFormat("#,##0.0");
+
+    private final int min;
+    private final int max;
+    private final boolean adaptive;
+    private int limit;
+    private int active;
+    private int windowCommits;
+    private int windowErrors;
+    private long windowNanos;
+    private long windowRows;
+    private double windowBacklog;
+    private double bestLatency;
+
+    private WriterLimit(int limit, int min, int max, boolean adaptive) {
+        this.min = min;
+        this.max = max;
+        this.adaptive = adaptive;
+        this.limit = limit;
+        this.bestLatency = -1;
+    }
+
+    static WriterLimit fixed(int writers) {
+        return new WriterLimit(writers, writers, writers, false);
+    }
+
+    static WriterLimit adaptive(int min, int max) {
+        int boundedMin = Math.max(1, Math.min(min, max));
+        // start from the lower bound and grow towards what the database sustains
+        return new WriterLimit(boundedMin, boundedMin, Math.max(boundedMin, max), true);
+    }
+
+    synchronized int get() {
+        return limit;
+    }
+
+    /**
+     * Waits until fewer writers than the limit hold a transaction, and takes a place among them.
+     */
+    synchronized void acquire() throws InterruptedException {
+        while (active >= limit) {
+            wait();
+        }
+        active++;
+    }
+
+    synchronized void release() {
+        active--;
+        notifyAll();
+    }
+
+    /**
+     * Records an attempt to write or commit a transaction that failed on a conflict or a lost connection.
+     */
+    synchronized void recordError() {
+        if (!adaptive) return;
+        windowErrors++;
+    }
+
+    /**
+     * Records a successful commit of the given number of rows that took the given time, and how full the queue
+     * the writer took its rows from was, from 0 (empty) to 1 (full).
+     */
+    synchronized void recordCommit(int rows, long nanos, double backlog) {
+        if (!adaptive) return;
+        windowCommits++;
+        windowRows += rows;
+        windowNanos += nanos;
+        windowBacklog += backlog;
+        if (windowCommits < WINDOW_COMMITS) return;
+
+        // microseconds per row
+        double latency = windowNanos / 1e3 / Math.max(1, windowRows);
+        double averageBacklog = windowBacklog / windowCommits;
+        if (bestLatency < 0 || latency < bestLatency) bestLatency = latency;
+        else bestLatency *= BEST_LATENCY_DRIFT;
+        int previous = limit;
+        String reason = null;
+        if (windowErrors > 0) {
+            limit = Math.max(min, (int) (limit * DECREASE));
+            reason = windowErrors + " transient commit failures";
+        } else if (latency > bestLatency * OVERLOAD_LATENCY) {
+            limit = Math.max(min, (int) (limit * DECREASE));
+            reason = "latency above " + latencyFormat.format(bestLatency * OVERLOAD_LATENCY) + " us per row";
+        } else if (latency <= bestLatency * HEALTHY_LATENCY && averageBacklog >= BACKLOG) {
+            limit = Math.min(max, limit + 1);
+            reason = "queue " + Math.round(averageBacklog * 100) + "% full";
+        }
+        if (limit != previous) {
+            Util.info("writer-limit: {} -> {} writers ({}, commit latency {} us per row, best {} us per row)",
+                    previous, limit, reason, latencyFormat.format(latency), latencyFormat.format(bestLatency));
+            notifyAll();
+        }
+        windowCommits = 0;
+        windowErrors = 0;
+        windowNanos = 0;
+        windowRows = 0;
+        windowBacklog = 0;
+    }
+}
@@ -16,17 +16,21 @@
 
 package com.vaticle.typedb.osi.loader.preprocessor;
 
+import java.util.regex.Pattern;
+
 public class RegexPreprocessor {
     String match;
     String replace;
+    Pattern pattern;
 
     public RegexPreprocessor(String match, String replace) {
         this.match = match;
         this.replace = replace;
+        this.pattern = Pattern.compile(match);
     }
 
     public String applyProcessor(String value) {
-        return value.replaceAll(match, replace);
+        return pattern.matcher(value).replaceAll(replace);
     }
 
 }
@@ -29,6 +29,7 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.math.BigDecimal;
 import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -42,11 +43,17 @@ public class GeneratorUtil {
     private static final Logger dataLogger = LogManager.getLogger("com.vaticle.typedb.osi.loader.error");
 
     //TODO: remove this function and all the complications it provides... this would need to be either solved by a regex preprocessor, or is already solved by CSV.withIgnoreSurroundingSpaces()
-    private static String cleanToken(String token) {
-        String cleaned = token.replace("\"", "");
-        cleaned = cleaned.replace("\\", "");
-        cleaned = cleaned.trim();
-        return cleaned;
+    static String cleanToken(String token) {
+        int i = 0;
+        while (i < token.length() && token.charAt(i) != '"' && token.charAt(i) != '\\') i++;
+        if (i == token.length()) return token.trim();
+        StringBuilder cleaned = new StringBuilder(token.length());
+        cleaned.append(token, 0, i);
+        for (; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c != '"' && c != '\\') cleaned.append(c);
+        }
+        return cleaned.toString().trim();
     }
 
     public static void constrainThingWithHasAttributes(String[] row,
@@ -55,19 +62,42 @@ public class GeneratorUtil {
                                                        char fileSeparator,
                                                        ThingStatement insertStatement,
                                                        Configuration.Definition.Attribute[] attributes) {
-        for (Configuration.Definition.Attribute attribute : attributes) {
-            ArrayList<ThingConstraint.Predicate> constraintValues = GeneratorUtil.generateValueConstraintsConstrainingAttribute(
-                    row, header, filePath, fileSeparator, attribute);
-            for (ThingConstraint.Predicate constraintValue : constraintValues) {
-                insertStatement.constrain(GeneratorUtil.valueToHasConstraint(attribute.getAttribute(), constraintValue));
-            }
-        }
+        new RowBinder(filePath, header, fileSeparator, new ArrayList<>()).constrainThingWithHasAttributes(row, insertStatement, attributes);
     }
 
     public static int getColumnIndexByName(String[] header, String column) {
         return Arrays.asList(header).indexOf(column);
     }
 
+    /**
+     * Marks the columns of the header that are read by the given attribute definitions.
+     */
+    public static boolean[] getReferencedColumns(String[] header, ArrayList<Configuration.Definition.Attribute> attributes) {
+        boolean[] referenced = new boolean[header.length];
+        for (Configuration.Definition.Attribute attribute : attributes) {
+            int colIdx = getColumnIndexByName(header, attribute.getColumn());
+            if (colIdx >= 0) referenced[colIdx] = true;
+        }
+        return referenced;
+    }
+
+    public static void addAttributes(ArrayList<Configuration.Definition.Attribute> attributes,
+                                     Configuration.Definition.Attribute[] toAdd) {
+        if (toAdd != null) attributes.addAll(Arrays.asList(toAdd));
+    }
+
+    public static void addPlayerAttributes(ArrayList<Configuration.Definition.Attribute> attributes,
+                                           Configuration.Definition.Player[] players) {
+        if (players == null) return;
+        for (Configuration.Definition.Player player : players) {
+            Configuration.Definition.Thing match = player.getMatch();
+            if (match == null) continue;
+            if (match.getAttribute() != null) attributes.add(match.getAttribute());
+            addAttributes(attributes, match.getOwnerships());
+            addPlayerAttributes(attributes, match.getPlayers());
+        }
+    }
+
     public static ThingStatement.Thing generateBoundThingVar(String schemaType) {
         return TypeQL.cVar("e").isa(schemaType);
     }
@@ -85,45 +115,9 @@ public class GeneratorUtil {
                                                                                                      String filepath,
                                                                                                      char fileSeparator,
                                                                                                      Configuration.Definition.Attribute attribute) {
-
-        String attributeType = attribute.getAttribute();
-        AttributeValueType attributeValueType = attribute.getConceptValueType();
-        String listSeparator = attribute.getListSeparator();
-        Configuration.PreprocessorConfig preprocessor = attribute.getPreprocessorConfig();
-        String token;
-
-        int colIdx = GeneratorUtil.getColumnIndexByName(header, attribute.getColumn());
-        if (colIdx < row.length) {
-            token = row[colIdx];
-        } else {
-            return new ArrayList<>();
-        }
-
-
-        ArrayList<ThingConstraint.Predicate> valueConstraints = new ArrayList<>();
-        if (token != null && !token.isEmpty()) {
-            String cleanedToken = cleanToken(token);
-            if (listSeparator == null) {
-                ThingConstraint.Predicate valueConstraint = generateValueConstraint(attributeType, attributeValueType, cleanedToken, preprocessor, row, filepath, fileSeparator);
-                if (valueConstraint != null) {
-                    valueConstraints.add(valueConstraint);
-                }
-            } else {
-                for (String exploded : cleanedToken.split(listSeparator)) {
-                    String cleanedExplodedToken = cleanToken(exploded);
-                    if (!cleanedExplodedToken.isEmpty()) {
-                        ThingConstraint.Predicate valueConstraint = generateValueConstraint(attributeType, attributeValueType, cleanedExplodedToken, preprocessor, row, filepath, fileSeparator);
-                        if (valueConstraint != null) {
-                            valueConstraints.add(valueConstraint);
-                        }
-                    }
-                }
-            }
-        }
-        return valueConstraints;
+        return new RowBinder(filepath, header, fileSeparator, new ArrayList<>()).valueConstraints(row, attribute);
     }
 
-
     public static ThingConstraint.Predicate generateValueConstraint(String attributeSchemaType,
                                                                     AttributeValueType attributeValueType,
                                                                     String cleanedValue,
@@ -131,43 +125,62 @@ public class GeneratorUtil {
                                                                     String[] row,
                                                                     String filepath,
                                                                     char fileSeparator) {
-        String fileName = FilenameUtils.getName(filepath);
-        String fileNoExtension = FilenameUtils.removeExtension(fileName);
-        String originalRow = String.join(Character.toString(fileSeparator), row);
-
         if (preprocessorConfig != null) {
             cleanedValue = applyPreprocessor(cleanedValue, preprocessorConfig);
         }
+        return generateValueConstraint(attributeSchemaType, attributeValueType, cleanedValue, row, FilenameUtils.getName(filepath), fileSeparator);
+    }
 
-        ThingConstraint.Predicate constraint = null;
+    static ThingConstraint.Predicate generateValueConstraint(String attributeSchemaType,
+                                                             AttributeValueType attributeValueType,
+                                                             String cleanedValue,
+                                                             String[] row,
+                                                             String fileName,
+                                                             char fileSeparator) {
+        Object value = generateValue(attributeSchemaType, attributeValueType, cleanedValue, row, fileName, fileSeparator);
+        if (value == null) return null;
+        return valueToPredicate(value);
+    }
+
+    /**
+     * Converts the cleaned value to the java type of the attribute value type: String, Long, Double, Boolean
+     * or LocalDateTime. Returns null and logs the row if the value does not conform to the value type.
+     */
+    static Object generateValue(String attributeSchemaType,
+                                AttributeValueType attributeValueType,
+                                String cleanedValue,
+                                String[] row,
+                                String fileName,
+                                char fileSeparator) {
+        Object value = null;
         switch (attributeValueType) {
             case STRING:
-                constraint = new ThingConstraint.Predicate(new Predicate.String(TypeQLToken.Predicate.Equality.EQ, cleanedValue));
+                value = cleanedValue;
                 break;
             case LONG:
                 try {
-                    constraint = new ThingConstraint.Predicate(new Predicate.Long(TypeQLToken.Predicate.Equality.EQ, Long.parseLong(cleanedValue)));
+                    value = Long.parseLong(cleanedValue);
                 } catch (NumberFormatException numberFormatException) {
-                    FileLogger.getLogger().logColumnWarnings(fileName, originalRow);
-                    dataLogger.warn(String.format("column of type long for variable <%s> with non-<long> value <%s> - skipping column - faulty row written to <%s_column_type.log>", attributeSchemaType, cleanedValue, fileNoExtension));
+                    FileLogger.getLogger().logColumnWarnings(fileName, String.join(Character.toString(fileSeparator), row));
+                    dataLogger.warn(String.format("column of type long for variable <%s> with non-<long> value <%s> - skipping column - faulty row written to <%s_column_type.log>", attributeSchemaType, cleanedValue, FilenameUtils.removeExtension(fileName)));
                 }
                 break;
             case DOUBLE:
                 try {
-                    constraint = new ThingConstraint.Predicate(new Predicate.Double(TypeQLToken.Predicate.Equality.EQ, Double.parseDouble(cleanedValue)));
+                    value = Double.parseDouble(cleanedValue);
                 } catch (NumberFormatException numberFormatException) {
-                    FileLogger.getLogger().logColumnWarnings(fileName, originalRow);
-                    dataLogger.warn(String.format("column of type double for variable <%s> with non-<double> value <%s> - skipping column - faulty row written to <%s_column_type.log>", attributeSchemaType, cleanedValue, fileNoExtension));
+                    FileLogger.getLogger().logColumnWarnings(fileName, String.join(Character.toString(fileSeparator), row));
+                    dataLogger.warn(String.format("column of type double for variable <%s> with non-<double> value <%s> - skipping column - faulty row written to <%s_column_type.log>", attributeSchemaType, cleanedValue, FilenameUtils.removeExtension(fileName)));
                 }
                 break;
             case BOOLEAN:
                 if (cleanedValue.equalsIgnoreCase("true")) {
-                    constraint = new ThingConstraint.Predicate(new Predicate.Boolean(TypeQLToken.Predicate.Equality.EQ, true));
+                    value = true;
                 } else if (cleanedValue.equalsIgnoreCase("false")) {
-                    constraint = new ThingConstraint.Predicate(new Predicate.Boolean(TypeQLToken.Predicate.Equality.EQ, false));
+                    value = false;
                 } else {
-                    FileLogger.getLogger().logColumnWarnings(fileName, originalRow);
-                    dataLogger.warn(String.format("column of type boolean for variable <%s> with non-<boolean> value <%s> - skipping column - faulty row written to <%s_column_type.log>", attributeSchemaType, cleanedValue, fileNoExtension));
+                    FileLogger.getLogger().logColumnWarnings(fileName, String.join(Character.toString(fileSeparator), row));
+                    dataLogger.warn(String.format("column of type boolean for variable <%s> with non-<boolean> value <%s> - skipping column - faulty row written to <%s_column_type.log>", attributeSchemaType, cleanedValue, FilenameUtils.removeExtension(fileName)));
                 }
                 break;
             case DATETIME:
@@ -182,16 +195,64 @@ public class GeneratorUtil {
                     } else {
                         dateTime = date.atStartOfDay();
                     }
-                    constraint = new ThingConstraint.Predicate(new Predicate.DateTime(TypeQLToken.Predicate.Equality.EQ, dateTime));
+                    value = dateTime;
                 } catch (DateTimeException dateTimeException) {
-                    FileLogger.getLogger().logColumnWarnings(fileName, originalRow);
-                    dataLogger.warn(String.format("column of type datetime for variable <%s> with non-<ISO 8601 format> datetime value <%s> - skipping column - faulty row written to <%s_column_type.log>", attributeSchemaType, cleanedValue, fileNoExtension));
+                    FileLogger.getLogger().logColumnWarnings(fileName, String.join(Character.toString(fileSeparator), row));
+                    dataLogger.warn(String.format("column of type datetime for variable <%s> with non-<ISO 8601 format> datetime value <%s> - skipping column - faulty row written to <%s_column_type.log>", attributeSchemaType, cleanedValue, FilenameUtils.removeExtension(fileName)));
                 }
                 break;
             default:
                 dataLogger.warn("column type not valid - must be either: string, long, double, boolean, or datetime");
         }
-        return constraint;
+        return value;
+    }
+
+    public static ThingConstraint.Predicate valueToPredicate(Object value) {
+        if (value instanceof String) {
+            return new ThingConstraint.Predicate(new Predicate.String(TypeQLToken.Predicate.Equality.EQ, (String) value));
+        } else if (value instanceof Long) {
+            return new ThingConstraint.Predicate(new Predicate.Long(TypeQLToken.Predicate.Equality.EQ, (Long) value));
+        } else if (value instanceof Double) {
+            return new ThingConstraint.Predicate(new Predicate.Double(TypeQLToken.Predicate.Equality.EQ, (Double) value));
+        } else if (value instanceof Boolean) {
+            return new ThingConstraint.Predicate(new Predicate.Boolean(TypeQLToken.Predicate.Equality.EQ, (Boolean) value));
+        } else {
+            return new ThingConstraint.Predicate(new Predicate.DateTime(TypeQLToken.Predicate.Equality.EQ, (LocalDateTime) value));
+        }
+    }
+
+    /**
+     * Appends the value as a TypeQL literal that parses back to the same value. String values arrive
+     * with their double quotes already escaped by the parser; a double quote or a trailing backslash that
+     * would still end the literal early is escaped here.
+     */
+    public static void appendValueLiteral(StringBuilder query, Object value) {
+        if (value instanceof String) {
+            String string = (String) value;
+            query.append('"');
+            boolean escaped = false;
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                if (c == '"' && !escaped) query.append('\\');
+                query.append(c);
+                escaped = c == '\\' && !escaped;
+            }
+            if (escaped) query.append('\\');
+            query.append('"');
+        } else if (value instanceof Double) {
+            query.append(doubleLiteral((Double) value));
+        } else if (value instanceof LocalDateTime) {
+            query.append(((LocalDateTime) value).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        } else {
+            query.append(value);
+        }
+    }
+
+    private static String doubleLiteral(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) return Double.toString(value);
+        // plain notation, as TypeQL does not accept exponents in double literals
+        String plain = BigDecimal.valueOf(value).toPlainString();
+        return plain.indexOf('.') < 0 ? plain + ".0" : plain;
     }
 
     private static String applyPreprocessor(String cleanedValue,
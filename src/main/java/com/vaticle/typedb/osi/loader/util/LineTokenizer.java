@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.util;
+
+import java.util.Arrays;
+
+/**
+ * Splits one line of a CSV or TSV file into cells in a single pass. The result is the same as parsing the line
+ * with the commons-csv formats in {@link Util} (double quote encapsulation, backslash escapes, surrounding spaces
+ * ignored, empty cells as null), followed by turning null tokens into null and escaping double quotes.
+ * <p>
+ * Cells that need no unescaping are cut from the line directly, all others are assembled in a buffer that is
+ * reused across lines. Given a column mask, cells of unmasked columns are scanned but not decoded and are
+ * returned as null. An instance is not thread-safe.
+ */
+class LineTokenizer {
+
+    private final StringBuilder cell;
+    private String[] cells;
+    private int count;
+    private boolean buffered;
+    private boolean keep;
+    private int plainStart;
+
+    LineTokenizer() {
+        this.cell = new StringBuilder(256);
+        this.cells = new String[16];
+    }
+
+    /**
+     * Returns the cells of the line. If its quoting is malformed the line is tokenized again without any double
+     * quotes; if that fails too, an empty array is returned.
+     */
+    String[] tokenize(String line, char delimiter, boolean[] columns) {
+        String[] result = split(line, delimiter, columns);
+        if (result == null) result = split(line.replace("\"", ""), delimiter, columns);
+        return result == null ? new String[0] : result;
+    }
+
+    private String[] split(String line, char delimiter, boolean[] columns) {
+        count = 0;
+        int end = line.length();
+        int i = 0;
+        while (true) {
+            while (i < end && isWhitespace(line.charAt(i), delimiter)) i++;
+            if (i >= end) {
+                add(null);
+                break;
+            }
+            char c = line.charAt(i);
+            if (c == delimiter) {
+                add(null);
+                i++;
+                continue;
+            }
+            if (isLineBreak(c)) {
+                add(null);
+                break;
+            }
+            keep = columns == null || (count < columns.length && columns[count]);
+            i = c == '"' ? quoted(line, i + 1, end, delimiter) : simple(line, i, end, delimiter);
+            if (i < 0) {
+                Arrays.fill(cells, 0, count, null);
+                return null;
+            }
+            if (i >= end || line.charAt(i) != delimiter) break;
+            i++;
+        }
+        String[] result = Arrays.copyOf(cells, count);
+        Arrays.fill(cells, 0, count, null);
+        return result;
+    }
+
+    private int simple(String line, int i, int end, char delimiter) {
+        begin(i);
+        while (i < end) {
+            char c = line.charAt(i);
+            if (c == delimiter || isLineBreak(c)) break;
+            if (c == '\\') {
+                toBuffer(line, i);
+                if (i + 1 >= end) return -1;
+                unescape(line.charAt(i + 1), delimiter);
+                i += 2;
+            } else if (c == '"') {
+                toBuffer(line, i);
+                append(c);
+                i++;
+            } else {
+                if (buffered) cell.append(c);
+                i++;
+            }
+        }
+        if (buffered) {
+            int length = cell.length();
+            while (length > 0 && Character.isWhitespace(cell.charAt(length - 1))) length--;
+            cell.setLength(length);
+            addBuffered();
+        } else {
+            int cellEnd = i;
+            while (cellEnd > plainStart && Character.isWhitespace(line.charAt(cellEnd - 1))) cellEnd--;
+            addPlain(line, plainStart, cellEnd);
+        }
+        return i;
+    }
+
+    private int quoted(String line, int i, int end, char delimiter) {
+        begin(i);
+        while (true) {
+            if (i >= end) return -1;
+            char c = line.charAt(i);
+            if (c == '\\') {
+                toBuffer(line, i);
+                if (i + 1 >= end) return -1;
+                unescape(line.charAt(i + 1), delimiter);
+                i += 2;
+            } else if (c == '"') {
+                if (i + 1 < end && line.charAt(i + 1) == '"') {
+                    toBuffer(line, i);
+                    append('"');
+                    i += 2;
+                } else {
+                    if (buffered) addBuffered();
+                    else addPlain(line, plainStart, i);
+                    i++;
+                    // only whitespace may follow the closing quote
+                    while (i < end) {
+                        c = line.charAt(i);
+                        if (c == delimiter || isLineBreak(c)) break;
+                        if (!isWhitespace(c, delimiter)) return -1;
+                        i++;
+                    }
+                    return i;
+                }
+            } else {
+                if (buffered) cell.append(c);
+                i++;
+            }
+        }
+    }
+
+    private void unescape(char c, char delimiter) {
+        switch (c) {
+            case 'r':
+                append('\r');
+                break;
+            case 'n':
+                append('\n');
+                break;
+            case 't':
+                append('\t');
+                break;
+            case 'b':
+                append('\b');
+                break;
+            case 'f':
+                append('\f');
+                break;
+            case '\r':
+            case '\n':
+            case '\t':
+            case '\b':
+            case '\f':
+            case '\\':
+            case '"':
+                append(c);
+                break;
+            default:
+                if (c == delimiter) {
+                    append(c);
+                } else {
+                    // not an escape sequence: both characters are kept
+                    if (keep) cell.append('\\');
+                    append(c);
+                }
+        }
+    }
+
+    private void begin(int start) {
+        cell.setLength(0);
+        buffered = false;
+        plainStart = start;
+    }
+
+    private void toBuffer(String line, int i) {
+        if (keep && !buffered) {
+            cell.append(line, plainStart, i);
+            buffered = true;
+        }
+    }
+
+    private void append(char c) {
+        if (!keep) return;
+        if (c == '"') cell.append('\\');
+        cell.append(c);
+    }
+
+    private void addPlain(String line, int start, int end) {
+        if (!keep || start == end || isNullToken(line, start, end)) add(null);
+        else add(line.substring(start, end));
+    }
+
+    private void addBuffered() {
+        if (cell.length() == 0 || isNullToken(cell, 0, cell.length())) add(null);
+        else add(cell.toString());
+    }
+
+    private void add(String value) {
+        if (count == cells.length) cells = Arrays.copyOf(cells, count * 2);
+        cells[count++] = value;
+    }
+
+    private static boolean isNullToken(CharSequence s, int start, int end) {
+        if (end - start == 2) {
+            return s.charAt(start) == '\\' && s.charAt(start + 1) == 'N';
+        } else if (end - start == 4) {
+            return Character.toLowerCase(s.charAt(start)) == 'n' && Character.toLowerCase(s.charAt(start + 1)) == 'u' &&
+                    Character.toLowerCase(s.charAt(start + 2)) == 'l' && Character.toLowerCase(s.charAt(start + 3)) == 'l';
+        }
+        return false;
+    }
+
+    private static boolean isWhitespace(char c, char delimiter) {
+        return c != delimiter && Character.isWhitespace(c);
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c == '\r' || c == '\n';
+    }
+}
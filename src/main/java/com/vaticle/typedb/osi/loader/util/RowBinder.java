@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.util;
+
+import com.vaticle.typedb.osi.loader.config.Configuration;
+import com.vaticle.typedb.osi.loader.preprocessor.RegexPreprocessor;
+import com.vaticle.typeql.lang.pattern.constraint.ThingConstraint;
+import com.vaticle.typeql.lang.pattern.statement.ThingStatement;
+import org.apache.commons.io.FilenameUtils;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Binds the cells of the rows of one file to the attribute definitions of a generator. Column indexes, list
+ * separators and preprocessors are resolved once per definition when the binder is created, so binding a row
+ * only takes index lookups and value conversions. Rows are bound either to query builder statements or straight
+ * into query strings. A binder is read-only after creation and can be shared between writer threads.
+ */
+public class RowBinder {
+
+    private final String[] header;
+    private final String fileName;
+    private final String fileNoExtension;
+    private final char fileSeparator;
+    private final IdentityHashMap<Configuration.Definition.Attribute, Binding> bindings;
+
+    public RowBinder(String filePath,
+                     String[] header,
+                     char fileSeparator,
+                     List<Configuration.Definition.Attribute> attributes) {
+        this.header = header;
+        this.fileName = FilenameUtils.getName(filePath);
+        this.fileNoExtension = FilenameUtils.removeExtension(fileName);
+        this.fileSeparator = fileSeparator;
+        this.bindings = new IdentityHashMap<>();
+        for (Configuration.Definition.Attribute attribute : attributes) {
+            bindings.put(attribute, new Binding(header, attribute));
+        }
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getFileNoExtension() {
+        return fileNoExtension;
+    }
+
+    /**
+     * Returns the row as written to the error logs.
+     */
+    public String originalRow(String[] row) {
+        return String.join(Character.toString(fileSeparator), row);
+    }
+
+    /**
+     * Constrains the statement with the values the row holds for the attributes, and returns whether every
+     * required attribute was bound to at least one value.
+     */
+    public boolean constrainThingWithHasAttributes(String[] row,
+                                                   ThingStatement insertStatement,
+                                                   Configuration.Definition.Attribute[] attributes) {
+        boolean requiredBound = true;
+        for (Configuration.Definition.Attribute attribute : attributes) {
+            ArrayList<ThingConstraint.Predicate> constraintValues = valueConstraints(row, attribute);
+            for (ThingConstraint.Predicate constraintValue : constraintValues) {
+                insertStatement.constrain(GeneratorUtil.valueToHasConstraint(attribute.getAttribute(), constraintValue));
+            }
+            if (constraintValues.isEmpty() && isRequired(attribute)) requiredBound = false;
+        }
+        return requiredBound;
+    }
+
+    private static boolean isRequired(Configuration.Definition.Attribute attribute) {
+        return attribute.getRequired() != null && attribute.getRequired();
+    }
+
+    /**
+     * Appends a has constraint for every value bound from the row to the query string, and returns whether
+     * every required attribute was bound to at least one value.
+     */
+    public boolean appendHasAttributes(String[] row,
+                                       StringBuilder query,
+                                       Configuration.Definition.Attribute[] attributes) {
+        boolean requiredBound = true;
+        for (Configuration.Definition.Attribute attribute : attributes) {
+            Binding binding = binding(attribute);
+            ArrayList<Object> values = values(row, binding);
+            for (Object value : values) {
+                query.append(binding.hasSegment);
+                GeneratorUtil.appendValueLiteral(query, value);
+            }
+            if (values.isEmpty() && isRequired(attribute)) requiredBound = false;
+        }
+        return requiredBound;
+    }
+
+    public ArrayList<ThingConstraint.Predicate> valueConstraints(String[] row,
+                                                                 Configuration.Definition.Attribute attribute) {
+        ArrayList<Object> values = values(row, binding(attribute));
+        ArrayList<ThingConstraint.Predicate> valueConstraints = new ArrayList<>(values.size());
+        for (Object value : values) {
+            valueConstraints.add(GeneratorUtil.valueToPredicate(value));
+        }
+        return valueConstraints;
+    }
+
+    /**
+     * Returns the values the row holds for the attribute, converted to the java type of its value type.
+     */
+    public ArrayList<Object> values(String[] row,
+                                    Configuration.Definition.Attribute attribute) {
+        return values(row, binding(attribute));
+    }
+
+    private Binding binding(Configuration.Definition.Attribute attribute) {
+        Binding binding = bindings.get(attribute);
+        // definitions not known when the binder was created are resolved on the fly
+        if (binding == null) binding = new Binding(header, attribute);
+        return binding;
+    }
+
+    private ArrayList<Object> values(String[] row, Binding binding) {
+        ArrayList<Object> values = new ArrayList<>();
+        if (binding.column < 0 || binding.column >= row.length) return values;
+        String token = row[binding.column];
+        if (token == null || token.isEmpty()) return values;
+
+        String cleanedToken = GeneratorUtil.cleanToken(token);
+        if (binding.listSeparator == null) {
+            addValue(values, binding, cleanedToken, row);
+        } else {
+            for (String exploded : binding.listSeparator.split(cleanedToken)) {
+                String cleanedExplodedToken = GeneratorUtil.cleanToken(exploded);
+                if (!cleanedExplodedToken.isEmpty()) {
+                    addValue(values, binding, cleanedExplodedToken, row);
+                }
+            }
+        }
+        return values;
+    }
+
+    private void addValue(ArrayList<Object> values,
+                          Binding binding,
+                          String value,
+                          String[] row) {
+        if (binding.preprocessorConfig != null) {
+            if (binding.preprocessor == null) {
+                throw new IllegalArgumentException("Preprocessor of type: <" + binding.preprocessorConfig.getType() + "> as specified in data config does not exist");
+            }
+            value = binding.preprocessor.applyProcessor(value);
+        }
+        Object typedValue = GeneratorUtil.generateValue(
+                binding.attribute.getAttribute(), binding.attribute.getConceptValueType(), value, row, fileName, fileSeparator);
+        if (typedValue != null) {
+            values.add(typedValue);
+        }
+    }
+
+    private static class Binding {
+        private final Configuration.Definition.Attribute attribute;
+        private final int column;
+        private final Pattern listSeparator;
+        private final Configuration.PreprocessorConfig preprocessorConfig;
+        private final RegexPreprocessor preprocessor;
+        private final String hasSegment;
+
+        private Binding(String[] header, Configuration.Definition.Attribute attribute) {
+            this.attribute = attribute;
+            this.hasSegment = ", has " + attribute.getAttribute() + " ";
+            this.column = GeneratorUtil.getColumnIndexByName(header, attribute.getColumn());
+            this.listSeparator = attribute.getListSeparator() != null ? Pattern.compile(attribute.getListSeparator()) : null;
+            this.preprocessorConfig = attribute.getPreprocessorConfig();
+            if (preprocessorConfig != null && "regex".equals(preprocessorConfig.getType())) {
+                Configuration.PreprocessorConfig.PreprocessorParameters params = preprocessorConfig.getParameters();
+                this.preprocessor = new RegexPreprocessor(params.getRegexMatch(), params.getRegexReplace());
+            } else {
+                this.preprocessor = null;
+            }
+        }
+    }
+}
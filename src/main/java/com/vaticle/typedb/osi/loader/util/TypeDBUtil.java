@@ -37,6 +37,8 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static com.vaticle.typedb.osi.loader.util.Util.loadSchemaFromFile;
 
@@ -110,15 +112,38 @@ public class TypeDBUtil {
         return tx.query().get(query.match().get().get()).iterator();
     }
 
-    public static void safeInsert(TypeDBTransaction tx, TypeQLInsert query, Iterator<ConceptMap> matches, boolean allowMultiInsert, String filePath, String row, Logger dataLogger) {
+    /**
+     * Returns whether a thing exists for every one of the given IIDs.
+     */
+    public static boolean thingsExist(TypeDBSession session, List<String> iids) {
+        if (iids.isEmpty()) return true;
+        try (TypeDBTransaction tx = session.transaction(TypeDBTransaction.Type.READ)) {
+            for (String iid : iids) {
+                if (tx.query().get("match $x iid " + iid + "; get $x;").findAny().isEmpty()) return false;
+            }
+        }
+        return true;
+    }
+
+    public static void safeInsert(TypeDBTransaction tx, TypeQLInsert query, Iterator<ConceptMap> matches, boolean allowMultiInsert, String filePath, Supplier<String> row, Logger dataLogger) {
+        safeInsert(tx, query, matches, allowMultiInsert, filePath, row, dataLogger, answer -> {});
+    }
+
+    /**
+     * Inserts the query once per matched answer, and hands the answer to onUniqueAnswer if it was the only one.
+     */
+    public static void safeInsert(TypeDBTransaction tx, TypeQLInsert query, Iterator<ConceptMap> matches, boolean allowMultiInsert, String filePath, Supplier<String> row, Logger dataLogger, Consumer<ConceptMap> onUniqueAnswer) {
         assert query.match().isPresent();
         String fileName = FilenameUtils.getName(filePath);
         ConceptMap answer = matches.next();
         if (!allowMultiInsert && matches.hasNext()) {
-            FileLogger.getLogger().logTooManyMatches(fileName, row);
-            dataLogger.error("Match-insert skipped - File <" + filePath + "> row <" + row + "> generates query <" + query + "> which matched more than 1 answer.");
+            FileLogger.getLogger().logTooManyMatches(fileName, row.get());
+            dataLogger.error("Match-insert skipped - File <" + filePath + "> row <" + row.get() + "> generates query <" + query + "> which matched more than 1 answer.");
         } else {
             tx.query().insert(TypeDBUtil.replaceMatchWithAnswer(query, answer));
+            if (!matches.hasNext()) {
+                onUniqueAnswer.accept(answer);
+            }
             while (matches.hasNext()) {
                 answer = matches.next();
                 tx.query().insert(TypeDBUtil.replaceMatchWithAnswer(query, answer));
@@ -33,9 +33,11 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.reflect.Type;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Iterator;
 import java.util.Objects;
 
 import static com.vaticle.typedb.osi.loader.io.FileToInputStream.getInputStream;
@@ -47,6 +49,7 @@ public class Util {
     //TODO: disallow duplicate header names, and why does ignoreEmptyLines not work???
     private static final CSVFormat CSV_FORMAT = CSVFormat.DEFAULT.withEscape('\\').withIgnoreSurroundingSpaces().withNullString("");
     private static final CSVFormat TSV_FORMAT = CSVFormat.DEFAULT.withDelimiter('\t').withEscape('\\').withIgnoreSurroundingSpaces().withNullString("");
+    private static final ThreadLocal<LineTokenizer> TOKENIZER = ThreadLocal.withInitial(LineTokenizer::new);
 
     public static String[] getFileHeader(String filePath, char separator) throws IOException, IllegalArgumentException {
         BufferedReader br = newBufferedReader(filePath);
@@ -102,59 +105,68 @@ public class Util {
         }
     }
 
-    public static String[] parseBySeparator(String line, char separator) throws IllegalArgumentException {
+    public static Iterator<String[]> parseRecordsBySeparator(Reader reader, char separator) throws IOException, IllegalArgumentException {
+        return parseRecordsBySeparator(reader, separator, null);
+    }
+
+    /**
+     * Streams the records of a file, keeping only the cells of the columns set in the given mask (all if null).
+     */
+    public static Iterator<String[]> parseRecordsBySeparator(Reader reader, char separator, boolean[] columns) throws IOException, IllegalArgumentException {
+        CSVFormat format;
         if (separator == ',') {
-            return parseCSV(line);
+            format = CSV_FORMAT;
         } else if (separator == '\t') {
-            return parseTSV(line);
+            format = TSV_FORMAT;
         } else {
             throw new IllegalArgumentException("currently supported separators are: <,>, <\t>");
         }
+        Iterator<CSVRecord> records = new CSVParser(reader, format).iterator();
+        // skip header
+        if (records.hasNext()) records.next();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public String[] next() {
+                return parse(records.next(), columns);
+            }
+        };
     }
 
-    public static String[] parseCSV(String line) {
+    public static String[] parseBySeparator(String line, char separator) throws IllegalArgumentException {
+        return parseBySeparator(line, separator, null);
+    }
+
+    /**
+     * Parses a line, decoding only the cells of the columns set in the given mask (all if null). Other cells are null.
+     */
+    public static String[] parseBySeparator(String line, char separator, boolean[] columns) throws IllegalArgumentException {
+        if (separator != ',' && separator != '\t') {
+            throw new IllegalArgumentException("currently supported separators are: <,>, <\t>");
+        }
         if (!line.isEmpty()) {
-            try {
-                CSVRecord csv = CSVParser.parse(line, CSV_FORMAT).getRecords().get(0);
-                return parse(csv);
-            } catch (IOException ioException) {
-                line = line.replace("\"", "");
-                try {
-                    CSVRecord csv = CSVParser.parse(line, CSV_FORMAT).getRecords().get(0);
-                    return parse(csv);
-                } catch (IOException ioException2) {
-                    //TODO LOG INTO ERRORS
-                    return new String[0];
-                }
-            }
+            return TOKENIZER.get().tokenize(line, separator, columns);
         } else {
             return new String[0];
         }
     }
 
+    public static String[] parseCSV(String line) {
+        return parseBySeparator(line, ',', null);
+    }
+
     public static String[] parseTSV(String line) {
-        if (!line.isEmpty()) {
-            try {
-                CSVRecord tsv = CSVParser.parse(line, TSV_FORMAT).getRecords().get(0);
-                return parse(tsv);
-            } catch (IOException ioException) {
-                line = line.replace("\"", "");
-                try {
-                    CSVRecord tsv = CSVParser.parse(line, TSV_FORMAT).getRecords().get(0);
-                    return parse(tsv);
-                } catch (IOException ioException2) {
-                    //TODO LOG INTO ERRORS
-                    return new String[0];
-                }
-            }
-        } else {
-            return new String[0];
-        }
+        return parseBySeparator(line, '\t', null);
     }
 
-    private static String[] parse(CSVRecord record) {
+    private static String[] parse(CSVRecord record, boolean[] columns) {
         String[] arr = new String[record.size()];
         for (int i = 0; i < record.size(); i++) {
+            if (columns != null && (i >= columns.length || !columns[i])) continue;
             arr[i] = record.get(i);
             if (arr[i] != null) {
                 if ((arr[i].equals("\\N") || arr[i].equalsIgnoreCase("null"))) arr[i] = null;
@@ -165,7 +177,8 @@ public class Util {
     }
 
     public static String escapeDoubleQuotes(String toFormat) {
-        return toFormat.replaceAll("\"", "\\\\\"");
+        if (toFormat.indexOf('"') < 0) return toFormat;
+        return toFormat.replace("\"", "\\\"");
     }
 
     public static void debug(String message,
@@ -235,6 +248,78 @@ public class Util {
         }
     }
 
+    public static Integer getMinRowsPerCommit(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        if (config != null) {
+            return Objects.requireNonNullElseGet(config.getMinRowsPerCommit(), () -> dc.getGlobalConfig().getMinRowsPerCommit());
+        } else {
+            return dc.getGlobalConfig().getMinRowsPerCommit();
+        }
+    }
+
+    public static Integer getMaxRowsPerCommit(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        if (config != null) {
+            return Objects.requireNonNullElseGet(config.getMaxRowsPerCommit(), () -> dc.getGlobalConfig().getMaxRowsPerCommit());
+        } else {
+            return dc.getGlobalConfig().getMaxRowsPerCommit();
+        }
+    }
+
+    public static int getRowsPerQuery(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        if (config != null) {
+            return Objects.requireNonNullElseGet(config.getRowsPerQuery(), () -> dc.getGlobalConfig().getRowsPerQuery());
+        } else {
+            return dc.getGlobalConfig().getRowsPerQuery();
+        }
+    }
+
+    public static int getCommitRetries(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        if (config != null) {
+            return Objects.requireNonNullElseGet(config.getCommitRetries(), () -> dc.getGlobalConfig().getCommitRetries());
+        } else {
+            return dc.getGlobalConfig().getCommitRetries();
+        }
+    }
+
+    public static int getMatchPipelineDepth(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        if (config != null) {
+            return Objects.requireNonNullElseGet(config.getMatchPipelineDepth(), () -> dc.getGlobalConfig().getMatchPipelineDepth());
+        } else {
+            return dc.getGlobalConfig().getMatchPipelineDepth();
+        }
+    }
+
+    public static int getPlayerLookupGroupSize(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        if (config != null) {
+            return Objects.requireNonNullElseGet(config.getPlayerLookupGroupSize(), () -> dc.getGlobalConfig().getPlayerLookupGroupSize());
+        } else {
+            return dc.getGlobalConfig().getPlayerLookupGroupSize();
+        }
+    }
+
+    public static int getKeyFilterSize(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        if (config != null) {
+            return Objects.requireNonNullElseGet(config.getKeyFilterSize(), () -> dc.getGlobalConfig().getKeyFilterSize());
+        } else {
+            return dc.getGlobalConfig().getKeyFilterSize();
+        }
+    }
+
+    public static double getKeyFilterFalsePositiveRate(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        if (config != null) {
+            return Objects.requireNonNullElseGet(config.getKeyFilterFalsePositiveRate(), () -> dc.getGlobalConfig().getKeyFilterFalsePositiveRate());
+        } else {
+            return dc.getGlobalConfig().getKeyFilterFalsePositiveRate();
+        }
+    }
+
+    public static int getMergeWindow(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        if (config != null) {
+            return Objects.requireNonNullElseGet(config.getMergeWindow(), () -> dc.getGlobalConfig().getMergeWindow());
+        } else {
+            return dc.getGlobalConfig().getMergeWindow();
+        }
+    }
+
     public static Character getSeparator(Configuration dc, Configuration.Generator.GeneratorConfig config) {
         if (config != null) {
             return Objects.requireNonNullElseGet(config.getSeparator(), () -> dc.getGlobalConfig().getSeparator());
@@ -242,4 +327,69 @@ public class Util {
             return dc.getGlobalConfig().getSeparator();
         }
     }
+
+    public static boolean getStreamingRead(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        Boolean streamingRead = dc.getGlobalConfig().getStreamingRead();
+        if (config != null && config.getStreamingRead() != null) {
+            streamingRead = config.getStreamingRead();
+        }
+        return streamingRead != null && streamingRead;
+    }
+
+    public static boolean getProjectColumns(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        Boolean projectColumns = dc.getGlobalConfig().getProjectColumns();
+        if (config != null && config.getProjectColumns() != null) {
+            projectColumns = config.getProjectColumns();
+        }
+        return projectColumns != null && projectColumns;
+    }
+
+    public static boolean getQueryTemplates(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        Boolean queryTemplates = dc.getGlobalConfig().getQueryTemplates();
+        if (config != null && config.getQueryTemplates() != null) {
+            queryTemplates = config.getQueryTemplates();
+        }
+        return queryTemplates != null && queryTemplates;
+    }
+
+    public static boolean getCaptureIIDs(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        Boolean captureIIDs = dc.getGlobalConfig().getCaptureIIDs();
+        if (config != null && config.getCaptureIIDs() != null) {
+            captureIIDs = config.getCaptureIIDs();
+        }
+        return captureIIDs != null && captureIIDs;
+    }
+
+    public static boolean getPrefetchPlayers(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        Boolean prefetchPlayers = dc.getGlobalConfig().getPrefetchPlayers();
+        if (config != null && config.getPrefetchPlayers() != null) {
+            prefetchPlayers = config.getPrefetchPlayers();
+        }
+        return prefetchPlayers != null && prefetchPlayers;
+    }
+
+    public static boolean getCoalesceAppends(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        Boolean coalesceAppends = dc.getGlobalConfig().getCoalesceAppends();
+        if (config != null && config.getCoalesceAppends() != null) {
+            coalesceAppends = config.getCoalesceAppends();
+        }
+        return coalesceAppends != null && coalesceAppends;
+    }
+
+    public static boolean getAdaptiveRowsPerCommit(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        Boolean adaptiveRowsPerCommit = dc.getGlobalConfig().getAdaptiveRowsPerCommit();
+        if (config != null && config.getAdaptiveRowsPerCommit() != null) {
+            adaptiveRowsPerCommit = config.getAdaptiveRowsPerCommit();
+        }
+        return adaptiveRowsPerCommit != null && adaptiveRowsPerCommit;
+    }
+
+    public static boolean getKeyFilterScan(Configuration dc, Configuration.Generator.GeneratorConfig config) {
+        Boolean keyFilterScan = dc.getGlobalConfig().getKeyFilterScan();
+        if (config != null && config.getKeyFilterScan() != null) {
+            keyFilterScan = config.getKeyFilterScan();
+        }
+        // without a scan the filter only knows the things inserted by the generator itself
+        return keyFilterScan == null || keyFilterScan;
+    }
 }
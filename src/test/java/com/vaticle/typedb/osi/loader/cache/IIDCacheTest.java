@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IIDCacheTest {
+
+    @Test
+    public void hitsAndMissesTest() {
+        IIDCache cache = new IIDCache(16);
+        Assert.assertNull(cache.get("person\u001fphone-number\u001e+1"));
+        cache.put("person\u001fphone-number\u001e+1", "0x826e80018000000000000001");
+        Assert.assertEquals("0x826e80018000000000000001", cache.get("person\u001fphone-number\u001e+1"));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedTest() {
+        IIDCache cache = new IIDCache(2);
+        cache.put("a", "0x1");
+        cache.put("b", "0x2");
+        cache.get("a");
+        cache.put("c", "0x3");
+        Assert.assertEquals("0x1", cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("0x3", cache.get("c"));
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void putIfAbsentTest() {
+        IIDCache cache = new IIDCache(16);
+        Assert.assertNull(cache.putIfAbsent("a", "0x1"));
+        Assert.assertEquals("0x1", cache.putIfAbsent("a", "0x2"));
+        cache.remove("a");
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void ambiguousKeysNotEvictedTest() {
+        IIDCache cache = new IIDCache(2);
+        cache.put("a", "0x1");
+        cache.markAmbiguous("a");
+        cache.put("b", "0x2");
+        cache.put("c", "0x3");
+        cache.put("d", "0x4");
+        Assert.assertNull(cache.putIfAbsent("a", "0x5"));
+        cache.put("a", "0x5");
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void segmentedCapacityTest() {
+        IIDCache cache = new IIDCache(64 * 1024);
+        for (int i = 0; i < 128 * 1024; i++) {
+            cache.put("key-" + i, "0x" + i);
+        }
+        Assert.assertTrue(cache.size() <= 64 * 1024);
+        Assert.assertEquals(128 * 1024 - cache.size(), cache.getEvictions());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.cache;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+public class IIDIndexTest {
+
+    private static final byte[] FINGERPRINT = IIDIndex.fingerprint("phone-calls", "define person sub entity;");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void putGetRemoveTest() throws IOException {
+        String path = folder.getRoot().getPath() + "/iid";
+        try (IIDIndex index = IIDIndex.open(path, FINGERPRINT, false)) {
+            Assert.assertNull(index.get("person\u001fphone-number\u001e+1"));
+            index.put("person\u001fphone-number\u001e+1", "0x826e80018000000000000001");
+            index.put("person\u001fphone-number\u001e+2", "0x826e80018000000000000002");
+            Assert.assertEquals("0x826e80018000000000000001", index.get("person\u001fphone-number\u001e+1"));
+            index.put("person\u001fphone-number\u001e+1", "0x826e80018000000000000003");
+            Assert.assertEquals("0x826e80018000000000000003", index.get("person\u001fphone-number\u001e+1"));
+            index.remove("person\u001fphone-number\u001e+1");
+            Assert.assertNull(index.get("person\u001fphone-number\u001e+1"));
+            Assert.assertEquals("0x826e80018000000000000002", index.get("person\u001fphone-number\u001e+2"));
+            Assert.assertEquals(1, index.size());
+        }
+    }
+
+    @Test
+    public void reopenTest() throws IOException {
+        String path = folder.getRoot().getPath() + "/iid";
+        try (IIDIndex index = IIDIndex.open(path, FINGERPRINT, false)) {
+            index.put("a", "0x1");
+        }
+        try (IIDIndex index = IIDIndex.open(path, FINGERPRINT, false)) {
+            Assert.assertEquals("0x1", index.get("a"));
+            Assert.assertEquals(1, index.sample(16).size());
+        }
+        try (IIDIndex index = IIDIndex.open(path, IIDIndex.fingerprint("phone-calls", "define person sub entity, owns name;"), false)) {
+            Assert.assertNull(index.get("a"));
+        }
+        try (IIDIndex index = IIDIndex.open(path, FINGERPRINT, false)) {
+            Assert.assertNull(index.get("a"));
+            index.put("b", "0x2");
+        }
+        try (IIDIndex index = IIDIndex.open(path, FINGERPRINT, true)) {
+            Assert.assertNull(index.get("b"));
+        }
+    }
+
+    @Test
+    public void uncleanIndexDiscardedTest() throws IOException {
+        String path = folder.getRoot().getPath() + "/iid";
+        IIDIndex unclosed = IIDIndex.open(path, FINGERPRINT, false);
+        unclosed.put("a", "0x1");
+        try (IIDIndex index = IIDIndex.open(path, FINGERPRINT, false)) {
+            Assert.assertNull(index.get("a"));
+        }
+    }
+
+    @Test
+    public void indexClosedUncleanDiscardedTest() throws IOException {
+        String path = folder.getRoot().getPath() + "/iid";
+        IIDIndex failed = IIDIndex.open(path, FINGERPRINT, false);
+        failed.put("a", "0x1");
+        failed.close(false);
+        try (IIDIndex index = IIDIndex.open(path, FINGERPRINT, false)) {
+            Assert.assertNull(index.get("a"));
+            index.put("b", "0x2");
+        }
+        try (IIDIndex index = IIDIndex.open(path, FINGERPRINT, false)) {
+            Assert.assertEquals("0x2", index.get("b"));
+        }
+    }
+
+    @Test
+    public void resizeTest() throws IOException {
+        String path = folder.getRoot().getPath() + "/iid";
+        int keys = 1_000_000;
+        try (IIDIndex index = IIDIndex.open(path, FINGERPRINT, false)) {
+            for (int i = 0; i < keys; i++) {
+                index.put("person\u001fid\u001e" + i, "0x" + Integer.toHexString(i));
+            }
+            Assert.assertEquals(keys, index.size());
+        }
+        try (IIDIndex index = IIDIndex.open(path, FINGERPRINT, false)) {
+            Assert.assertEquals(keys, index.size());
+            for (int i = 0; i < keys; i += 997) {
+                Assert.assertEquals("0x" + Integer.toHexString(i), index.get("person\u001fid\u001e" + i));
+            }
+            Assert.assertNull(index.get("person\u001fid\u001e" + keys));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KeyFilterTest {
+
+    @Test
+    public void noFalseNegativesTest() {
+        KeyFilter filter = new KeyFilter(1 << 16, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("person\u001fphone-number\u001e+" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(filter.mightContain("person\u001fphone-number\u001e+" + i));
+        }
+        Assert.assertEquals(10000, filter.getAdded());
+        Assert.assertEquals(10000, filter.getHits());
+        Assert.assertEquals(0, filter.getMisses());
+    }
+
+    @Test
+    public void falsePositiveRateTest() {
+        KeyFilter filter = new KeyFilter(1 << 16, 0.01);
+        long capacity = filter.getCapacity();
+        for (int i = 0; i < capacity; i++) {
+            filter.add("person\u001fphone-number\u001e+" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("person\u001fphone-number\u001e-" + i)) falsePositives++;
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 2000);
+        Assert.assertEquals(100000 - falsePositives, filter.getMisses());
+    }
+}
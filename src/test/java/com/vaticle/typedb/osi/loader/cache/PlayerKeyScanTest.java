@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.cache;
+
+import com.vaticle.typedb.osi.loader.config.Configuration;
+import com.vaticle.typedb.osi.loader.util.Util;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PlayerKeyScanTest {
+
+    @Test
+    public void playerKeyQueryTest() {
+        Configuration dc = Util.initializeConfig(new File("src/test/resources/phoneCalls/config.json").getAbsolutePath());
+        assert dc != null;
+        Configuration.Definition.Player caller = dc.getRelations().get("call").getInsert().getPlayers()[0];
+        PlayerKeyScan scan = new PlayerKeyScan(caller.getMatch().getType(), caller.getMatch().getOwnerships());
+
+        Assert.assertEquals("person phone-number", scan.id());
+        Assert.assertEquals("match $x isa person, has phone-number $k0; get $x, $k0;", scan.query());
+
+        List<List<List<Object>>> oneKey = Collections.singletonList(Collections.singletonList(Collections.singletonList("+54 398 559 0423")));
+        Assert.assertEquals("match $x isa person, has phone-number $k0; $k0 == \"+54 398 559 0423\"; get $x, $k0;",
+                scan.query(oneKey));
+
+        List<List<List<Object>>> twoKeys = Arrays.asList(
+                Collections.singletonList(Collections.singletonList("+54 398 559 0423")),
+                Collections.singletonList(Collections.singletonList("+7 171 898 0853")));
+        Assert.assertEquals("match $x isa person, has phone-number $k0; { $k0 == \"+54 398 559 0423\"; } or { $k0 == \"+7 171 898 0853\"; }; get $x, $k0;",
+                scan.query(twoKeys));
+    }
+
+    @Test
+    public void partitionTest() {
+        Configuration dc = Util.initializeConfig(new File("src/test/resources/phoneCalls/config.json").getAbsolutePath());
+        assert dc != null;
+        Configuration.Definition.Player caller = dc.getRelations().get("call").getInsert().getPlayers()[0];
+        PlayerKeyScan scan = new PlayerKeyScan(caller.getMatch().getType(), caller.getMatch().getOwnerships());
+
+        Assert.assertEquals("match $x isa person, has phone-number $k0; $k0 >= 10; $k0 < 20; get $x, $k0;", scan.range(10L, 20L).query());
+        Assert.assertEquals("match $x isa person, has phone-number $k0; $k0 < 2.5; get $x, $k0;", scan.range(null, 2.5).query());
+
+        Assert.assertEquals(Arrays.asList(25L, 50L, 75L), PlayerKeyScan.bounds(0, 100, 4, true));
+        Assert.assertEquals(Collections.singletonList(1L), PlayerKeyScan.bounds(0, 1, 4, true));
+        Assert.assertEquals(Collections.emptyList(), PlayerKeyScan.bounds(7, 7, 4, true));
+        Assert.assertEquals(Arrays.asList(0.5, 1.0, 1.5), PlayerKeyScan.bounds(0, 2, 4, false));
+    }
+}
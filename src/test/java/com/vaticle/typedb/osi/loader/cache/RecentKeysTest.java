@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class RecentKeysTest {
+
+    @Test
+    public void recordsNewValuesTest() {
+        RecentKeys recentKeys = new RecentKeys(16);
+        Assert.assertNull(recentKeys.record("person\u001fphone-number\u001e+1", List.of("first-name\u001eJimmy")));
+        Assert.assertEquals(List.of(), recentKeys.record("person\u001fphone-number\u001e+1", List.of("first-name\u001eJimmy")));
+        Assert.assertEquals(List.of("age\u001e43"), recentKeys.record("person\u001fphone-number\u001e+1", List.of("first-name\u001eJimmy", "age\u001e43")));
+        Assert.assertEquals(1, recentKeys.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedTest() {
+        RecentKeys recentKeys = new RecentKeys(2);
+        recentKeys.record("a", List.of("x"));
+        recentKeys.record("b", List.of("x"));
+        recentKeys.record("a", List.of("x"));
+        recentKeys.record("c", List.of("x"));
+        Assert.assertNotNull(recentKeys.record("a", List.of("x")));
+        Assert.assertNull(recentKeys.record("b", List.of("x")));
+        Assert.assertEquals(2, recentKeys.size());
+    }
+
+    @Test
+    public void removesRolledBackValuesTest() {
+        RecentKeys recentKeys = new RecentKeys(16);
+        recentKeys.record("a", List.of("x"));
+        recentKeys.record("a", List.of("x", "y"));
+        recentKeys.remove("a", List.of("y"));
+        Assert.assertEquals(List.of("y"), recentKeys.record("a", List.of("x", "y")));
+        recentKeys.remove("a", List.of("x", "y"));
+        Assert.assertEquals(0, recentKeys.size());
+        Assert.assertNull(recentKeys.record("a", List.of("x")));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.cache;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+public class ValueSetTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void addsEachValueOnceTest() throws IOException {
+        try (ValueSet values = new ValueSet(16, folder.getRoot())) {
+            Assert.assertTrue(values.add(ValueSet.key("name", "Jimmy")));
+            Assert.assertTrue(values.add(ValueSet.key("nick-name", "Jimmy")));
+            Assert.assertFalse(values.add(ValueSet.key("name", "Jimmy")));
+            Assert.assertEquals(2, values.getAdded());
+            Assert.assertEquals(1, values.getDuplicates());
+        }
+    }
+
+    @Test
+    public void spillsBeyondHeapSizeTest() throws IOException {
+        try (ValueSet values = new ValueSet(100, folder.getRoot())) {
+            for (long i = 0; i < 10000; i++) {
+                Assert.assertTrue(values.add(ValueSet.key("call-duration", i)));
+            }
+            for (long i = 0; i < 10000; i++) {
+                Assert.assertFalse(values.add(ValueSet.key("call-duration", i)));
+            }
+            values.remove(ValueSet.key("call-duration", 5L));
+            values.remove(ValueSet.key("call-duration", 5000L));
+            Assert.assertTrue(values.add(ValueSet.key("call-duration", 5L)));
+            Assert.assertTrue(values.add(ValueSet.key("call-duration", 5000L)));
+        }
+        Assert.assertEquals(0, folder.getRoot().listFiles().length);
+    }
+}
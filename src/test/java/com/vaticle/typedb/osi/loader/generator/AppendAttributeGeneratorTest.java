@@ -18,7 +18,9 @@ package com.vaticle.typedb.osi.loader.generator;
 
 import com.vaticle.typedb.driver.api.TypeDBDriver;
 import com.vaticle.typedb.driver.api.TypeDBSession;
+import com.vaticle.typedb.driver.api.TypeDBTransaction;
 import com.vaticle.typedb.osi.loader.config.Configuration;
+import com.vaticle.typedb.osi.loader.io.FileLogger;
 import com.vaticle.typedb.osi.loader.util.TypeDBUtil;
 import com.vaticle.typedb.osi.loader.util.Util;
 import com.vaticle.typeql.lang.TypeQL;
@@ -28,6 +30,8 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -65,6 +69,65 @@ public class AppendAttributeGeneratorTest {
         testCallAppend(dc, appendKeys);
     }
 
+    @Test
+    public void phoneCallsCoalescedAppendTest() throws IOException {
+        String dbName = "append-attribute-generator-coalesce-test";
+        String sp = new File("src/test/resources/phoneCalls/schema.gql").getAbsolutePath();
+        TypeDBDriver driver = TypeDBUtil.getCoreDriver("localhost:1729");
+        TypeDBUtil.cleanAndDefineSchemaToDatabase(driver, dbName, sp);
+
+        String dcp = new File("src/test/resources/phoneCalls/config.json").getAbsolutePath();
+        Configuration dc = Util.initializeConfig(dcp);
+        assert dc != null;
+        Configuration.Generator.AppendAttribute appendTwitter = dc.getAppendAttribute().get("append-twitter");
+        TypeDBSession session = TypeDBUtil.getDataSession(driver, dbName);
+        Util.setConstrainingAttributeConceptType(appendTwitter.getInsert().getOwnerships(), session);
+        Util.setConstrainingAttributeConceptType(appendTwitter.getMatch().getOwnerships(), session);
+        try (TypeDBTransaction tx = session.transaction(TypeDBTransaction.Type.WRITE)) {
+            tx.query().insert(TypeQL.parseQuery("insert $p isa person, has phone-number \"+7 171 898 0853\";").asInsert());
+            tx.query().insert(TypeQL.parseQuery("insert $p isa person, has phone-number \"+263 498 495 0617\";").asInsert());
+            tx.commit();
+        }
+
+        String dp = new File("src/test/resources/phoneCalls/append-twitter-nickname.csv").getAbsolutePath();
+        AppendAttributeGenerator gen = new AppendAttributeGenerator(dp, appendTwitter, appendTwitter.getConfig().getSeparator(), true);
+
+        // a group of rows matching the same person: one match, one insert of the distinct values
+        List<String[]> group = List.of(Util.parseCSV("+7 171 898 0853,@jojo,another"), Util.parseCSV("+7 171 898 0853,@jojo###@jo,another"));
+        TypeQLInsert tmp = TypeQL.parseQuery("match $thing isa person, has phone-number \"+7 171 898 0853\";\n" +
+                "insert $thing has twitter-username \"@jojo\", has nick-name \"another\", has twitter-username \"@jo\";").asInsert();
+        Assert.assertEquals(tmp, gen.bindGroupMatchInsertStatement(group));
+
+        List<String[]> rows = List.of(
+                Util.parseCSV("+7 171 898 0853,@jojo,another"),
+                Util.parseCSV("+7 171 898 0853,,coalesced-invalid"),
+                Util.parseCSV("+7 171 898 0853,@jojo###@jo,another"),
+                Util.parseCSV("+263 498 495 0617,@hui,"),
+                Util.parseCSV("+81 308 988 7153,@coalesced-no-match-1,"),
+                Util.parseCSV("+81 308 988 7153,@coalesced-no-match-2,"));
+        try (TypeDBTransaction tx = session.transaction(TypeDBTransaction.Type.WRITE)) {
+            gen.write(tx, rows, false);
+            tx.commit();
+        }
+
+        try (TypeDBTransaction read = session.transaction(TypeDBTransaction.Type.READ)) {
+            Assert.assertEquals(2, read.query().get(TypeQL.parseQuery("match $p isa person, has phone-number \"+7 171 898 0853\", has twitter-username $t; get $t;").asGet()).count());
+            Assert.assertEquals(1, read.query().get(TypeQL.parseQuery("match $p isa person, has phone-number \"+7 171 898 0853\", has nick-name $n; get $n;").asGet()).count());
+            Assert.assertEquals(1, read.query().get(TypeQL.parseQuery("match $p isa person, has phone-number \"+263 498 495 0617\", has twitter-username \"@hui\"; get $p;").asGet()).count());
+        }
+        session.close();
+        driver.close();
+
+        // the invalid row is logged on its own, and every row of the group that matched nothing is logged
+        String logDirectory = FileLogger.getLogger().getDirectory();
+        List<String> invalid = Files.readAllLines(Path.of(logDirectory, "append-twitter-nickname_invalid.log"));
+        Assert.assertTrue(invalid.contains("+7 171 898 0853,,coalesced-invalid"));
+        Assert.assertFalse(invalid.contains("+7 171 898 0853,@jojo,another"));
+        List<String> noMatches = Files.readAllLines(Path.of(logDirectory, "append-twitter-nickname_no_matches.log"));
+        Assert.assertTrue(noMatches.contains("+81 308 988 7153,@coalesced-no-match-1,"));
+        Assert.assertTrue(noMatches.contains("+81 308 988 7153,@coalesced-no-match-2,"));
+    }
+
     private void testTwitter(Configuration dc, ArrayList<String> appendKeys) throws IOException {
         String dp = new File("src/test/resources/phoneCalls/append-twitter-nickname.csv").getAbsolutePath();
         AppendAttributeGenerator gen = new AppendAttributeGenerator(dp,
@@ -72,63 +135,73 @@ public class AppendAttributeGeneratorTest {
                 Objects.requireNonNullElseGet(dc.getAppendAttribute().get(appendKeys.get(0)).getConfig().getSeparator(), () -> dc.getGlobalConfig().getSeparator()));
         Iterator<String> iterator = Util.newBufferedReader(dp).lines().skip(1).iterator();
 
-        TypeQLInsert statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        String[] row = Util.parseCSV(iterator.next());
+        TypeQLInsert statement = gen.generateMatchInsertStatement(row);
         TypeQLInsert tmp = TypeQL.parseQuery("match $thing isa person, has phone-number \"+7 171 898 0853\";\n" +
                 "insert $thing has twitter-username \"@jojo\", has nick-name \"another\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $thing isa person, has phone-number \"+263 498 495 0617\";\n" +
                 "insert $thing has twitter-username \"@hui\", has twitter-username \"@bui\", has nick-name \"yetanoter\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $thing isa person, has phone-number \"+370 351 224 5176\";\n" +
                 "insert $thing has twitter-username \"@lalulix\", has nick-name \"one more\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $thing isa person, has phone-number \"+81 308 988 7153\";\n" +
                 "insert $thing has twitter-username \"@go34\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $thing isa person, has phone-number \"+54 398 559 0423\";\n" +
                 "insert $thing has twitter-username \"@hadaaa\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $thing isa person, has phone-number \"+7 690 597 4443\";\n" +
                 "insert $thing has nick-name \"not inserted\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $thing isa person, has phone-number \"+63 815 962 6097\";\n" +
                 "insert $thing has twitter-username \"@kuka\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $null isa null, has null \"null\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $thing isa person;\n" +
                 "insert $thing has twitter-username \"@notinserted\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $null isa null, has null \"null\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
     }
 
@@ -139,31 +212,35 @@ public class AppendAttributeGeneratorTest {
                 Objects.requireNonNullElseGet(dc.getAppendAttribute().get(appendKeys.get(1)).getConfig().getSeparator(), () -> dc.getGlobalConfig().getSeparator()));
         Iterator<String> iterator = Util.newBufferedReader(dp).lines().skip(1).iterator();
 
-        TypeQLInsert statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        String[] row = Util.parseCSV(iterator.next());
+        TypeQLInsert statement = gen.generateMatchInsertStatement(row);
         TypeQLInsert tmp = TypeQL.parseQuery("match $thing isa person, has phone-number \"+36 318 105 5629\";\n" +
                 "insert $thing has fakebook-link \"fakebook.com/personOne\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
         iterator.next();
         iterator.next();
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $thing isa person, has phone-number \"+62 533 266 3426\";\n" +
                 "insert $thing has fakebook-link \"insertedWithoutAppliedRegex\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $thing isa person;\n" +
                 "insert $thing has fakebook-link \"@notinserted\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $null isa null, has null \"null\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
     }
 
     private void testCallAppend(Configuration dc, ArrayList<String> appendKeys) throws IOException {
@@ -173,26 +250,29 @@ public class AppendAttributeGeneratorTest {
                 Objects.requireNonNullElseGet(dc.getAppendAttribute().get(appendKeys.get(2)).getConfig().getSeparator(), () -> dc.getGlobalConfig().getSeparator()));
         Iterator<String> iterator = Util.newBufferedReader(dp).lines().skip(1).iterator();
 
-        TypeQLInsert statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        String[] row = Util.parseCSV(iterator.next());
+        TypeQLInsert statement = gen.generateMatchInsertStatement(row);
         TypeQLInsert tmp = TypeQL.parseQuery("match $thing isa call, has started-at 2018-09-19T01:00:38;\n" +
                 "insert $thing has call-rating 5;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
         iterator.next();
         iterator.next();
         iterator.next();
         iterator.next();
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $null isa null, has null \"null\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $thing isa call;\n" +
                 "insert $thing has call-rating 4;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
     }
 }
@@ -74,22 +74,22 @@ public class AppendAttributeOrInsertThingGeneratorTest {
         TypeQLInsert tmp = TypeQL.parseQuery("match $thing isa person, has phone-number \"+7 171 898 0853\";\n" +
                 "insert $thing has first-name \"Melli\", has last-name \"Winchcum\", has city \"London\", has age 55, has nick-name \"Mel\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
         statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+7 171 898 0853\", has first-name \"Melli\", has last-name \"Winchcum\", has city \"London\", has age 55, has nick-name \"Mel\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.thingInsertStatementValid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
         row = Util.parseCSV(iterator.next());
         statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $thing isa person;\n" +
                 "insert $thing has first-name \"Sakura\", has city \"Fire Village\", has age 13;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
         statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has first-name \"Sakura\", has city \"Fire Village\", has age 13;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.thingInsertStatementValid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
         iterator.next();
 
@@ -98,11 +98,11 @@ public class AppendAttributeOrInsertThingGeneratorTest {
         tmp = TypeQL.parseQuery("match $thing isa person, has phone-number \"+62 107 666 3334\";\n" +
                 "insert $thing has first-name \"Sasuke\", has city \"Fire Village\", has age 13;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
         statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+62 107 666 3334\", has first-name \"Sasuke\", has city \"Fire Village\", has age 13;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.thingInsertStatementValid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
         iterator.next();
         iterator.next();
@@ -112,11 +112,11 @@ public class AppendAttributeOrInsertThingGeneratorTest {
         tmp = TypeQL.parseQuery("match $thing isa person, has phone-number \"+62 107 321 3333\";\n" +
                 "insert $thing has first-name \"Missing\", has last-name \"Age\", has city \"notinsertcity\", has nick-name \"notinsertnickname\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.appendAttributeInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
         statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+62 107 321 3333\", has first-name \"Missing\", has last-name \"Age\", has city \"notinsertcity\", has nick-name \"notinsertnickname\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.thingInsertStatementValid(statement));
+        Assert.assertFalse(gen.isThingInsertValid(row));
 
 
     }
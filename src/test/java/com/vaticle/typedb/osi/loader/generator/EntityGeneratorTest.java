@@ -225,188 +225,257 @@ public class EntityGeneratorTest {
 
         Iterator<String> iterator = Util.newBufferedReader(dp).lines().skip(1).iterator();
 
-        TypeQLInsert statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        String[] row = Util.parseCSV(iterator.next());
+        TypeQLInsert statement = gen.generateThingInsertStatement(row);
         TypeQLInsert tmp = TypeQL.parseQuery("insert $e isa person, has first-name \"Melli\", has last-name \"Winchcum\", has phone-number \"+7 171 898 0853\", has city \"London\", has age 55;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has first-name \"Celinda\", has last-name \"Bonick\", has phone-number \"+370 351 224 5176\", has city \"London\", has age 52;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has first-name \"Chryste\", has last-name \"Lilywhite\", has phone-number \"+81 308 988 7153\", has city \"London\", has age 66;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has first-name \"D'arcy\", has last-name \"Byfford\", has phone-number \"+54 398 559 0423\", has city \"London\", has age 19, has nick-name \"D\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has first-name \"Xylina\", has last-name \"D'Alesco\", has phone-number \"+7 690 597 4443\", has city \"Cambridge\", has age 51;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has first-name \"Roldan\", has last-name \"Cometti\", has phone-number \"+263 498 495 0617\", has city \"Oxford\", has age 59, has nick-name \"Rolly\", has nick-name \"Rolli\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has first-name \"Cob\", has last-name \"Lafflin\", has phone-number \"+63 815 962 6097\", has city \"Cambridge\", has age 56;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has first-name \"Olag\", has last-name \"Heakey\", has phone-number \"+81 746 154 2598\", has city \"London\", has age 45;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has first-name \"Mandie\", has last-name \"Assender\", has phone-number \"+261 860 539 4754\", has city \"London\", has age 18;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has first-name \"Elenore\", has last-name \"Stokey\", has phone-number \"+62 107 530 7500\", has city \"Oxford\", has age 35;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+86 921 547 9004\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+48 894 777 5173\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+86 922 760 0418\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+33 614 339 0298\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+30 419 575 7546\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+7 414 625 3019\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+57 629 420 5680\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+351 515 605 7915\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+36 318 105 5629\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+63 808 497 1769\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+62 533 266 3426\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+351 272 414 6570\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+86 825 153 5518\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+86 202 257 8619\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+27 117 258 4149\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+48 697 447 6933\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+48 195 624 2025\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+1 254 875 4647\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+7 552 196 4096\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has phone-number \"+86 892 682 0628\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has first-name \"John\", has last-name \"Smith\", has phone-number \"+62 999 888 7777\", has city \"London\", has age 43, has nick-name \"Jack\", has nick-name \"J\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has first-name \"Jane\", has last-name \"Smith\", has phone-number \"+62 999 888 7778\", has city \"London\", has age 43;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.valid(statement));
+        Assert.assertTrue(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $null isa null, has null \"null\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.valid(statement));
+        Assert.assertFalse(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has age 23;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.valid(statement));
+        Assert.assertFalse(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person, has age 23;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.valid(statement));
+        Assert.assertFalse(gen.isThingInsertValid(row));
 
-        statement = gen.generateThingInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateThingInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $e isa person;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.valid(statement));
+        Assert.assertFalse(gen.isThingInsertValid(row));
 
     }
 
+    @Test
+    public void phoneCallsPersonTemplateTest() throws IOException {
+        String dbName = "entity-generator-test";
+        String sp = new File("src/test/resources/phoneCalls/schema.gql").getAbsolutePath();
+        TypeDBDriver driver = TypeDBUtil.getCoreDriver("localhost:1729");
+        TypeDBUtil.cleanAndDefineSchemaToDatabase(driver, dbName, sp);
+
+        String dp = new File("src/test/resources/phoneCalls/person.csv").getAbsolutePath();
+        String dcp = new File("src/test/resources/phoneCalls/config.json").getAbsolutePath();
+        Configuration dc = Util.initializeConfig(dcp);
+        assert dc != null;
+        String entityKey = "person";
+        TypeDBSession session = TypeDBUtil.getDataSession(driver, dbName);
+        for (int idx = 0; idx < dc.getEntities().get(entityKey).getInsert().getOwnerships().length; idx++) {
+            setEntityHasAttributeConceptType(entityKey, idx, dc, session);
+        }
+        EntityGenerator gen = new EntityGenerator(dp,
+                dc.getEntities().get(entityKey),
+                Objects.requireNonNullElseGet(dc.getEntities().get(entityKey).getConfig().getSeparator(), () -> dc.getGlobalConfig().getSeparator()),
+                true, 1);
+
+        session.close();
+        driver.close();
+
+        // the query rendered from the template is the query built by the query builder
+        Iterator<String> iterator = Util.newBufferedReader(dp).lines().skip(1).iterator();
+        while (iterator.hasNext()) {
+            String[] row = Util.parseCSV(iterator.next());
+            TypeQLInsert templated = TypeQL.parseQuery(gen.generateThingInsertQuery(row)).asInsert();
+            Assert.assertEquals(gen.generateThingInsertStatement(row), templated);
+        }
+    }
+
     private void setEntityHasAttributeConceptType(String entityKey, int attributeIndex, Configuration dc, TypeDBSession session) {
         dc.getEntities().get(entityKey).getInsert().getOwnerships()[attributeIndex].setConceptValueType(session);
     }
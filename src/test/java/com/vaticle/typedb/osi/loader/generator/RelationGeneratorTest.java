@@ -67,196 +67,218 @@ public class RelationGeneratorTest {
                 Objects.requireNonNullElseGet(dc.getRelations().get(relationKeys.get(0)).getConfig().getSeparator(), () -> dc.getGlobalConfig().getSeparator()));
         Iterator<String> iterator = Util.newBufferedReader(dp).lines().skip(1).iterator();
 
-        TypeQLInsert statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        String[] row = Util.parseTSV(iterator.next());
+        TypeQLInsert statement = gen.generateMatchInsertStatement(row);
         TypeQLInsert tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1, has relAt-1 \"att0\", has relAt-1 \"explosion0\", has relAt-2 \"opt0\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1, has relAt-1 \"att1\", has relAt-1 \"explosion1\", has relAt-1 \"explo1\", has relAt-2 \"opt1\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1, has relAt-1 \"att2\", has relAt-2 \"opt2\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1, has relAt-1 \"att3\", has relAt-2 \"opt3\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1, has relAt-1 \"att4\", has relAt-2 \"opt4\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1, has relAt-1 \"att5\", has relAt-2 \"opt5\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1, has relAt-1 \"att6\", has relAt-2 \"opt6\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1, has relAt-1 \"att7\", has relAt-2 \"opt7\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1, has relAt-1 \"att8\", has relAt-2 \"opt8\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1, has relAt-1 \"att9\", has relAt-2 \"opt9\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1, has relAt-1 \"att10\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1) isa rel1, has relAt-1 \"att19\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1) isa rel1, has relAt-1 \"att20\", has relAt-2 \"opt20\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1) isa rel1, has relAt-1 \"att21\", has relAt-1 \"explosion21\", has relAt-2 \"optional21\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1, has relAt-1 \"att22\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1, has relAt-2 \"opt25\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-1 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-two: $player-0, player-optional: $player-1) isa rel1, has relAt-1 \"att34\", has relAt-2 \"opt33\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\";\n" +
                 "$player-1 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-optional: $player-1) isa rel1, has relAt-1 \"att37\", has relAt-2 \"opt36\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\", has entity1-id \"entity1id2\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-2 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1, player-optional: $player-2) isa rel1, has relAt-1 \"att39\", has relAt-2 \"opt39\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity1, has entity1-id \"entity1id1\", has entity1-id \"entity1id2\";\n" +
                 "$player-1 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "insert $rel (player-one: $player-0, player-two: $player-1) isa rel1, has relAt-1 \"att40\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseTSV(iterator.next()));
+        row = Util.parseTSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa entity2, has entity2-id \"entity2id1\";\n" +
                 "$player-1 isa entity3, has entity3-id \"entity3id1\";\n" +
                 "insert $rel (player-two: $player-0, player-optional: $player-1) isa rel1, has relAt-1 \"att41\", has relAt-2 \"opt41\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
     }
 
@@ -305,53 +327,59 @@ public class RelationGeneratorTest {
                 Objects.requireNonNullElseGet(dc.getRelations().get(relationKeys.get(0)).getConfig().getSeparator(), () -> dc.getGlobalConfig().getSeparator()));
         Iterator<String> iterator = Util.newBufferedReader(dp).lines().skip(1).iterator();
 
-        TypeQLInsert statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        String[] row = Util.parseCSV(iterator.next());
+        TypeQLInsert statement = gen.generateMatchInsertStatement(row);
         TypeQLInsert tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa company, has name \"Telecom\";\n" +
                 "$player-1 isa person, has phone-number \"+7 171 898 0853\";\n" +
                 "insert $rel (provider: $player-0, customer: $player-1) isa contract;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
         for (int i = 0; i < 7; i++) {
             iterator.next();
         }
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $null isa null, has null \"null\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
         iterator.next();
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $player-0 isa person, has phone-number \"+261 860 539 4754\";\n" +
                 "insert $rel (customer: $player-0) isa contract;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $player-0 isa company, has name \"Telecom\";\n" +
                 "insert $rel (provider: $player-0) isa contract;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
         for (int i = 0; i < 3; i++) {
             iterator.next();
         }
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa company, has name \"Telecom\";\n" +
                 "$player-1 isa person, has phone-number \"+62 107 530 7500\", has phone-number \"+261 860 539 4754\";\n" +
                 "insert $rel (provider: $player-0, customer: $player-1) isa contract;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $null isa null, has null \"null\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
     }
 
     private void testCalls(Configuration dc, ArrayList<String> relationKeys) throws IOException {
@@ -362,70 +390,78 @@ public class RelationGeneratorTest {
                 Objects.requireNonNullElseGet(dc.getRelations().get(relationKeys.get(1)).getConfig().getSeparator(), () -> dc.getGlobalConfig().getSeparator()));
         Iterator<String> iterator = Util.newBufferedReader(dp).lines().skip(1).iterator();
 
-        TypeQLInsert statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        String[] row = Util.parseCSV(iterator.next());
+        TypeQLInsert statement = gen.generateMatchInsertStatement(row);
         TypeQLInsert tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+54 398 559 0423\";\n" +
                 "$player-1 isa person, has phone-number \"+48 195 624 2025\";\n" +
                 "insert $rel (caller: $player-0, callee: $player-1) isa call, has started-at 2018-09-16T22:24:19, has duration 122;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
         for (int i = 0; i < 112; i++) {
             iterator.next();
         }
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+63 815 962 6097\";\n" +
                 "$player-1 isa person, has phone-number \"+263 498 495 0617\";\n" +
                 "insert $rel (caller: $player-0, callee: $player-1) isa call, has started-at 2018-09-19T23:16:49;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
         for (int i = 0; i < 98; i++) {
             iterator.next();
         }
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+63 815 962 6097\";\n" +
                 "$player-1 isa person, has phone-number \"+7 552 196 4096\";\n" +
                 "insert $rel (caller: $player-0, callee: $player-1) isa call, has started-at 2018-09-23T01:14:56;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+63 815 962 6097\";\n" +
                 "$player-1 isa person, has phone-number \"+7 552 196 4096\";\n" +
                 "insert $rel (caller: $player-0, callee: $player-1) isa call, has started-at 2018-09-23T01:14:56;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+63 815 962 6097\";\n" +
                 "$player-1 isa person, has phone-number \"+7 552 196 4096\";\n" +
                 "insert $rel (caller: $player-0, callee: $player-1) isa call, has duration 53;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $player-0 isa person, has phone-number \"+63 815 962 6097\";\n" +
                 "insert $rel (caller: $player-0) isa call, has started-at 2018-09-23T01:14:56, has duration 53;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $null isa null, has null \"null\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $player-0 isa person, has phone-number \"+7 552 196 4096\";\n" +
                 "insert $rel (callee: $player-0) isa call, has started-at 2018-09-23T01:14:56, has duration 53;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
     }
 
     private void testInUse(Configuration dc, ArrayList<String> relationKeys) throws IOException {
@@ -435,32 +471,35 @@ public class RelationGeneratorTest {
                 Objects.requireNonNullElseGet(dc.getRelations().get(relationKeys.get(2)).getConfig().getSeparator(), () -> dc.getGlobalConfig().getSeparator()));
         Iterator<String> iterator = Util.newBufferedReader(dp).lines().skip(1).iterator();
 
-        TypeQLInsert statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        String[] row = Util.parseCSV(iterator.next());
+        TypeQLInsert statement = gen.generateMatchInsertStatement(row);
         TypeQLInsert tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 \"yes\" isa is-in-use;\n" +
                 "$player-1 \"+7 171 898 0853\" isa phone-number;\n" +
                 "insert $rel (status: $player-0, account: $player-1) isa in-use;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
         for (int i = 0; i < 4; i++) {
             iterator.next();
         }
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $null isa null, has null \"null\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
         for (int i = 0; i < 2; i++) {
             iterator.next();
         }
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $player-0 \"+62 107 530 7500\" isa phone-number;\n" +
                 "insert $rel (account: $player-0) isa in-use;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
 
     }
@@ -472,93 +511,105 @@ public class RelationGeneratorTest {
                 Objects.requireNonNullElseGet(dc.getRelations().get(relationKeys.get(3)).getConfig().getSeparator(), () -> dc.getGlobalConfig().getSeparator()));
         Iterator<String> iterator = Util.newBufferedReader(dp).lines().skip(1).iterator();
 
-        TypeQLInsert statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        String[] row = Util.parseCSV(iterator.next());
+        TypeQLInsert statement = gen.generateMatchInsertStatement(row);
         TypeQLInsert tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+54 398 559 0423\";\n" +
                 "$player-1 isa person, has phone-number \"+48 195 624 2025\";\n" +
                 "$player-2 isa call, has started-at 2018-09-16T22:24:19;\n" +
                 "insert $rel (peer: $player-0, peer: $player-1, past-call: $player-2) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+263 498 495 0617\";\n" +
                 "$player-1 isa person, has phone-number \"+33 614 339 0298\";\n" +
                 "$player-2 isa call, has started-at 2018-09-11T22:10:34, has started-at 2018-09-12T22:10:34, has started-at 2018-09-13T22:10:34, has started-at 2018-09-14T22:10:34, has started-at 2018-09-15T22:10:34, has started-at 2018-09-16T22:10:34;\n" +
                 "insert $rel (peer: $player-0, peer: $player-1, past-call: $player-2) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+263 498 495 0617\";\n" +
                 "$player-1 isa person, has phone-number \"+33 614 339 0298\";\n" +
                 "$player-2 isa call, has started-at 2018-09-11T22:10:34;\n" +
                 "insert $rel (peer: $player-0, peer: $player-1, past-call: $player-2) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+370 351 224 5176\";\n" +
                 "$player-1 isa person, has phone-number \"+62 533 266 3426\";\n" +
                 "$player-2 isa call, has started-at 2018-09-15T12:12:59;\n" +
                 "insert $rel (peer: $player-0, peer: $player-1, past-call: $player-2) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+62 533 266 3426\";\n" +
                 "$player-1 isa call, has started-at 2018-09-15T12:12:59;\n" +
                 "insert $rel (peer: $player-0, past-call: $player-1) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+370 351 224 5176\";\n" +
                 "$player-1 isa call, has started-at 2018-09-15T12:12:59;\n" +
                 "insert $rel (peer: $player-0, past-call: $player-1) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $player-0 isa call, has started-at 2018-09-15T12:12:59;\n" +
                 "insert $rel (past-call: $player-0) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+7 690 597 4443\";\n" +
                 "$player-1 isa person, has phone-number \"+54 398 559 9999\";\n" +
                 "insert $rel (peer: $player-0, peer: $player-1) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $player-0 isa person, has phone-number \"+7 690 597 4443\";\n" +
                 "insert $rel (peer: $player-0) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $player-0 isa person, has phone-number \"+54 398 559 9999\";\n" +
                 "insert $rel (peer: $player-0) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $null isa null, has null \"null\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $null isa null, has null \"null\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
     }
 
@@ -569,7 +620,8 @@ public class RelationGeneratorTest {
                 Objects.requireNonNullElseGet(dc.getRelations().get(relationKeys.get(4)).getConfig().getSeparator(), () -> dc.getGlobalConfig().getSeparator()));
         Iterator<String> iterator = Util.newBufferedReader(dp).lines().skip(1).iterator();
 
-        TypeQLInsert statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        String[] row = Util.parseCSV(iterator.next());
+        TypeQLInsert statement = gen.generateMatchInsertStatement(row);
         TypeQLInsert tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+81 308 988 7153\";\n" +
                 "$player-1 isa person, has phone-number \"+351 515 605 7915\";\n" +
@@ -578,9 +630,10 @@ public class RelationGeneratorTest {
                 "$player-2 (caller: $player-2-0, callee: $player-2-1) isa call;\n" +
                 "insert $rel (peer: $player-0, peer: $player-1, past-call: $player-2) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+7 171 898 0853\";\n" +
                 "$player-1 isa person, has phone-number \"+57 629 420 5680\";\n" +
@@ -589,42 +642,47 @@ public class RelationGeneratorTest {
                 "$player-2 (caller: $player-2-0, callee: $player-2-1) isa call;\n" +
                 "insert $rel (peer: $player-0, peer: $player-1, past-call: $player-2) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertTrue(gen.relationInsertStatementValid(statement));
+        Assert.assertTrue(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+261 860 539 4754\";\n" +
                 "$player-1-0 isa person, has phone-number \"+261 860 539 4754\";\n" +
                 "$player-1 (caller: $player-1-0, callee: $player-1-1) isa call;\n" +
                 "insert $rel (peer: $player-0, past-call: $player-1) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $player-0 (caller: $player-0-0, callee: $player-0-1) isa call;\n" +
                 "insert $rel (past-call: $player-0) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match $player-0 (caller: $player-0-0, callee: $player-0-1) isa call;\n" +
                 "insert $rel (past-call: $player-0) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("insert $null isa null, has null \"null\";").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
-        statement = gen.generateMatchInsertStatement(Util.parseCSV(iterator.next()));
+        row = Util.parseCSV(iterator.next());
+        statement = gen.generateMatchInsertStatement(row);
         tmp = TypeQL.parseQuery("match\n" +
                 "$player-0 isa person, has phone-number \"+261 860 539 4754\";\n" +
                 "$player-1-1 isa person, has phone-number \"+261 860 539 4754\";\n" +
                 "$player-1 (caller: $player-1-0, callee: $player-1-1) isa call;\n" +
                 "insert $rel (peer: $player-0, past-call: $player-1) isa communication-channel;").asInsert();
         Assert.assertEquals(tmp, statement);
-        Assert.assertFalse(gen.relationInsertStatementValid(statement));
+        Assert.assertFalse(gen.isMatchInsertValid(row));
 
     }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.io;
+
+import com.vaticle.typedb.osi.loader.util.Util;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+public class GzipIndexTest {
+
+    private static final String SOURCE = "src/test/resources/phoneCalls/person.csv";
+    private static final int CHUNK_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> readLines(String filePath) throws IOException {
+        List<String> lines = new ArrayList<>();
+        Util.newBufferedReader(filePath).lines().skip(1).forEach(lines::add);
+        return lines;
+    }
+
+    private static List<String> readRegions(String filePath, GzipIndex index, int ranges) throws IOException {
+        long[][] split = index.split(ranges, 1);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < split[0].length; i++) {
+            try (RangeLineReader reader = new RangeLineReader(FileToInputStream.getGzipInputStream(filePath, split[0][i]), split[1][i], split[1][i + 1])) {
+                reader.forEachRemaining(lines::add);
+            }
+        }
+        return lines;
+    }
+
+    private static byte[] source() throws IOException {
+        return Files.readAllBytes(new File(SOURCE).toPath());
+    }
+
+    private File writeMultiMember(byte[] data) throws IOException {
+        File file = folder.newFile("multi-member.csv.gz");
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < data.length; i += CHUNK_SIZE) {
+                GZIPOutputStream member = new GZIPOutputStream(out) {
+                    @Override
+                    public void close() throws IOException {
+                        finish();
+                    }
+                };
+                member.write(data, i, Math.min(CHUNK_SIZE, data.length - i));
+                member.close();
+            }
+        }
+        return file;
+    }
+
+    private File writeBgzf(byte[] data) throws IOException {
+        File file = folder.newFile("bgzf.csv.gz");
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < data.length; i += CHUNK_SIZE) {
+                out.write(bgzfBlock(Arrays.copyOfRange(data, i, Math.min(i + CHUNK_SIZE, data.length))));
+            }
+            out.write(bgzfBlock(new byte[0]));
+        }
+        return file;
+    }
+
+    private static byte[] bgzfBlock(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        int blockSize = 18 + compressed.size() + 8;
+        ByteBuffer block = ByteBuffer.allocate(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+        block.put((byte) 0x1f).put((byte) 0x8b).put((byte) 8).put((byte) 4).putInt(0).put((byte) 0).put((byte) 0xff);
+        block.putShort((short) 6).put((byte) 'B').put((byte) 'C').putShort((short) 2).putShort((short) (blockSize - 1));
+        block.put(compressed.toByteArray());
+        block.putInt((int) crc.getValue()).putInt(data.length);
+        return block.array();
+    }
+
+    @Test
+    public void bgzfIsIndexedWithoutScanTest() throws IOException {
+        byte[] data = source();
+        String filePath = writeBgzf(data).getAbsolutePath();
+        GzipIndex index = GzipIndex.load(filePath, false);
+        Assert.assertNotNull(index);
+        Assert.assertEquals((data.length + CHUNK_SIZE - 1) / CHUNK_SIZE, index.members());
+        Assert.assertEquals(data.length, index.getUncompressedSize());
+        Assert.assertTrue(new File(filePath + ".tdlidx").exists());
+
+        List<String> expected = readLines(filePath);
+        Assert.assertEquals(expected, readLines(SOURCE));
+        for (int ranges = 1; ranges <= index.members() + 1; ranges++) {
+            Assert.assertEquals("ranges: " + ranges, expected, readRegions(filePath, index, ranges));
+        }
+    }
+
+    @Test
+    public void multiMemberIsIndexedByScanTest() throws IOException {
+        byte[] data = source();
+        String filePath = writeMultiMember(data).getAbsolutePath();
+        Assert.assertNull(GzipIndex.load(filePath, false));
+
+        GzipIndex index = GzipIndex.load(filePath, true);
+        Assert.assertNotNull(index);
+        Assert.assertEquals((data.length + CHUNK_SIZE - 1) / CHUNK_SIZE, index.members());
+        Assert.assertEquals(data.length, index.getUncompressedSize());
+
+        // second load is served from the cached index, even without scanning
+        GzipIndex cached = GzipIndex.load(filePath, false);
+        Assert.assertNotNull(cached);
+        Assert.assertEquals(index.members(), cached.members());
+
+        List<String> expected = readLines(SOURCE);
+        for (int ranges = 1; ranges <= index.members() + 1; ranges++) {
+            Assert.assertEquals("ranges: " + ranges, expected, readRegions(filePath, index, ranges));
+        }
+    }
+
+    @Test
+    public void singleMemberIsNotIndexedTest() throws IOException {
+        File copy = folder.newFile("contract.csv.gz");
+        Files.copy(new File("src/test/resources/phoneCalls/contract.csv.gz").toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Assert.assertNull(GzipIndex.load(copy.getAbsolutePath(), true));
+    }
+}
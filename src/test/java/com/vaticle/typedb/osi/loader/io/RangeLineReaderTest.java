@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.io;
+
+import com.vaticle.typedb.osi.loader.util.Util;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RangeLineReaderTest {
+
+    private static List<String> readLines(String filePath) throws IOException {
+        List<String> lines = new ArrayList<>();
+        Util.newBufferedReader(filePath).lines().skip(1).forEach(lines::add);
+        return lines;
+    }
+
+    private static List<String> readRanges(String filePath, int ranges) throws IOException {
+        long[] boundaries = RangeLineReader.split(new File(filePath).length(), ranges, 1);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            try (RangeLineReader reader = new RangeLineReader(FileToInputStream.getMappedInputStream(filePath, boundaries[i]), boundaries[i], boundaries[i + 1])) {
+                reader.forEachRemaining(lines::add);
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void rangesReturnEveryLineOnceTest() throws IOException {
+        String filePath = new File("src/test/resources/phoneCalls/person.csv").getAbsolutePath();
+        List<String> expected = readLines(filePath);
+        long size = new File(filePath).length();
+        for (int ranges = 1; ranges <= size; ranges += Math.max(1, ranges / 3)) {
+            Assert.assertEquals("ranges: " + ranges, expected, readRanges(filePath, ranges));
+        }
+    }
+
+    @Test
+    public void splitRespectsMinimumRangeSizeTest() {
+        Assert.assertArrayEquals(new long[]{0, 100}, RangeLineReader.split(100, 8, 64));
+        Assert.assertArrayEquals(new long[]{0, 50, 100}, RangeLineReader.split(100, 8, 50));
+        Assert.assertArrayEquals(new long[]{0, 0}, RangeLineReader.split(0, 8, 50));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.loader;
+
+import com.vaticle.typedb.driver.api.TypeDBSession;
+import com.vaticle.typedb.driver.api.TypeDBTransaction;
+import com.vaticle.typedb.driver.common.exception.TypeDBDriverException;
+import com.vaticle.typedb.osi.loader.generator.Generator;
+import com.vaticle.typedb.osi.loader.io.FileLogger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BatchCommitterTest {
+
+    @Test
+    public void persistentFailureIsolatedWithoutRetriesTest() throws InterruptedException, IOException {
+        // rows of "bad" break a key: every commit holding it fails the same way
+        StubGenerator gen = new StubGenerator(Map.of("bad", Integer.MAX_VALUE), "[THW03] Thing of type 'person' already has key 'phone-number'");
+        WriterLimit writerLimit = WriterLimit.fixed(1);
+        writerLimit.acquire();
+        int failedRows = new BatchCommitter(session(gen), gen, "batch-committer-persistent.csv", 3, false, writerLimit)
+                .commit(1, rows("a", "bad", "c", "d"));
+
+        Assert.assertEquals(1, failedRows);
+        Assert.assertEquals(List.of("a", "c", "d"), gen.committed);
+        // [a, bad, c, d], [a, bad], [a], [bad], [c, d] - no retries of a failure that cannot pass
+        Assert.assertEquals(5, gen.commits);
+        Assert.assertEquals(List.of("bad"), log("batch-committer-persistent_failed_commit.log"));
+    }
+
+    @Test
+    public void batchOfPersistentFailuresIsolatedTest() throws InterruptedException, IOException {
+        // every row of the batch breaks a key - the rows are logged, and the load goes on
+        StubGenerator gen = new StubGenerator(Map.of("bad1", Integer.MAX_VALUE, "bad2", Integer.MAX_VALUE), "[THW03] Thing of type 'person' already has key 'phone-number'");
+        WriterLimit writerLimit = WriterLimit.fixed(1);
+        writerLimit.acquire();
+        int failedRows = new BatchCommitter(session(gen), gen, "batch-committer-all-failed.csv", 3, false, writerLimit)
+                .commit(1, rows("bad1", "bad2"));
+
+        Assert.assertEquals(2, failedRows);
+        Assert.assertEquals(List.of(), gen.committed);
+        Assert.assertEquals(List.of("bad1", "bad2"), log("batch-committer-all-failed_failed_commit.log"));
+    }
+
+    @Test
+    public void transientFailureRetriedAndLoggedOnceTest() throws InterruptedException, IOException {
+        // "flaky" conflicts with a concurrent transaction once, then commits
+        StubGenerator gen = new StubGenerator(Map.of("flaky", 1), "[ISO01] Isolation violation: concurrent transaction modified the same thing");
+        WriterLimit writerLimit = WriterLimit.fixed(1);
+        writerLimit.acquire();
+        int failedRows = new BatchCommitter(session(gen), gen, "batch-committer-transient.csv", 3, false, writerLimit)
+                .commit(1, rows("invalid", "flaky", "b"));
+
+        Assert.assertEquals(0, failedRows);
+        Assert.assertEquals(List.of("flaky", "b"), gen.committed);
+        Assert.assertEquals(2, gen.commits);
+        // the invalid row was written by both attempts, but only logged by the one that committed
+        Assert.assertEquals(List.of("invalid"), log("batch-committer-transient_invalid.log"));
+    }
+
+    @Test
+    public void transientFailureOutlastingRetriesThrownTest() throws InterruptedException {
+        // the server is gone - the batch is retried, but not split
+        StubGenerator gen = new StubGenerator(Map.of("a", Integer.MAX_VALUE), "[CXN01] Unable to connect to TypeDB server.");
+        WriterLimit writerLimit = WriterLimit.fixed(1);
+        writerLimit.acquire();
+        try {
+            new BatchCommitter(session(gen), gen, "batch-committer-unavailable.csv", 2, false, writerLimit).commit(1, rows("a", "b"));
+            Assert.fail("the commit of a batch failing with an unavailable server must throw");
+        } catch (TypeDBDriverException expected) {
+            // the load stops
+        }
+
+        Assert.assertEquals(List.of(), gen.committed);
+        Assert.assertEquals(3, gen.commits);
+    }
+
+    @Test
+    public void transientFailureTest() {
+        Assert.assertTrue(BatchCommitter.isTransient(new TypeDBDriverException(new RuntimeException("[CXN01] Unable to connect to TypeDB server."))));
+        Assert.assertTrue(BatchCommitter.isTransient(new TypeDBDriverException(new RuntimeException("[ISO01] Isolation violation"))));
+        Assert.assertFalse(BatchCommitter.isTransient(new TypeDBDriverException(new RuntimeException("[THW03] Thing already has key"))));
+        Assert.assertFalse(BatchCommitter.isTransient(new TypeDBDriverException(new RuntimeException("[TYW01] Invalid type write"))));
+    }
+
+    private static List<String[]> rows(String... keys) {
+        List<String[]> rows = new ArrayList<>();
+        for (String key : keys) {
+            rows.add(new String[]{key});
+        }
+        return rows;
+    }
+
+    private static List<String> log(String name) throws IOException {
+        return Files.readAllLines(Path.of(FileLogger.getLogger().getDirectory(), name));
+    }
+
+    private static TypeDBSession session(StubGenerator gen) {
+        TypeDBTransaction tx = (TypeDBTransaction) Proxy.newProxyInstance(TypeDBTransaction.class.getClassLoader(),
+                new Class<?>[]{TypeDBTransaction.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("commit")) gen.commit();
+                    else if (method.getName().equals("close")) gen.written.clear();
+                    else if (method.getName().equals("isOpen")) return true;
+                    return null;
+                });
+        return (TypeDBSession) Proxy.newProxyInstance(TypeDBSession.class.getClassLoader(),
+                new Class<?>[]{TypeDBSession.class}, (proxy, method, args) -> method.getName().equals("transaction") ? tx : null);
+    }
+
+    /**
+     * Writes rows to a transaction that fails to commit while it holds a failing row, up to the number of
+     * failures of the row. Rows starting with "invalid" are logged as invalid and not written.
+     */
+    private static class StubGenerator implements Generator {
+        private final Map<String, Integer> failures;
+        private final String failure;
+        private final List<String> written = new ArrayList<>();
+        private final List<String> committed = new ArrayList<>();
+        private int commits;
+
+        private StubGenerator(Map<String, Integer> failures, String failure) {
+            this.failures = new HashMap<>(failures);
+            this.failure = failure;
+        }
+
+        @Override
+        public void write(TypeDBTransaction tx, String[] row, boolean allowMultiInsert) {
+            if (row[0].startsWith("invalid")) FileLogger.getLogger().logInvalid("batch-committer-transient.csv", row[0]);
+            else written.add(row[0]);
+        }
+
+        private void commit() {
+            commits++;
+            for (String row : written) {
+                if (failures.getOrDefault(row, 0) > 0) {
+                    failures.merge(row, -1, Integer::sum);
+                    throw new TypeDBDriverException(new RuntimeException(failure));
+                }
+            }
+        }
+
+        @Override
+        public void committed(List<String[]> rows) {
+            committed.addAll(written);
+        }
+
+        @Override
+        public char getFileSeparator() {
+            return ',';
+        }
+
+        @Override
+        public boolean[] getReferencedColumns() {
+            return null;
+        }
+    }
+}
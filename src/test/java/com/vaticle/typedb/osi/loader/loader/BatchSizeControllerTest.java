@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.loader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchSizeControllerTest {
+
+    @Test
+    public void fixedSizeTest() {
+        BatchSizeController controller = BatchSizeController.fixed(100);
+        for (int i = 0; i < 100; i++) {
+            controller.record(100, 1_000_000);
+        }
+        Assert.assertEquals(100, controller.get());
+    }
+
+    @Test
+    public void climbsWhileThroughputImprovesTest() {
+        BatchSizeController controller = BatchSizeController.adaptive("entity", 100, 10, 1000);
+        // commits take 10 ms plus 0.1 ms per row, so larger batches always commit more rows per second
+        for (int window = 0; window < 20; window++) {
+            commitWindow(controller, 10_000_000L, 100_000L);
+        }
+        Assert.assertTrue(controller.get() > 500);
+    }
+
+    @Test
+    public void turnsAroundWhenThroughputDropsTest() {
+        BatchSizeController controller = BatchSizeController.adaptive("relation", 400, 10, 1000);
+        // commits take quadratically longer with their size, so the best size is small
+        for (int window = 0; window < 40; window++) {
+            int size = controller.get();
+            for (int i = 0; i < BatchSizeController.WINDOW_COMMITS; i++) {
+                controller.record(size, 1_000_000L + 10_000L * size * size);
+            }
+        }
+        Assert.assertTrue(controller.get() < 100);
+        Assert.assertTrue(controller.get() >= 10);
+    }
+
+    private static void commitWindow(BatchSizeController controller, long fixedNanos, long nanosPerRow) {
+        int size = controller.get();
+        for (int i = 0; i < BatchSizeController.WINDOW_COMMITS; i++) {
+            controller.record(size, fixedNanos + nanosPerRow * size);
+        }
+    }
+}
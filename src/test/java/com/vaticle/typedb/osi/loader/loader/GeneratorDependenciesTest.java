@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.loader;
+
+import com.vaticle.typedb.osi.loader.config.Configuration;
+import com.vaticle.typedb.osi.loader.util.Util;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class GeneratorDependenciesTest {
+
+    @Test
+    public void writtenTypesTest() {
+        Configuration dc = Util.initializeConfig(new File("src/test/resources/phoneCalls/config.json").getAbsolutePath());
+        assert dc != null;
+
+        Set<String> person = GeneratorDependencies.writtenTypes(dc.getGeneratorByKey("person"), Collections.emptyMap());
+        Assert.assertTrue(person.containsAll(Set.of("person", "first-name", "last-name", "phone-number")));
+        Assert.assertEquals(Set.of("is-in-use"), GeneratorDependencies.writtenTypes(dc.getGeneratorByKey("is-in-use"), Collections.emptyMap()));
+        Assert.assertEquals(Set.of("person", "twitter-username", "nick-name"),
+                GeneratorDependencies.writtenTypes(dc.getGeneratorByKey("append-twitter"), Collections.emptyMap()));
+        Assert.assertEquals(Set.of("company", "name", "organisation"),
+                GeneratorDependencies.writtenTypes(dc.getGeneratorByKey("company"), Map.of("company", Set.of("company", "organisation"))));
+    }
+
+    @Test
+    public void matchedTypesTest() {
+        Configuration dc = Util.initializeConfig(new File("src/test/resources/phoneCalls/config.json").getAbsolutePath());
+        assert dc != null;
+
+        Assert.assertEquals(Set.of("person"), GeneratorDependencies.matchedTypes(dc.getGeneratorByKey("call")));
+        Assert.assertEquals(Set.of("is-in-use", "phone-number"), GeneratorDependencies.matchedTypes(dc.getGeneratorByKey("in-use")));
+        Assert.assertEquals(Set.of("person"), GeneratorDependencies.matchedTypes(dc.getGeneratorByKey("append-twitter")));
+        Assert.assertEquals(Collections.emptySet(), GeneratorDependencies.matchedTypes(dc.getGeneratorByKey("person")));
+    }
+
+    @Test
+    public void dependenciesTest() {
+        Configuration dc = Util.initializeConfig(new File("src/test/resources/phoneCalls/config.json").getAbsolutePath());
+        assert dc != null;
+        List<String> generatorKeys = List.of("is-in-use", "person", "company", "call", "in-use", "append-twitter");
+
+        Assert.assertEquals(List.of(), GeneratorDependencies.dependencies(dc, generatorKeys, 2, Collections.emptyMap()));
+        Assert.assertEquals(List.of("person"), GeneratorDependencies.dependencies(dc, generatorKeys, 3, Collections.emptyMap()));
+        // the phone numbers of in-use are attributes owned by persons
+        Assert.assertEquals(List.of("is-in-use", "person"), GeneratorDependencies.dependencies(dc, generatorKeys, 4, Collections.emptyMap()));
+        Assert.assertEquals(List.of("person"), GeneratorDependencies.dependencies(dc, generatorKeys, 5, Collections.emptyMap()));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.loader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class RowRouterTest {
+
+    @Test
+    public void sameConflictValuesSameShardInOrderTest() {
+        RowRouter router = new RowRouter(new int[]{0, 2}, 4);
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rows.add(new String[]{"key-" + (i % 37), Integer.toString(i), "part-" + (i % 3)});
+        }
+        List<List<String[]>> batches = new ArrayList<>();
+        List<Integer> batchShards = new ArrayList<>();
+        for (String[] row : rows) {
+            int shard = router.add(row, 10);
+            if (shard >= 0) {
+                batchShards.add(shard);
+                batches.add(router.take(shard));
+            }
+        }
+        for (int shard = 0; shard < router.shards(); shard++) {
+            batchShards.add(shard);
+            batches.add(router.take(shard));
+        }
+
+        Map<String, Integer> keyShards = new HashMap<>();
+        Map<String, Integer> lastRows = new HashMap<>();
+        int routed = 0;
+        for (int b = 0; b < batches.size(); b++) {
+            Assert.assertTrue(batches.get(b).size() <= 10);
+            for (String[] row : batches.get(b)) {
+                String key = row[0] + "," + row[2];
+                Assert.assertEquals(keyShards.computeIfAbsent(key, k -> router.shard(row)), batchShards.get(b));
+                int index = Integer.parseInt(row[1]);
+                Assert.assertTrue(index > lastRows.getOrDefault(key, -1));
+                lastRows.put(key, index);
+                routed++;
+            }
+        }
+        Assert.assertEquals(rows.size(), routed);
+        Assert.assertTrue(new HashSet<>(keyShards.values()).size() > 1);
+    }
+
+    @Test
+    public void missingConflictColumnTest() {
+        RowRouter router = new RowRouter(new int[]{3}, 4);
+        Assert.assertEquals(router.shard(new String[]{"a"}), router.shard(new String[]{"b", "c"}));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.loader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WriterLimitTest {
+
+    @Test
+    public void growsWithBacklogTest() {
+        WriterLimit limit = WriterLimit.adaptive(2, 8);
+        Assert.assertEquals(2, limit.get());
+        for (int window = 0; window < 10; window++) {
+            commitWindow(limit, 100, 10_000_000L, 1.0);
+        }
+        Assert.assertEquals(8, limit.get());
+    }
+
+    @Test
+    public void keepsLimitWithoutBacklogTest() {
+        WriterLimit limit = WriterLimit.adaptive(2, 8);
+        for (int window = 0; window < 10; window++) {
+            commitWindow(limit, 100, 10_000_000L, 0.0);
+        }
+        Assert.assertEquals(2, limit.get());
+    }
+
+    @Test
+    public void shrinksOnErrorsAndLatencyTest() {
+        WriterLimit limit = WriterLimit.adaptive(1, 16);
+        for (int window = 0; window < 15; window++) {
+            commitWindow(limit, 100, 10_000_000L, 1.0);
+        }
+        Assert.assertEquals(16, limit.get());
+        limit.recordError();
+        commitWindow(limit, 100, 10_000_000L, 1.0);
+        Assert.assertEquals(12, limit.get());
+        commitWindow(limit, 100, 20_000_000L, 1.0);
+        Assert.assertEquals(9, limit.get());
+    }
+
+    @Test
+    public void limitsActiveWritersTest() throws InterruptedException {
+        WriterLimit limit = WriterLimit.fixed(1);
+        limit.acquire();
+        Thread writer = new Thread(() -> {
+            try {
+                limit.acquire();
+                limit.release();
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        writer.start();
+        writer.join(200);
+        Assert.assertTrue(writer.isAlive());
+        limit.release();
+        writer.join(1000);
+        Assert.assertFalse(writer.isAlive());
+    }
+
+    private static void commitWindow(WriterLimit limit, int rows, long nanos, double backlog) {
+        for (int i = 0; i < WriterLimit.WINDOW_COMMITS; i++) {
+            limit.recordCommit(rows, nanos, backlog);
+        }
+    }
+}
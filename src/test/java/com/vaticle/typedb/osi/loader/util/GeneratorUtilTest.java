@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+
+public class GeneratorUtilTest {
+
+    private static String literal(Object value) {
+        StringBuilder query = new StringBuilder();
+        GeneratorUtil.appendValueLiteral(query, value);
+        return query.toString();
+    }
+
+    @Test
+    public void valueLiteralTest() {
+        Assert.assertEquals("\"abc\"", literal("abc"));
+        Assert.assertEquals("\"say \\\"hi\\\"\"", literal("say \\\"hi\\\""));
+        Assert.assertEquals("\"bare \\\" quote\"", literal("bare \" quote"));
+        Assert.assertEquals("\"trailing\\\\\"", literal("trailing\\"));
+        Assert.assertEquals("-42", literal(-42L));
+        Assert.assertEquals("1.5", literal(1.5));
+        Assert.assertEquals("100.0", literal(100.0));
+        Assert.assertEquals("10000000000.0", literal(1e10));
+        Assert.assertEquals("0.00000012", literal(1.2e-7));
+        Assert.assertEquals("true", literal(true));
+        Assert.assertEquals("2021-03-04T05:06:00", literal(LocalDateTime.of(2021, 3, 4, 5, 6)));
+        Assert.assertEquals("2021-03-04T05:06:07.5", literal(LocalDateTime.of(2021, 3, 4, 5, 6, 7, 500_000_000)));
+    }
+}
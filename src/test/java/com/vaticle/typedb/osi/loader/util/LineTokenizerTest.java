@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.util;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class LineTokenizerTest {
+
+    private static final CSVFormat CSV_FORMAT = CSVFormat.DEFAULT.withEscape('\\').withIgnoreSurroundingSpaces().withNullString("");
+    private static final CSVFormat TSV_FORMAT = CSVFormat.DEFAULT.withDelimiter('\t').withEscape('\\').withIgnoreSurroundingSpaces().withNullString("");
+
+    private static final String[] LINES = {
+            "a,b,c",
+            "  a  , b ,c  ",
+            "a,,c,",
+            ",",
+            "   ",
+            "\"quoted\",\"with, delimiter\",\"with \"\"double\"\" quotes\"",
+            "\"\",\"  spaces kept  \"  ,x",
+            "in\"line,\"quote",
+            "NULL,null,\\N,Null,nul,nulls,\"null\"",
+            "esc\\,aped,\\\"q\\\",\\t\\n\\r,\\x,back\\\\slash",
+            "trailing\\",
+            "\"unterminated,x",
+            "\"quoted\"garbage,x",
+            "a\tb\t\tc",
+            " \t a\t",
+            "ünïcödé,€",
+    };
+
+    private static String[] commonsParse(String line, CSVFormat format) {
+        try {
+            return parse(CSVParser.parse(line, format).getRecords().get(0));
+        } catch (IOException ioException) {
+            try {
+                return parse(CSVParser.parse(line.replace("\"", ""), format).getRecords().get(0));
+            } catch (IOException ioException2) {
+                return new String[0];
+            }
+        }
+    }
+
+    private static String[] parse(CSVRecord record) {
+        String[] arr = new String[record.size()];
+        for (int i = 0; i < record.size(); i++) {
+            arr[i] = record.get(i);
+            if (arr[i] != null) {
+                if ((arr[i].equals("\\N") || arr[i].equalsIgnoreCase("null"))) arr[i] = null;
+                else arr[i] = arr[i].replaceAll("\"", "\\\\\"");
+            }
+        }
+        return arr;
+    }
+
+    private static void assertSameAsCommons(String line) {
+        Assert.assertArrayEquals("csv: " + line, commonsParse(line, CSV_FORMAT), Util.parseCSV(line));
+        Assert.assertArrayEquals("tsv: " + line, commonsParse(line, TSV_FORMAT), Util.parseTSV(line));
+    }
+
+    @Test
+    public void tokenizerMatchesCommonsTest() {
+        for (String line : LINES) {
+            assertSameAsCommons(line);
+        }
+    }
+
+    @Test
+    public void tokenizerMatchesCommonsOnTestResourcesTest() throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(new File("src/test/resources").toPath())) {
+            files = paths.filter(p -> p.toString().endsWith(".csv") || p.toString().endsWith(".tsv")).collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            for (String line : Files.readAllLines(file)) {
+                if (!line.isEmpty()) assertSameAsCommons(line);
+            }
+        }
+    }
+
+    @Test
+    public void tokenizerTest() {
+        Assert.assertArrayEquals(new String[]{"a", null, "c", null}, Util.parseCSV(" a ,,c,"));
+        Assert.assertArrayEquals(new String[]{"with, delimiter", "say \\\"hi\\\""}, Util.parseCSV("\"with, delimiter\",\"say \"\"hi\"\"\""));
+        Assert.assertArrayEquals(new String[]{null, null, "nul"}, Util.parseTSV("NULL\t\\N\tnul"));
+        Assert.assertArrayEquals(new String[]{"unterminated", "x"}, Util.parseCSV("\"unterminated,x"));
+    }
+
+    @Test
+    public void tokenizerProjectsColumnsTest() {
+        boolean[] columns = {false, true, false, true};
+        Assert.assertArrayEquals(new String[]{null, "b", null, "d", null},
+                Util.parseBySeparator("a,b,\"c,\"\"c\"\"\",d,e", ',', columns));
+        Assert.assertArrayEquals(new String[]{null, "b\\\"", null, null},
+                Util.parseBySeparator("\\x,b\\\",c\\,c,null", ',', columns));
+        for (String line : LINES) {
+            String[] all = Util.parseCSV(line);
+            String[] projected = Util.parseBySeparator(line, ',', columns);
+            Assert.assertEquals(line, all.length, projected.length);
+            for (int i = 0; i < all.length; i++) {
+                Assert.assertEquals(line, i < columns.length && columns[i] ? all[i] : null, projected[i]);
+            }
+        }
+    }
+}
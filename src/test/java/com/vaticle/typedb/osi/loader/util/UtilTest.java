@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2021 Bayer AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vaticle.typedb.osi.loader.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+public class UtilTest {
+
+    @Test
+    public void streamingParserTest() throws IOException {
+        String dp = new File("src/test/resources/generic/multiline.csv").getAbsolutePath();
+        Iterator<String[]> records = Util.parseRecordsBySeparator(Util.newBufferedReader(dp), ',');
+
+        Assert.assertArrayEquals(new String[]{"1", "a cell spanning\ntwo lines", null}, records.next());
+        Assert.assertArrayEquals(new String[]{"2", "plain", null}, records.next());
+        Assert.assertArrayEquals(new String[]{"3", "quoted \\\"word\\\"", "5"}, records.next());
+        Assert.assertFalse(records.hasNext());
+    }
+
+    @Test
+    public void streamingParserMatchesLineParserTest() throws IOException {
+        String dp = new File("src/test/resources/generic/entity1.tsv").getAbsolutePath();
+        Iterator<String[]> records = Util.parseRecordsBySeparator(Util.newBufferedReader(dp), '\t');
+        Iterator<String> lines = Util.newBufferedReader(dp).lines().skip(1).iterator();
+        while (lines.hasNext()) {
+            String line = lines.next();
+            if (line.isEmpty()) continue;
+            Assert.assertArrayEquals(Util.parseTSV(line), records.next());
+        }
+        Assert.assertFalse(records.hasNext());
+    }
+}